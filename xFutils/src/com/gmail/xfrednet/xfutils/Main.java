@@ -2,13 +2,20 @@ package com.gmail.xfrednet.xfutils;
 
 import com.gmail.xfrednet.xfutils.link.LinkManager;
 import com.gmail.xfrednet.xfutils.plugin.PluginManager;
+import com.gmail.xfrednet.xfutils.util.FlightRecorder;
 import com.gmail.xfrednet.xfutils.util.IndependentPopupMenu;
 import com.gmail.xfrednet.xfutils.util.Logger;
 import com.gmail.xfrednet.xfutils.util.Settings;
 import com.gmail.xfrednet.xfutils.util.language.Language;
+import com.gmail.xfrednet.xfutils.util.language.LanguageKeyIds;
+import com.gmail.xfrednet.xfutils.util.logger.BinaryFileLogger;
 import com.gmail.xfrednet.xfutils.util.logger.ConsoleLogger;
 import com.gmail.xfrednet.xfutils.util.logger.FileLogger;
+import com.gmail.xfrednet.xfutils.util.logger.LogRingBuffer;
+import com.gmail.xfrednet.xfutils.util.logger.MappedFileLogger;
+import com.gmail.xfrednet.xfutils.util.logger.MultiLogger;
 import com.gmail.xfrednet.xfutils.util.logger.NoLogLogger;
+import com.gmail.xfrednet.xfutils.util.logger.RollingPolicy;
 import com.gmail.xfrednet.xfutils.wrapper.GlobalShortcut;
 
 import java.awt.*;
@@ -51,6 +58,18 @@ public class Main {
 	 * set by {@linkplain #ProcessArgs(String[])}
 	 * */
 	public static boolean IsDebugEnabled     = false;
+	/**
+	 * This value indicates if the {@link com.gmail.xfrednet.xfutils.util.logger.FileLogger <tt>FileLogger</tt>}
+	 * should write the log from a background thread. It can be enabled with the 
+	 * <tt>-asynclog</tt> argument and is set by {@linkplain #ProcessArgs(String[])}
+	 * */
+	public static boolean IsAsyncLogEnabled  = false;
+	/**
+	 * This value indicates if the {@link com.gmail.xfrednet.xfutils.util.logger.FileLogger <tt>FileLogger</tt>}
+	 * should roll, compress and clean up its log files. It can be enabled with the 
+	 * <tt>-rolllog</tt> argument and is set by {@linkplain #ProcessArgs(String[])}
+	 * */
+	public static boolean IsRollingLogEnabled = false;
 	/**
 	 * This value indicates if plugins should be enabled for this application.
 	 * Plugins can be disabled with the <tt>-noplugins</tt> argument and is 
@@ -63,6 +82,20 @@ public class Main {
 	 * set by {@linkplain #ProcessArgs(String[])}
 	 * */
 	public static boolean AreLinksEnabled    = true;
+	/**
+	 * This value indicates if the settings should be saved in a journal
+	 * instead of rewriting the settings file on every change. It can be
+	 * enabled with the <tt>-journalsettings</tt> argument and is set by
+	 * {@linkplain #ProcessArgs(String[])}
+	 * */
+	public static boolean IsSettingsJournalEnabled = false;
+	/**
+	 * This value indicates if a {@link com.gmail.xfrednet.xfutils.util.FlightRecorder <tt>FlightRecorder</tt>}
+	 * should be attached to the log. It formats every debug message, it's therefore 
+	 * only enabled with the <tt>-flightrecorder</tt> argument. It is set by 
+	 * {@linkplain #ProcessArgs(String[])}
+	 * */
+	public static boolean IsFlightRecorderEnabled = false;
 
 	/**
 	 * This is the current instance of this class it is and should only
@@ -117,21 +150,31 @@ public class Main {
 				IsDebugEnabled = true;
 				break;
 			case "-conlog":
-				if (!(Logger instanceof NoLogLogger)) {
-					Logger.logError("ProcessArgs: \"-conlog\": Only one log option can be selected at a time.");
-					break;
-				}
-				Logger = new ConsoleLogger(IsDebugEnabled);
+				AddLogger(new ConsoleLogger(IsDebugEnabled));
 				Logger.logInfo("ProcessArgs: The log will be written to the console.");
 				break;
+			case "-asynclog":
+				IsAsyncLogEnabled = true;
+				break;
+			case "-rolllog":
+				IsRollingLogEnabled = true;
+				break;
 			case "-filelog":
-				if (!(Logger instanceof NoLogLogger)) {
-					Logger.logError("ProcessArgs: \"-filelog\": Only one log option can be selected at a time.");
-					break;
-				}
-				Logger = new FileLogger(IsDebugEnabled);
+				AddLogger(new FileLogger(
+						IsDebugEnabled, 
+						(IsRollingLogEnabled) ? RollingPolicy.DEFAULT : null, 
+						(IsAsyncLogEnabled) ? LogRingBuffer.OverflowPolicy.DROP_DEBUG_FIRST : null, 
+						LogRingBuffer.DEFAULT_CAPACITY));
 				Logger.logInfo("ProcessArgs: The log will be written to a file.");
 				break;
+			case "-mappedlog":
+				AddLogger(new MappedFileLogger(IsDebugEnabled));
+				Logger.logInfo("ProcessArgs: The log will be written to a memory mapped file.");
+				break;
+			case "-binlog":
+				AddLogger(new BinaryFileLogger(IsDebugEnabled));
+				Logger.logInfo("ProcessArgs: The log will be written to a binary file.");
+				break;
 			case "-noplugins":
 				ArePluginsEnabled = false;
 				Logger.logInfo("ProcessArgs: \"-noplugins\": Plugins will be disabled.");
@@ -143,21 +186,39 @@ public class Main {
 			case "-resetsettings":
 				Settings.SaveResettedSettingsToFile();
 				break;
+			case "-journalsettings":
+				IsSettingsJournalEnabled = true;
+				break;
+			case "-flightrecorder":
+				IsFlightRecorderEnabled = true;
+				break;
 			case "-help":
 			default:
-				System.out.println("Arguments: [-debug][-conlog | -filelog][-noplugins][-nolinks][-resetsettings]");
+				System.out.println("Arguments: [-debug][-asynclog][-rolllog][-conlog][-filelog][-mappedlog][-binlog][-noplugins][-nolinks][-resetsettings][-journalsettings][-flightrecorder]");
 				System.out.println();
 				System.out.println("    -debug:         Enables debugging information and logs.");
+				System.out.println("    -asynclog:      Writes the log file from a background thread. (Place it before -filelog)");
+				System.out.println("    -rolllog:       Rolls, compresses and cleans up the log files. (Place it before -filelog)");
 				System.out.println("    -conlog:        Writes all logs to the console.");
 				System.out.println("    -filelog:       Writes all logs to a log file.");
+				System.out.println("    -mappedlog:     Writes all logs to memory mapped segment files.");
+				System.out.println("    -binlog:        Writes all logs to a binary file, see BinaryLogDecoder.");
+				System.out.println("                    (The log options can be combined, every log gets its own background thread)");
 				System.out.println("    -help:          Prints this information.");
 				System.out.println("    -nolinks:       Disables link loading, from this application.");
 				System.out.println("    -noplugins:     Disables plugin loading, from this application.");
 				System.out.println("    -resetsettings: Resets the current settings to their defauls and saves them.");
+				System.out.println("    -journalsettings: Saves setting changes to a journal, the settings file is written on exit.");
+				System.out.println("    -flightrecorder:  Keeps the last log records, debug included, and dumps them on errors.");
 				return false;
 			}
 		}
 
+		// The flight recorder keeps the debug context of errors even if debug is disabled
+		if (IsFlightRecorderEnabled && !(Logger instanceof NoLogLogger)) {
+			Logger.setFlightRecorder(new FlightRecorder());
+		}
+		
 		// debug info
 		if (IsDebugEnabled) {
 			Logger.logDebugMessage("ProcessArgs: Debugging was enabled!");
@@ -168,13 +229,34 @@ public class Main {
 				sb.append(" ");
 			}
 
-			Logger.logDebugMessage("ProcessArgs: The following arguments where entered: \"" + sb.toString() + "\"");
+			Logger.logDebugMessage("ProcessArgs: The following arguments where entered: \"{}\"", sb);
 		}
 		return true;
 	}
+	/**
+	 * This sets the given logger as the application {@linkplain #Logger}. The
+	 * loggers are combined in a {@linkplain MultiLogger} if more than one
+	 * log option was selected.
+	 * 
+	 * @param logger The logger of the selected log option.
+	 * */
+	private static void AddLogger(Logger logger) {
+		if (Logger instanceof NoLogLogger) {
+			Logger = logger;
+			return;
+		}
+		
+		if (!(Logger instanceof MultiLogger)) {
+			MultiLogger multiLogger = new MultiLogger(IsDebugEnabled);
+			multiLogger.addSink(Logger);
+			Logger = multiLogger;
+		}
+		
+		((MultiLogger)Logger).addSink(logger);
+	}
 	/**
 	 * This function calls the {@linkplain #terminate()} method of the {@linkplain Main} class.
-	 * After {@linkplain Main} was terminated it will call the 
+	 * After {@linkplain Main} was terminated it will dump the {@linkplain FlightRecorder} and call the 
 	 * {@link com.gmail.xfrednet.xfutils.util.Logger#endLog() <tt>endLog()</tt>} method of the 
 	 * current {@link com.gmail.xfrednet.xfutils.util.Logger <tt>Logger</tt>} instance.
 	 * 
@@ -191,6 +273,14 @@ public class Main {
 		GlobalShortcut.GetInstance().cleanUp();
 
 		if (Logger != null) {
+			Logger.flushSuppressedMessages();
+			
+			FlightRecorder recorder = Logger.getFlightRecorder();
+			if (recorder != null) {
+				recorder.dump("shutdown");
+				recorder.close();
+			}
+			
 			Logger.endLog();
 			Logger = null;
 		}
@@ -292,17 +382,25 @@ public class Main {
 	 * */
 	private boolean init() {
 		// Settings
-		this.settings = new Settings();
+		this.settings = new Settings(IsSettingsJournalEnabled);
 		if (!this.settings.load()) {
 			this.settings.reset();
 			if (this.settings.save()) {
 				Logger.logAlert("Main.init: Unable to save the settings after creating new ones!");
 			}
 		}
+		this.settings.applyLogLevels(Logger);
 		
 		// Language
 		this.language = new Language(this.settings.getLanguage());
 		
+		// Apply changes of the settings file while the application runs
+		this.settings.getRegistry().addListener(changed -> {
+			String languageName = this.settings.getLanguage();
+			SwingUtilities.invokeLater(() -> this.language.changeLanguage(languageName));
+		}, "language");
+		this.settings.startWatching();
+		
 		// Test if the TrayIcon is support
 		if (!SystemTray.isSupported()) {
 			Logger.logError("Main: The current system does not support a system tray.");
@@ -332,6 +430,11 @@ public class Main {
 		// init the LinkManager
 		initLinkManager();
 
+		// Load the other languages now that the start is done
+		if (this.settings.isLanguagePrefetchEnabled()) {
+			this.language.prefetchLanguages();
+		}
+
 		// Return le trùe
 		return true;
 	}
@@ -363,7 +466,7 @@ public class Main {
 		this.trayMenu.add(this.settings.getSettingsMenu(this.language), MENU_SECTION_META);
 		
 		// "Exit"-item
-		JMenuItem exitItem = new JMenuItem(this.language.getString(Language.Keys.MENU_ITEM_EXIT));
+		JMenuItem exitItem = new JMenuItem(this.language.getString(LanguageKeyIds.MENU_ITEM_EXIT));
 		exitItem.addActionListener(e -> {
 			Logger.logDebugMessage("Menu.Exit-Item: I was activated!");
 			System.exit(0);
@@ -400,7 +503,7 @@ public class Main {
 		if (!ArePluginsEnabled)
 			return;
 		
-		this.pluginManager = new PluginManager(Logger);
+		this.pluginManager = new PluginManager(Logger.getLogger(PluginManager.LOGGER_NAME), this.settings, this.language);
 		
 		this.pluginManager.initPlugins();
 		List<JMenuItem> pluginItems = this.pluginManager.getPluginMenuElements();
@@ -420,17 +523,14 @@ public class Main {
 
 		// create and init the LinkManager
 		this.linkManager = new LinkManager();
-		if (!this.linkManager.init(this.language)) {
+		if (!this.linkManager.init(this.language, this.settings)) {
 			Main.Logger.logError("Main.initLinkManager: Something went wrong during the initialisation of the LinkManager");
 			this.linkManager = null;
 			return;
 		}
 
-		// Add the JMenuItems from the LinkManager
-		JMenuItem[] linkItems = this.linkManager.getMenuItems();
-		for (JMenuItem item : linkItems) {
-			this.trayMenu.add(item, MENU_SECTION_LINKS);
-		}
+		// The links are scanned in the background, their items are added as they are found
+		this.linkManager.installMenuItems(this.trayMenu, MENU_SECTION_LINKS);
 
 		Main.Logger.logInfo("Main.initLinkManager: The LinkManager was successfully initialized");
 	}
@@ -445,6 +545,9 @@ public class Main {
 	 * should not be called by any other sources</p>
 	 * */
 	private void terminate() {
+		if (this.linkManager != null) {
+			this.linkManager.terminate();
+		}
 		this.trayMenu.dispose();
 		this.trayMenu = null;
 		
@@ -454,6 +557,9 @@ public class Main {
 			Logger.logInfo("Main.terminate: Terminated the PluginManager instance.");
 		}
 		
+		// Write the settings changes that are still waiting
+		this.settings.stopWatching();
+		this.settings.flush();
 		this.settings = null;
 		this.language = null;
 		this.linkManager = null;
@@ -0,0 +1,426 @@
+package com.gmail.xfrednet.xfutils.link;
+
+import java.awt.image.BufferedImage;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import javax.imageio.ImageIO;
+import javax.swing.Icon;
+import javax.swing.ImageIcon;
+
+import com.gmail.xfrednet.xfutils.util.Logger;
+
+/**
+ * This caches the scaled menu icons of the {@linkplain LinkManager}. An icon
+ * is identified by the path, the modification time and the size of its file,
+ * a changed link therefore gets a new icon.
+ *
+ * <p>The cache has two levels. The first one is a small LRU map in memory,
+ * the second one is a directory with a PNG thumbnail for every icon and an
+ * index that maps the files to their thumbnail. The thumbnails are named by
+ * the hash of their pixels. Identical icons, like the ones of all folders or
+ * of all links to the same program, are stored once and share one
+ * {@linkplain ImageIcon} in memory.</p>
+ *
+ * <p>The index is a text file that is only appended to. Every line is
+ * "[hash] [modified] [size] [path]", later lines replace earlier ones of the
+ * same path. It's rewritten by {@linkplain #prune()} if it has too many old
+ * lines.</p>
+ *
+ * <p>All methods can be called by multiple threads.</p>
+ * */
+class IconCache {
+
+	private static final String INDEX_FILE_NAME = "index.txt";
+	private static final String THUMBNAIL_SUFFIX = ".png";
+	private static final String THUMBNAIL_FORMAT = "png";
+	private static final int MEMORY_CACHE_SIZE = 256;
+
+	/**
+	 * The entry of a file in the index.
+	 * */
+	private static final class IndexEntry {
+		final long modified;
+		final long size;
+		final String hash;
+
+		IndexEntry(long modified, long size, String hash) {
+			this.modified = modified;
+			this.size = size;
+			this.hash = hash;
+		}
+
+		boolean matches(long modified, long size) {
+			return this.modified == modified && this.size == size;
+		}
+	}
+	/**
+	 * A LinkedHashMap in access order that drops the least recently used
+	 * entry. It isn't synchronized.
+	 * */
+	private static final class LruMap<K, V> extends LinkedHashMap<K, V> {
+		private static final long serialVersionUID = 1L;
+
+		private final int maxSize;
+
+		LruMap(int maxSize) {
+			super(16, 0.75f, true);
+			this.maxSize = maxSize;
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+			return size() > this.maxSize;
+		}
+	}
+
+	private final File directory;
+	private final Logger logger;
+
+	// These are guarded by this
+	private final Map<String, ImageIcon> iconsByKey = new LruMap<>(MEMORY_CACHE_SIZE);
+	private final Map<String, ImageIcon> iconsByHash = new LruMap<>(MEMORY_CACHE_SIZE);
+	private final Map<String, IndexEntry> index = new HashMap<>();
+	private Writer indexWriter = null;
+	private int indexLineCount = 0;
+	private boolean opened = false;
+	private boolean pruned = false;
+	private boolean closed = false;
+	private volatile boolean diskEnabled = false;
+
+	private final AtomicInteger memoryHits = new AtomicInteger();
+	private final AtomicInteger diskHits = new AtomicInteger();
+	private final AtomicInteger misses = new AtomicInteger();
+
+	IconCache(File directory, Logger logger) {
+		this.directory = directory;
+		this.logger = logger;
+	}
+
+	/**
+	 * This loads the index. It's called by the first {@linkplain #getIcon(File, long, long, Function)}
+	 * call if it wasn't called before. The cache works without the disk level
+	 * if the directory can't be used.
+	 *
+	 * <p>The files of the index aren't checked here, the first scan only needs
+	 * a few of them. That's done by {@linkplain #prune()}.</p>
+	 * */
+	synchronized void open() {
+		if (this.opened) {
+			return;
+		}
+		this.opened = true;
+
+		if (!this.directory.isDirectory() && !this.directory.mkdirs()) {
+			this.logger.logAlert("IconCache.open: Unable to create the icon cache directory: {}", this.directory.getAbsolutePath());
+			return;
+		}
+		this.diskEnabled = true;
+
+		File indexFile = new File(this.directory, INDEX_FILE_NAME);
+		if (indexFile.isFile()) {
+			try (BufferedReader reader = Files.newBufferedReader(indexFile.toPath(), StandardCharsets.UTF_8)) {
+				String line;
+				while ((line = reader.readLine()) != null) {
+					this.indexLineCount++;
+					readIndexLine(line);
+				}
+			} catch (IOException e) {
+				// The lines that were read are still fine
+				this.logger.logAlert("IconCache.open: Unable to read the whole icon index", e);
+			}
+		}
+
+		openIndexWriter(indexFile);
+	}
+	private void openIndexWriter(File indexFile) {
+		try {
+			this.indexWriter = Files.newBufferedWriter(indexFile.toPath(), StandardCharsets.UTF_8,
+					StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+		} catch (IOException e) {
+			this.logger.logAlert("IconCache.openIndexWriter: Unable to open the icon index, the icons are only cached in memory", e);
+		}
+	}
+	/**
+	 * This drops the deleted files from the index and compacts it if it has
+	 * too many old lines. Every file of the index is checked, it's therefore
+	 * called once after the first scan by a scan thread. The lock is only held
+	 * to copy and to update the index, the icons can be loaded meanwhile.
+	 * */
+	void prune() {
+		open();
+
+		Map<String, IndexEntry> entries;
+		synchronized (this) {
+			if (this.pruned || this.closed) {
+				return;
+			}
+			this.pruned = true;
+			entries = new HashMap<>(this.index);
+		}
+
+		// The links that were deleted don't need their icons anymore
+		List<String> deletedPaths = new ArrayList<>();
+		for (String path : entries.keySet()) {
+			if (!new File(path).exists()) {
+				deletedPaths.add(path);
+			}
+		}
+
+		synchronized (this) {
+			for (String path : deletedPaths) {
+				// The file might be indexed again in the meantime
+				this.index.remove(path, entries.get(path));
+			}
+			if (this.closed || !this.diskEnabled || this.indexLineCount <= this.index.size() * 2) {
+				return;
+			}
+
+			// The old lines are dropped and the unused thumbnails are deleted,
+			// the index can't be replaced while it's open on Windows
+			File indexFile = new File(this.directory, INDEX_FILE_NAME);
+			closeIndexWriter();
+			try {
+				compact(indexFile);
+				this.indexLineCount = this.index.size();
+			} catch (IOException e) {
+				this.logger.logAlert("IconCache.prune: Unable to compact the icon index", e);
+			}
+			openIndexWriter(indexFile);
+		}
+	}
+	private void readIndexLine(String line) {
+		// [hash] [modified] [size] [path], the path can contain spaces
+		String[] parts = line.split(" ", 4);
+		if (parts.length != 4) {
+			return;
+		}
+
+		try {
+			this.index.put(parts[3], new IndexEntry(Long.parseLong(parts[1]), Long.parseLong(parts[2]), parts[0]));
+		} catch (NumberFormatException e) {
+			// This is most likely a torn last line
+		}
+	}
+	private void compact(File indexFile) throws IOException {
+		Set<String> usedHashes = new HashSet<>();
+		File tempFile = new File(this.directory, INDEX_FILE_NAME + ".tmp");
+		try (Writer writer = Files.newBufferedWriter(tempFile.toPath(), StandardCharsets.UTF_8)) {
+			for (Map.Entry<String, IndexEntry> entry : this.index.entrySet()) {
+				writeIndexLine(writer, entry.getKey(), entry.getValue());
+				usedHashes.add(entry.getValue().hash);
+			}
+		}
+		Files.move(tempFile.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+		File[] thumbnails = this.directory.listFiles((dir, name) -> name.endsWith(THUMBNAIL_SUFFIX));
+		if (thumbnails != null) {
+			for (File thumbnail : thumbnails) {
+				String hash = thumbnail.getName().substring(0, thumbnail.getName().length() - THUMBNAIL_SUFFIX.length());
+				if (!usedHashes.contains(hash) && !thumbnail.delete()) {
+					this.logger.logInfo("IconCache.compact: Unable to delete the thumbnail: {}", thumbnail.getName());
+				}
+			}
+		}
+
+		this.logger.logInfo("IconCache.compact: Compacted the icon index to {} entries", this.index.size());
+	}
+	private static void writeIndexLine(Writer writer, String path, IndexEntry entry) throws IOException {
+		writer.write(entry.hash + " " + entry.modified + " " + entry.size + " " + path + "\n");
+	}
+
+	/**
+	 * This returns the icon of the file. The loader is only called if the icon
+	 * is in neither level of the cache, it has to return an image with the final
+	 * size or <tt>null</tt> if the file has no icon.
+	 *
+	 * @param modified The modification time of the file in milliseconds.
+	 * @param size The size of the file. The caller already read both, this
+	 *             doesn't ask the file system again.
+	 * */
+	Icon getIcon(File file, long modified, long size, Function<File, BufferedImage> loader) {
+		open();
+
+		String path = file.getAbsolutePath();
+		String key = path + "|" + modified + "|" + size;
+
+		// Memory and disk
+		IndexEntry entry;
+		synchronized (this) {
+			ImageIcon icon = this.iconsByKey.get(key);
+			if (icon != null) {
+				this.memoryHits.incrementAndGet();
+				return icon;
+			}
+
+			entry = this.index.get(path);
+			if (entry != null && !entry.matches(modified, size)) {
+				entry = null;
+			}
+			if (entry != null) {
+				icon = this.iconsByHash.get(entry.hash);
+				if (icon != null) {
+					this.memoryHits.incrementAndGet();
+					this.iconsByKey.put(key, icon);
+					return icon;
+				}
+			}
+		}
+		if (entry != null && this.diskEnabled) {
+			BufferedImage image = readThumbnail(entry.hash);
+			if (image != null) {
+				this.diskHits.incrementAndGet();
+				return putIcon(key, entry.hash, image);
+			}
+		}
+
+		// Load the icon, this is the slow part
+		this.misses.incrementAndGet();
+		BufferedImage image = loader.apply(file);
+		if (image == null) {
+			return null;
+		}
+		String hash = Hash(image);
+		if (this.diskEnabled) {
+			writeThumbnail(hash, image);
+		}
+		synchronized (this) {
+			IndexEntry newEntry = new IndexEntry(modified, size, hash);
+			this.index.put(path, newEntry);
+			appendIndexLine(path, newEntry);
+		}
+
+		return putIcon(key, hash, image);
+	}
+	/**
+	 * This puts the icon into the memory level. An identical icon that is
+	 * already in memory is used instead.
+	 * */
+	private synchronized ImageIcon putIcon(String key, String hash, BufferedImage image) {
+		ImageIcon icon = this.iconsByHash.get(hash);
+		if (icon == null) {
+			icon = new ImageIcon(image);
+			this.iconsByHash.put(hash, icon);
+		}
+		this.iconsByKey.put(key, icon);
+
+		return icon;
+	}
+
+	private BufferedImage readThumbnail(String hash) {
+		File thumbnail = new File(this.directory, hash + THUMBNAIL_SUFFIX);
+		if (!thumbnail.isFile()) {
+			return null;
+		}
+
+		try {
+			return ImageIO.read(thumbnail);
+		} catch (IOException e) {
+			this.logger.logAlert("IconCache.readThumbnail: Unable to read the thumbnail: " + thumbnail.getName(), e);
+			return null;
+		}
+	}
+	private void writeThumbnail(String hash, BufferedImage image) {
+		File thumbnail = new File(this.directory, hash + THUMBNAIL_SUFFIX);
+		if (thumbnail.isFile()) {
+			// The same icon was already stored for another file
+			return;
+		}
+
+		// Two threads may write the same thumbnail, the move keeps the file whole
+		File tempFile = new File(this.directory, hash + "." + Thread.currentThread().getId() + ".tmp");
+		try {
+			if (!ImageIO.write(image, THUMBNAIL_FORMAT, tempFile)) {
+				this.logger.logAlert("IconCache.writeThumbnail: There is no writer for " + THUMBNAIL_FORMAT);
+				return;
+			}
+			Files.move(tempFile.toPath(), thumbnail.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			this.logger.logAlert("IconCache.writeThumbnail: Unable to write the thumbnail: " + thumbnail.getName(), e);
+			tempFile.delete();
+		}
+	}
+	private void appendIndexLine(String path, IndexEntry entry) {
+		if (this.indexWriter == null || this.closed) {
+			return;
+		}
+
+		try {
+			writeIndexLine(this.indexWriter, path, entry);
+			this.indexWriter.flush();
+			this.indexLineCount++;
+		} catch (IOException e) {
+			this.logger.logAlert("IconCache.appendIndexLine: Unable to write to the icon index, the icons are only cached in memory", e);
+			this.indexWriter = null;
+		}
+	}
+
+	/**
+	 * This hashes the pixels of the image, the hash is also the name of the
+	 * thumbnail.
+	 * */
+	private static String Hash(BufferedImage image) {
+		int width = image.getWidth();
+		int height = image.getHeight();
+		ByteBuffer buffer = ByteBuffer.allocate(8 + width * height * 4);
+		buffer.putInt(width);
+		buffer.putInt(height);
+		buffer.asIntBuffer().put(image.getRGB(0, 0, width, height, null, 0, width));
+
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-1").digest(buffer.array());
+			StringBuilder hash = new StringBuilder(digest.length * 2);
+			for (byte b : digest) {
+				hash.append(Character.forDigit((b >> 4) & 0xF, 16));
+				hash.append(Character.forDigit(b & 0xF, 16));
+			}
+			return hash.toString();
+		} catch (NoSuchAlgorithmException e) {
+			// Every Java platform has to support SHA-1
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * This logs and resets the hit counters. It's called after every scan.
+	 * */
+	void logStatistics() {
+		this.logger.logInfo("IconCache: {} memory hits, {} disk hits, {} icons loaded",
+				this.memoryHits.getAndSet(0), this.diskHits.getAndSet(0), this.misses.getAndSet(0));
+	}
+
+	synchronized void close() {
+		this.closed = true;
+		closeIndexWriter();
+	}
+	private void closeIndexWriter() {
+		if (this.indexWriter == null) {
+			return;
+		}
+
+		try {
+			this.indexWriter.close();
+		} catch (IOException e) {
+			this.logger.logAlert("IconCache.closeIndexWriter: Unable to close the icon index", e);
+		}
+		this.indexWriter = null;
+	}
+}
@@ -0,0 +1,232 @@
+package com.gmail.xfrednet.xfutils.link;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.DosFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.gmail.xfrednet.xfutils.util.Logger;
+
+/**
+ * This lists the link directories. It uses a {@linkplain DirectoryStream} and
+ * reads the attributes of every entry once, on Windows they even come with
+ * the listing. The old {@linkplain File} calls asked the file system for
+ * every property on its own.
+ *
+ * <p>Links to directories are followed. Every directory remembers the keys
+ * of the directories above it, a directory that links to one of them is
+ * skipped, a link cycle would otherwise create endless submenus. The depth
+ * and the entries per directory are limited as well, a listing that hit a
+ * limit is marked as truncated.</p>
+ * */
+final class LinkDirectoryScanner {
+
+	/**
+	 * A listed directory and the directories above it. The chain is never
+	 * changed, it can be shared by the listings of all subdirectories.
+	 * */
+	static final class VisitedDirectory {
+		final Object fileKey;
+		final VisitedDirectory parent;
+		final int depth;
+
+		private VisitedDirectory(Object fileKey, VisitedDirectory parent, int depth) {
+			this.fileKey = fileKey;
+			this.parent = parent;
+			this.depth = depth;
+		}
+
+		boolean contains(Object fileKey) {
+			for (VisitedDirectory directory = this; directory != null; directory = directory.parent) {
+				if (fileKey.equals(directory.fileKey)) {
+					return true;
+				}
+			}
+			return false;
+		}
+	}
+	/**
+	 * An entry that passed the filter. It keeps the attributes that the
+	 * {@linkplain IconCache} needs, the file isn't asked for them again.
+	 * */
+	static final class Entry {
+		final File file;
+		/**
+		 * The chain of a directory or <tt>null</tt> for a link.
+		 * */
+		final VisitedDirectory visited;
+		final long modified;
+		final long size;
+
+		Entry(File file, VisitedDirectory visited, BasicFileAttributes attributes) {
+			this.file = file;
+			this.visited = visited;
+			this.modified = (attributes != null) ? attributes.lastModifiedTime().toMillis() : 0;
+			this.size = (attributes != null) ? attributes.size() : 0;
+		}
+
+		boolean isDirectory() {
+			return this.visited != null;
+		}
+	}
+	static final class Listing {
+		final List<Entry> entries;
+		/**
+		 * This is <tt>true</tt> if entries were left out because of a limit.
+		 * */
+		final boolean truncated;
+
+		Listing(List<Entry> entries, boolean truncated) {
+			this.entries = Collections.unmodifiableList(entries);
+			this.truncated = truncated;
+		}
+	}
+
+	/**
+	 * The entry of a directory that is too deep, it truncates the listing.
+	 * */
+	private static final Entry TOO_DEEP = new Entry(null, null, null);
+
+	/**
+	 * Windows hides files with an attribute, the other systems hide the files
+	 * that start with a dot. This is the same test as {@linkplain File#isHidden()}.
+	 * */
+	private static final boolean USE_DOS_ATTRIBUTES = File.separatorChar == '\\';
+
+	private final Logger logger;
+
+	LinkDirectoryScanner(Logger logger) {
+		this.logger = logger;
+	}
+
+	/**
+	 * This creates the chain of the link directory.
+	 * */
+	VisitedDirectory createRoot(File directory) {
+		Path path = directory.toPath();
+		Object fileKey = null;
+		try {
+			fileKey = GetFileKey(path, Files.readAttributes(path, BasicFileAttributes.class));
+		} catch (IOException e) {
+			this.logger.logAlert("LinkDirectoryScanner.createRoot: Unable to read the link directory", e);
+		}
+
+		return new VisitedDirectory(fileKey, null, 0);
+	}
+
+	/**
+	 * This lists the valid entries of the directory in the order of the file
+	 * system. The listing stops after <tt>maxEntries</tt> entries.
+	 *
+	 * @param visited The chain of the listed directory.
+	 * @param maxDepth The depth of the deepest directory that is listed, the
+	 *                 entries of the link directory have the depth 1.
+	 * */
+	Listing list(File directory, VisitedDirectory visited, int maxDepth, int maxEntries) {
+		List<Entry> entries = new ArrayList<>();
+		boolean truncated = false;
+
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory.toPath())) {
+			for (Path path : stream) {
+				Entry entry = readEntry(path, visited, maxDepth);
+				if (entry == null) {
+					continue;
+				}
+				if (entry == TOO_DEEP || entries.size() >= maxEntries) {
+					truncated = true;
+					if (entry == TOO_DEEP) {
+						continue;
+					}
+					break;
+				}
+
+				entries.add(entry);
+			}
+		} catch (IOException | DirectoryIteratorException e) {
+			this.logger.logAlert("LinkDirectoryScanner.list: Unable to list the directory: " + directory.getAbsolutePath(), e);
+		}
+
+		if (truncated) {
+			this.logger.logInfo("LinkDirectoryScanner.list: The directory was truncated: {}", directory.getAbsolutePath());
+		}
+		return new Listing(entries, truncated);
+	}
+
+	/**
+	 * This reads one entry of the directory.
+	 *
+	 * @return The entry or <tt>null</tt> if it doesn't exist or if it isn't valid.
+	 * */
+	Entry readEntry(File file, VisitedDirectory parent, int maxDepth) {
+		Entry entry = readEntry(file.toPath(), parent, maxDepth);
+		return (entry == TOO_DEEP) ? null : entry;
+	}
+	private Entry readEntry(Path path, VisitedDirectory parent, int maxDepth) {
+		String name = path.getFileName().toString();
+
+		BasicFileAttributes attributes;
+		try {
+			// I don't load hidden files. It would just confuse unknown users
+			if (USE_DOS_ATTRIBUTES) {
+				DosFileAttributes dosAttributes = Files.readAttributes(path, DosFileAttributes.class);
+				if (dosAttributes.isHidden()) {
+					return null;
+				}
+				attributes = dosAttributes;
+			} else {
+				if (name.startsWith(".")) {
+					return null;
+				}
+				attributes = Files.readAttributes(path, BasicFileAttributes.class);
+			}
+		} catch (IOException e) {
+			// It was deleted in the meantime or it's a broken link
+			return null;
+		}
+
+		// Test if the file is a windows link file
+		if (!attributes.isDirectory()) {
+			return IsLinkName(name) ? new Entry(path.toFile(), null, attributes) : null;
+		}
+
+		// Directories are valid, they will be listed as Menus with Link as sub items in the tray menu
+		if (parent.depth + 1 > maxDepth) {
+			return TOO_DEEP;
+		}
+		Object fileKey = GetFileKey(path, attributes);
+		if (fileKey != null && parent.contains(fileKey)) {
+			this.logger.logInfo("LinkDirectoryScanner.readEntry: Skipped the directory, it links to a directory above it: {}", path);
+			return null;
+		}
+
+		return new Entry(path.toFile(), new VisitedDirectory(fileKey, parent, parent.depth + 1), attributes);
+	}
+
+	static boolean IsLinkName(String name) {
+		int suffixLength = LinkManager.LINK_SUFFIX.length();
+		return name.regionMatches(true, name.length() - suffixLength, LinkManager.LINK_SUFFIX, 0, suffixLength);
+	}
+	/**
+	 * This returns the key of the file system or the real path on systems
+	 * without keys, like Windows.
+	 * */
+	private static Object GetFileKey(Path path, BasicFileAttributes attributes) {
+		Object fileKey = attributes.fileKey();
+		if (fileKey != null) {
+			return fileKey;
+		}
+
+		try {
+			return path.toRealPath();
+		} catch (IOException e) {
+			return null;
+		}
+	}
+}
@@ -0,0 +1,142 @@
+package com.gmail.xfrednet.xfutils.link;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import com.gmail.xfrednet.xfutils.util.Logger;
+
+/**
+ * This watches the link directory and its subdirectories. The
+ * {@linkplain WatchService} isn't recursive on every platform, every
+ * directory is therefore registered on its own by the scan that lists it.
+ *
+ * <p>The events are collected until the directories were quiet for
+ * {@linkplain #QUIET_MILLIS}, copying a bunch of links creates a lot of them.
+ * The changes are then passed to the handler as the names of the changed
+ * entries per directory. A directory is mapped to <tt>null</tt> if events
+ * were lost and it has to be listed again.</p>
+ * */
+class LinkDirectoryWatcher implements Runnable {
+
+	private static final long QUIET_MILLIS = 300;
+	/**
+	 * The changes are passed on after this time even if the events don't stop.
+	 * */
+	private static final long MAX_COLLECT_MILLIS = 2000;
+
+	private final WatchService watchService;
+	private final Consumer<Map<File, Set<String>>> changeHandler;
+	private final Logger logger;
+	private final Thread thread;
+
+	/**
+	 * @throws IOException If the watch service can't be created.
+	 * */
+	LinkDirectoryWatcher(Consumer<Map<File, Set<String>>> changeHandler, Logger logger) throws IOException {
+		this.watchService = FileSystems.getDefault().newWatchService();
+		this.changeHandler = changeHandler;
+		this.logger = logger;
+
+		this.thread = new Thread(this, "xFutils-LinkWatcher");
+		this.thread.setDaemon(true);
+	}
+
+	/**
+	 * This adds a directory, registering it twice does nothing. The events are
+	 * queued until {@linkplain #start()} is called.
+	 * */
+	void register(File directory) {
+		try {
+			directory.toPath().register(this.watchService, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY);
+		} catch (ClosedWatchServiceException e) {
+			// close() was called
+		} catch (IOException e) {
+			this.logger.logAlert("LinkDirectoryWatcher.register: Unable to watch the directory: " + directory.getAbsolutePath(), e);
+		}
+	}
+	/**
+	 * This starts passing the changes to the handler.
+	 * */
+	void start() {
+		this.thread.start();
+	}
+	void close() {
+		try {
+			this.watchService.close();
+		} catch (IOException e) {
+			this.logger.logAlert("LinkDirectoryWatcher.close: Unable to close the watch service", e);
+		}
+	}
+
+	@Override
+	public void run() {
+		try {
+			while (true) {
+				// Wait for the first change
+				Map<File, Set<String>> changes = new HashMap<>();
+				takeEvents(this.watchService.take(), changes);
+
+				// Collect the following events until the directories are quiet
+				long collectEnd = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(MAX_COLLECT_MILLIS);
+				while (System.nanoTime() - collectEnd < 0) {
+					WatchKey key = this.watchService.poll(QUIET_MILLIS, TimeUnit.MILLISECONDS);
+					if (key == null) {
+						break;
+					}
+					takeEvents(key, changes);
+				}
+
+				if (changes.isEmpty()) {
+					continue;
+				}
+				try {
+					this.changeHandler.accept(changes);
+				} catch (RuntimeException e) {
+					this.logger.logAlert("LinkDirectoryWatcher.run: Unable to apply the changes of the link directory", e);
+				}
+			}
+		} catch (ClosedWatchServiceException e) {
+			// close() was called
+		} catch (InterruptedException e) {
+			this.logger.logInfo("LinkDirectoryWatcher.run: The watcher was interrupted");
+		}
+	}
+	/**
+	 * This empties the key and adds the names of the changed entries to the map.
+	 * */
+	private static void takeEvents(WatchKey key, Map<File, Set<String>> changes) {
+		File directory = ((Path)key.watchable()).toFile();
+		for (WatchEvent<?> event : key.pollEvents()) {
+			if (event.kind() == OVERFLOW) {
+				changes.put(directory, null);
+				continue;
+			}
+			if (changes.containsKey(directory) && changes.get(directory) == null) {
+				// The directory is listed again anyway
+				continue;
+			}
+
+			changes.computeIfAbsent(directory, d -> new HashSet<>()).add(event.context().toString());
+		}
+
+		// A deleted directory can't be reset, its parent gets an event for it
+		key.reset();
+	}
+}
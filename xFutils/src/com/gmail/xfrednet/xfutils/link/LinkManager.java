@@ -1,21 +1,43 @@
 package com.gmail.xfrednet.xfutils.link;
 
+import java.awt.Component;
 import java.awt.Desktop;
 import java.awt.Graphics2D;
 import java.awt.Image;
 import java.awt.image.BufferedImage;
 import java.io.File;
-import java.io.FileFilter;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 
 import javax.swing.Icon;
-import javax.swing.ImageIcon;
 import javax.swing.JMenu;
 import javax.swing.JMenuItem;
+import javax.swing.JPopupMenu;
+import javax.swing.SwingUtilities;
+import javax.swing.event.MenuEvent;
+import javax.swing.event.MenuListener;
 
 import com.gmail.xfrednet.xfutils.Main;
+import com.gmail.xfrednet.xfutils.util.IndependentPopupMenu;
+import com.gmail.xfrednet.xfutils.util.Logger;
+import com.gmail.xfrednet.xfutils.util.Settings;
 import com.gmail.xfrednet.xfutils.util.language.Language;
+import com.gmail.xfrednet.xfutils.util.language.LanguageKeyIds;
 
 import sun.awt.shell.ShellFolder;
 
@@ -27,10 +49,89 @@ import sun.awt.shell.ShellFolder;
 public class LinkManager {
 
 	private static final String LINK_DIR    = "../links/";
+	private static final String ICON_CACHE_DIR = "../cache/icons/";
 	static final String LINK_SUFFIX = ".lnk";
 	private static final int MENU_ICON_SIZE = 32;
+	private static final String LOGGER_NAME = "link";
+	/**
+	 * The client property of the menu items that holds their file.
+	 * */
+	private static final String ITEM_FILE_PROPERTY = "xFutils.linkFile";
+	/**
+	 * The client property of the placeholder items that holds their key id.
+	 * */
+	private static final String PLACEHOLDER_PROPERTY = "xFutils.placeholder";
+	/**
+	 * The client property of a directory menu while its directory is listed.
+	 * */
+	private static final String LOADING_PROPERTY = "xFutils.loading";
+	
+	/**
+	 * A listing is stopped after this time. The rest of the directory is shown
+	 * as not loaded, a huge or slow directory can't keep the menu waiting.
+	 * */
+	private static final long SCAN_TIME_LIMIT_MILLIS = 5000;
+	private static final int SCAN_MAX_THREADS = 4;
 	
 	private Language language;
+	private Settings settings;
+	private Logger logger;
+	private LinkDirectoryScanner scanner;
+	/**
+	 * The chain of the link directory, it's set by the first scan.
+	 * */
+	private volatile LinkDirectoryScanner.VisitedDirectory rootVisited = null;
+	
+	/**
+	 * The pool of the link scan. The entries of a directory are loaded in
+	 * parallel, most of the time is spend waiting on the file system and the icons.
+	 * */
+	private final ForkJoinPool scanPool = CreateScanPool();
+	private IconCache iconCache;
+	private volatile Scan scan = null;
+	private volatile LinkDirectoryWatcher watcher = null;
+	private volatile boolean terminated = false;
+	/**
+	 * The absolute link directory, all files of the menu are inside it.
+	 * */
+	private File linkDir;
+	
+	// The menu state is only changed on the event dispatch thread
+	private IndependentPopupMenu menu = null;
+	private JMenuItem addLinkItem = null;
+	/**
+	 * The placeholder after the top level items if the link directory has
+	 * more entries than the limit, otherwise <tt>null</tt>.
+	 * */
+	private JMenuItem truncatedItem = null;
+	private final List<JMenuItem> rootItems = new ArrayList<>();
+	/**
+	 * The filled menus of the directories by their path. A directory menu is
+	 * filled when it's opened the first time, the watcher thread reads the
+	 * keys to know which directories have to be patched.
+	 * */
+	private final ConcurrentNavigableMap<String, DirectoryMenu> directoryMenus = new ConcurrentSkipListMap<>();
+	/**
+	 * The paths of the directories that are listed for their menu. They are
+	 * watched before they are listed, a path is mapped to <tt>true</tt> if
+	 * the directory was changed in the meantime. The menu is then listed
+	 * again after it was filled. This map is also the lock for itself.
+	 * */
+	private final Map<String, Boolean> listingDirectories = new HashMap<>();
+	
+	/**
+	 * A filled directory menu and the chain of its directory, the chain is
+	 * used to read the entries that are added later.
+	 * */
+	private static final class DirectoryMenu {
+		final JMenu menu;
+		final LinkDirectoryScanner.VisitedDirectory visited;
+		
+		DirectoryMenu(JMenu menu, LinkDirectoryScanner.VisitedDirectory visited) {
+			this.menu = menu;
+			this.visited = visited;
+		}
+	}
 	
 	/**
 	 * This method tests if the {@link #LINK_DIR <tt>link directory</tt>}
@@ -40,17 +141,22 @@ public class LinkManager {
 	 * @return It returns true if this instance can be used and if the 
 	 *         directory is valid.
 	 * */
-	public boolean init(Language language) {
+	public boolean init(Language language, Settings settings) {
 		if (!Main.AreLinksEnabled)
 			return false;
 			
 		this.language = language;
+		this.settings = settings;
+		this.logger = Main.Logger.getLogger(LOGGER_NAME);
+		this.scanner = new LinkDirectoryScanner(this.logger);
+		this.iconCache = new IconCache(new File(ICON_CACHE_DIR), this.logger);
+		this.linkDir = new File(LINK_DIR).toPath().toAbsolutePath().normalize().toFile();
 		
 		return linkDirectoryValidation();
 	}
 	private boolean linkDirectoryValidation() {
 		File linkDir = new File(LINK_DIR);
-		Main.Logger.logInfo("LinkManager.loadLinkFiles: The link directory is: " + linkDir.getAbsolutePath());
+		this.logger.logInfo("LinkManager.loadLinkFiles: The link directory is: {}", linkDir.getAbsolutePath());
 		
 		//
 		// #### Validate the link directory
@@ -59,18 +165,18 @@ public class LinkManager {
 		if (!linkDir.exists()) {
 			// The file does not exist
 			
-			Main.Logger.logInfo("LinkManager.loadLinkFiles: The link directory does not exist it will be created!");
+			this.logger.logInfo("LinkManager.loadLinkFiles: The link directory does not exist it will be created!");
 			if (!linkDir.mkdir()) {
-				Main.Logger.logAlert("LinkManager.loadLinkFiles: The link directory creation failed!");
+				this.logger.logAlert("LinkManager.loadLinkFiles: The link directory creation failed!");
 				return false;
 			}
 			
-			Main.Logger.logInfo("LinkManager.loadLinkFiles: The link directory was created sucessfully!");
+			this.logger.logInfo("LinkManager.loadLinkFiles: The link directory was created sucessfully!");
 			return true;
 		}
 		// Directory check
 		if (!linkDir.isDirectory()) {
-			Main.Logger.logError("LinkManager.loadLinkFiles: The link directory is a file.... I can't work like this!!!!");
+			this.logger.logError("LinkManager.loadLinkFiles: The link directory is a file.... I can't work like this!!!!");
 			return false;
 		}
 		
@@ -78,142 +184,770 @@ public class LinkManager {
 		return true;
 	}
 	
-	// Creates a JMenuItem for every file and folder that is inside the link directory 
-	public JMenuItem[] getMenuItems() {
-		// Value creation
-		File linkDir = new File(LINK_DIR);
-		File[] validFiles = linkDir.listFiles(new LinkManagerFileFilter());
-		JMenuItem[] menuItems = new JMenuItem[((validFiles != null) ? validFiles.length : 0) + 1];
+	// ##########################################
+	// # Scanning
+	// ##########################################
+	/**
+	 * This adds a placeholder and the "add link" item to the given section and
+	 * starts a scan of the {@link #LINK_DIR <tt>link directory</tt>}. The scan
+	 * runs on the {@linkplain #scanPool} and doesn't block the caller.
+	 * 
+	 * <p>The placeholder is replaced by the top level entries as soon as the
+	 * link directory was listed, their icons follow. Only the top level is
+	 * scanned, a directory menu lists its directory when it's opened the first
+	 * time. Every listing is stopped after {@linkplain #SCAN_TIME_LIMIT_MILLIS}.</p>
+	 * 
+	 * <p>Every listed directory is watched afterwards. Changes are patched
+	 * into the menu by {@linkplain #linksChanged(Map)}.</p>
+	 * */
+	public void installMenuItems(IndependentPopupMenu menu, int sectionNo) {
+		JMenuItem placeholder = createPlaceholderItem(LanguageKeyIds.MENU_ITEM_LOADING);
+		this.menu = menu;
+		this.addLinkItem = createAddLinkMenu();
+		menu.add(placeholder, sectionNo);
+		menu.add(this.addLinkItem, sectionNo);
 		
-		// Create a MenuItem for every valid file
-		for (int itemIndex = 0; itemIndex < menuItems.length - 1; itemIndex++) {
-			menuItems[itemIndex] = createMenuItemFromFile(validFiles[itemIndex]);
+		try {
+			this.watcher = new LinkDirectoryWatcher(this::linksChanged, this.logger);
+		} catch (IOException e) {
+			this.logger.logAlert("LinkManager.installMenuItems: Unable to watch the link directory, changes need a restart", e);
 		}
 		
-		menuItems[menuItems.length - 1] = createAddLinkMenu();
+		Scan scan = new Scan(menu, placeholder);
+		this.scan = scan;
+		this.scanPool.execute(scan);
+	}
+	/**
+	 * This stops the running scan. Subtrees that are already scanned are no
+	 * longer installed into the menu.
+	 * */
+	public void cancelScan() {
+		Scan scan = this.scan;
+		if (scan != null) {
+			scan.cancelled = true;
+		}
+	}
+	/**
+	 * This stops the scan and the watcher and closes the icon cache. The
+	 * instance can't be used afterwards.
+	 * */
+	public void terminate() {
+		this.terminated = true;
+		cancelScan();
 		
-		// return the MenuItems
-		return menuItems;
+		LinkDirectoryWatcher watcher = this.watcher;
+		if (watcher != null) {
+			watcher.close();
+		}
+		this.scanPool.shutdownNow();
+		this.iconCache.close();
 	}
-	private JMenuItem createAddLinkMenu() {
-		JMenuItem addLinkMenu = new JMenuItem(this.language.getString(Language.Keys.MENU_ITEM_ADD_LINK));
+	
+	private static ForkJoinPool CreateScanPool() {
+		int threadCount = Math.max(1, Math.min(SCAN_MAX_THREADS, Runtime.getRuntime().availableProcessors()));
+		return new ForkJoinPool(threadCount, pool -> {
+			// The worker threads of a ForkJoinPool are daemon threads
+			ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+			thread.setName("xFutils-LinkScanner-" + thread.getPoolIndex());
+			return thread;
+		}, null, false);
+	}
+	
+	/**
+	 * One scan of the link directory. It lists the top level entries, these
+	 * are installed as the skeleton of the menu. The icons are loaded by
+	 * {@linkplain NodeTask}s afterwards and installed as they are done. The
+	 * subdirectories are only listed when their menu is opened.
+	 * 
+	 * <p>The listing of a directory menu creates a scan without menu, it only
+	 * limits the time of its {@linkplain NodeTask}s.</p>
+	 * */
+	private final class Scan extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
 		
-		// Open in explorer
-		addLinkMenu.addActionListener(l -> {
-			try {
-				Desktop.getDesktop().open(new File(LINK_DIR));
-			} catch (IOException e) {
-				Main.Logger.logError("LinkManager[AddLink-Item]: Unable to open the link-directory", e);
+		final IndependentPopupMenu menu;
+		final JMenuItem placeholder;
+		final long startTime = System.nanoTime();
+		final long deadline = this.startTime + TimeUnit.MILLISECONDS.toNanos(SCAN_TIME_LIMIT_MILLIS);
+		volatile boolean cancelled = false;
+		volatile boolean timedOut = false;
+		
+		/**
+		 * The top level items that wait for their icon. This is only used on
+		 * the event dispatch thread.
+		 * */
+		final Map<File, JMenuItem> pendingItems = new HashMap<>();
+		
+		Scan(IndependentPopupMenu menu, JMenuItem placeholder) {
+			this.menu = menu;
+			this.placeholder = placeholder;
+		}
+		
+		boolean isStopped() {
+			if (this.cancelled || LinkManager.this.terminated) {
+				return true;
 			}
-		});
+			if (System.nanoTime() - this.deadline >= 0) {
+				this.timedOut = true;
+				return true;
+			}
+			return false;
+		}
 		
-		return addLinkMenu;
+		@Override
+		protected void compute() {
+			try {
+				scan();
+			} catch (RuntimeException e) {
+				LinkManager.this.logger.logAlert("LinkManager.Scan: The scan of the link directory failed", e);
+			}
+		}
+		private void scan() {
+			LinkDirectoryScanner.VisitedDirectory rootVisited = LinkManager.this.scanner.createRoot(LinkManager.this.linkDir);
+			LinkManager.this.rootVisited = rootVisited;
+			
+			watch(LinkManager.this.linkDir);
+			LinkDirectoryScanner.Listing listing = listEntries(LinkManager.this.linkDir, rootVisited);
+			LinkDirectoryScanner.Entry[] entries = listing.entries.toArray(new LinkDirectoryScanner.Entry[0]);
+			
+			// The skeleton is only made of labels, it can be installed right away
+			List<LinkNode> skeleton = new ArrayList<>(entries.length);
+			for (LinkDirectoryScanner.Entry entry : entries) {
+				skeleton.add(CreateNode(entry, null));
+			}
+			SwingUtilities.invokeLater(() -> installSkeleton(this, skeleton, listing.truncated));
+			
+			// The skeleton is posted first, the icons can't overtake it
+			new NodeTask(this, entries, new LinkNode[entries.length], 0, entries.length, true).invoke();
+			
+			long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - this.startTime);
+			if (this.cancelled) {
+				LinkManager.this.logger.logInfo("LinkManager.Scan: The scan was cancelled after {} ms", millis);
+			} else if (this.timedOut) {
+				LinkManager.this.logger.logAlert("LinkManager.Scan: The scan was stopped after {} ms, some icons are not loaded", millis);
+			} else {
+				LinkManager.this.logger.logInfo("LinkManager.Scan: Scanned the link directory in {} ms", millis);
+			}
+			LinkManager.this.iconCache.logStatistics();
+			
+			// This checks every indexed file, the top level is already installed
+			LinkManager.this.iconCache.prune();
+			
+			// The events since the directory was registered are queued
+			LinkDirectoryWatcher watcher = LinkManager.this.watcher;
+			if (watcher != null && !this.cancelled) {
+				watcher.start();
+			}
+		}
 	}
-	private JMenuItem createMenuItemFromFile(File itemFile) {
-		String menuLabel = getMenuLabelFromFile(itemFile);
+	/**
+	 * This creates the nodes of a range of directory entries with their icons.
+	 * The range is split until it's small, the icons are therefore loaded in
+	 * parallel. Entries that weren't reached before the scan was stopped stay
+	 * <tt>null</tt>.
+	 * */
+	private final class NodeTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private static final int SPLIT_THRESHOLD = 8;
+		
+		private final Scan scan;
+		private final LinkDirectoryScanner.Entry[] entries;
+		private final LinkNode[] nodes;
+		private final int from;
+		private final int to;
+		/**
+		 * The finished nodes are installed into the top level items.
+		 * */
+		private final boolean install;
 		
-		// If the file is a directory a sub menu is created with the 
-		// valid files from that directory (if any)
-		if (itemFile.isDirectory()) {
-			JMenu item = new JMenu(menuLabel);
-			item.setIcon(LoadFileIcon(itemFile));
+		NodeTask(Scan scan, LinkDirectoryScanner.Entry[] entries, LinkNode[] nodes, int from, int to, boolean install) {
+			this.scan = scan;
+			this.entries = entries;
+			this.nodes = nodes;
+			this.from = from;
+			this.to = to;
+			this.install = install;
+		}
+		
+		@Override
+		protected void compute() {
+			if (this.to - this.from > SPLIT_THRESHOLD) {
+				int middle = (this.from + this.to) >>> 1;
+				invokeAll(
+						new NodeTask(this.scan, this.entries, this.nodes, this.from, middle, this.install),
+						new NodeTask(this.scan, this.entries, this.nodes, middle, this.to, this.install));
+				return;
+			}
 			
-			// Add items for all valid files
-			File[] validFiles = itemFile.listFiles(new LinkManagerFileFilter());
-			if (validFiles != null && validFiles.length != 0) {
-				for (File file : validFiles) {
-					item.add(createMenuItemFromFile(file));
+			List<LinkNode> finishedNodes = new ArrayList<>(this.to - this.from);
+			for (int entryIndex = this.from; entryIndex < this.to; entryIndex++) {
+				if (this.scan.isStopped()) {
+					break;
 				}
+				
+				LinkDirectoryScanner.Entry entry = this.entries[entryIndex];
+				this.nodes[entryIndex] = CreateNode(entry, loadFileIcon(entry));
+				finishedNodes.add(this.nodes[entryIndex]);
+			}
+			
+			if (this.install && !finishedNodes.isEmpty()) {
+				SwingUtilities.invokeLater(() -> installIcons(this.scan, finishedNodes));
+			}
+		}
+	}
+	/**
+	 * This lists one directory for its menu. The subdirectories aren't listed,
+	 * they get their own menu that lists them when it's opened.
+	 * 
+	 * <p>This has to be called by a thread of the {@linkplain #scanPool}.</p>
+	 * */
+	private LinkNode listDirectory(LinkNode directoryNode) {
+		Scan scan = new Scan(null, null);
+		File directory = directoryNode.file;
+		
+		// Changes while it's listed are remembered by linksChanged()
+		synchronized (this.listingDirectories) {
+			this.listingDirectories.put(directory.getPath(), Boolean.FALSE);
+		}
+		watch(directory);
+		LinkDirectoryScanner.Listing listing = listEntries(directory, directoryNode.visited);
+		LinkDirectoryScanner.Entry[] entries = listing.entries.toArray(new LinkDirectoryScanner.Entry[0]);
+		LinkNode[] nodes = new LinkNode[entries.length];
+		new NodeTask(scan, entries, nodes, 0, entries.length, false).invoke();
+		
+		List<LinkNode> children = new ArrayList<>(entries.length);
+		for (LinkNode node : nodes) {
+			if (node != null) {
+				children.add(node);
+			}
+		}
+		if (scan.timedOut) {
+			this.logger.logAlert("LinkManager.listDirectory: The directory wasn't listed in time: {}", directory.getAbsolutePath());
+		}
+		
+		return LinkNode.Directory(directory, directoryNode.label, null, directoryNode.visited, 
+				children, children.size() == entries.length, listing.truncated);
+	}
+	/**
+	 * This lists the entries with the limits of the settings. They are read
+	 * for every listing, changed limits are used by the next opened menu.
+	 * */
+	private LinkDirectoryScanner.Listing listEntries(File directory, LinkDirectoryScanner.VisitedDirectory visited) {
+		return this.scanner.list(directory, visited, this.settings.getLinkMaxDepth(), this.settings.getLinkMaxEntries());
+	}
+	/**
+	 * This creates the node of a directory entry, a directory is created
+	 * without its children.
+	 * */
+	private static LinkNode CreateNode(LinkDirectoryScanner.Entry entry, Icon icon) {
+		String label = getMenuLabelFromFile(entry.file);
+		if (entry.isDirectory()) {
+			return LinkNode.UnlistedDirectory(entry.file, label, icon, entry.visited);
+		}
+		
+		return LinkNode.Link(entry.file, label, icon);
+	}
+	private void watch(File directory) {
+		LinkDirectoryWatcher watcher = this.watcher;
+		if (watcher != null) {
+			watcher.register(directory);
+		}
+	}
+	
+	// ##########################################
+	// # Watching
+	// ##########################################
+	/**
+	 * The changes of one directory. The nodes are created by the watcher
+	 * thread, they are applied on the event dispatch thread.
+	 * */
+	private static final class DirectoryPatch {
+		final File directory;
+		/**
+		 * The directory was listed again, every item without node is removed.
+		 * */
+		final boolean relisted;
+		final List<LinkNode> nodes = new ArrayList<>();
+		final List<File> removedFiles = new ArrayList<>();
+		DirectoryPatch(File directory, boolean relisted) {
+			this.directory = directory;
+			this.relisted = relisted;
+		}
+	}
+	/**
+	 * This is called by the {@linkplain LinkDirectoryWatcher} with the names of
+	 * the changed entries per directory. Only these entries are looked at, the
+	 * cost of a change therefore doesn't depend on the size of the link tree.
+	 * 
+	 * <p>Only the directories with a filled menu are watched and patched. The
+	 * other ones are listed when their menu is opened. A directory that is
+	 * being listed is listed again after its menu was filled.</p>
+	 * */
+	private void linksChanged(Map<File, Set<String>> changes) {
+		if (this.terminated) {
+			return;
+		}
+		
+		int patchCount = 0;
+		for (Map.Entry<File, Set<String>> change : changes.entrySet()) {
+			File directory = change.getKey();
+			if (!directory.equals(this.linkDir) && !isPatchable(directory.getPath())) {
+				// The menu of the directory isn't filled, it's listed when it's opened
+				continue;
+			}
+			
+			DirectoryPatch patch = createPatch(directory, change.getValue());
+			SwingUtilities.invokeLater(() -> applyPatch(patch));
+			patchCount++;
+		}
+		
+		this.logger.logDebugMessage("LinkManager.linksChanged: Patched {} directories", patchCount);
+	}
+	/**
+	 * This tests if the directory has a filled menu. A directory that is
+	 * being listed is marked as changed instead.
+	 * */
+	private boolean isPatchable(String path) {
+		synchronized (this.listingDirectories) {
+			if (this.listingDirectories.containsKey(path)) {
+				this.listingDirectories.put(path, Boolean.TRUE);
+				return false;
+			}
+		}
+		
+		return this.directoryMenus.containsKey(path);
+	}
+	private DirectoryPatch createPatch(File directory, Set<String> names) {
+		LinkDirectoryScanner.VisitedDirectory visited;
+		if (directory.equals(this.linkDir)) {
+			visited = this.rootVisited;
+		} else {
+			DirectoryMenu directoryMenu = this.directoryMenus.get(directory.getPath());
+			if (directoryMenu == null) {
+				// The menu was dropped in the meantime
+				return new DirectoryPatch(directory, false);
+			}
+			visited = directoryMenu.visited;
+		}
+		
+		// The directory is listed again if events were lost
+		DirectoryPatch patch = new DirectoryPatch(directory, names == null);
+		if (names == null) {
+			for (LinkDirectoryScanner.Entry entry : listEntries(directory, visited).entries) {
+				patch.nodes.add(CreateNode(entry, loadFileIcon(entry)));
+			}
+			return patch;
+		}
+		
+		int maxDepth = this.settings.getLinkMaxDepth();
+		for (String name : names) {
+			File file = new File(directory, name);
+			LinkDirectoryScanner.Entry entry = this.scanner.readEntry(file, visited, maxDepth);
+			if (entry == null) {
+				patch.removedFiles.add(file);
 			} else {
-				item.add(this.language.getString(Language.Keys.MENU_ITEM_EMPTY));
+				patch.nodes.add(CreateNode(entry, loadFileIcon(entry)));
 			}
-
-			return item;
 		}
-
-		// TODO add a Icon preview
+		
+		return patch;
+	}
+	/**
+	 * This patches the items of one directory. Items that weren't changed
+	 * are kept, the subdirectories keep their menus and their content.
+	 * */
+	private void applyPatch(DirectoryPatch patch) {
+		if (this.terminated) {
+			return;
+		}
+		
+		boolean isRoot = patch.directory.equals(this.linkDir);
+		DirectoryMenu filledMenu = isRoot ? null : this.directoryMenus.get(patch.directory.getPath());
+		if (!isRoot && filledMenu == null) {
+			// The directory was removed from the menu in the meantime
+			return;
+		}
+		JMenu directoryMenu = isRoot ? null : filledMenu.menu;
+		
+		List<JMenuItem> items = isRoot ? this.rootItems : GetItems(directoryMenu);
+		Map<File, JMenuItem> itemsByFile = new HashMap<>();
+		for (JMenuItem item : items) {
+			File file = GetItemFile(item);
+			if (file != null) {
+				itemsByFile.put(file, item);
+			}
+		}
+		
+		// Removed entries
+		Set<File> removedFiles = new HashSet<>(patch.removedFiles);
+		if (patch.relisted) {
+			removedFiles.addAll(itemsByFile.keySet());
+			for (LinkNode node : patch.nodes) {
+				removedFiles.remove(node.file);
+			}
+		}
+		for (File file : removedFiles) {
+			JMenuItem item = itemsByFile.remove(file);
+			if (item != null) {
+				removeItem(directoryMenu, item);
+				forgetDirectoryMenus(file);
+			}
+		}
+		
+		// New and changed entries
+		for (LinkNode node : patch.nodes) {
+			JMenuItem item = itemsByFile.get(node.file);
+			if (item instanceof JMenu && node.isDirectory()) {
+				item.setIcon(node.icon);
+				continue;
+			}
+			
+			if (item != null) {
+				forgetDirectoryMenus(node.file);
+			}
+			JMenuItem newItem = createMenuItem(node);
+			if (item != null) {
+				replaceItem(directoryMenu, item, newItem);
+			} else {
+				insertItem(directoryMenu, newItem);
+			}
+			itemsByFile.put(node.file, newItem);
+		}
+		
+		if (directoryMenu != null) {
+			updatePlaceholders(directoryMenu);
+			directoryMenu.getPopupMenu().revalidate();
+			directoryMenu.getPopupMenu().repaint();
+		}
+	}
+	/**
+	 * The item operations work on the given menu or on the top level items if
+	 * the menu is <tt>null</tt>.
+	 * */
+	private void removeItem(JMenu directoryMenu, JMenuItem item) {
+		if (directoryMenu == null) {
+			this.menu.remove(item);
+			this.rootItems.remove(item);
+		} else {
+			directoryMenu.remove(item);
+		}
+	}
+	private void replaceItem(JMenu directoryMenu, JMenuItem item, JMenuItem newItem) {
+		if (directoryMenu == null) {
+			this.menu.replace(item, Collections.singletonList(newItem));
+			this.rootItems.set(this.rootItems.indexOf(item), newItem);
+		} else {
+			int index = directoryMenu.getPopupMenu().getComponentIndex(item);
+			directoryMenu.remove(index);
+			directoryMenu.insert(newItem, index);
+		}
+	}
+	/**
+	 * This inserts the item in front of the first item with a greater label,
+	 * the placeholders stay at the end.
+	 * */
+	private void insertItem(JMenu directoryMenu, JMenuItem newItem) {
+		List<JMenuItem> items = (directoryMenu == null) ? this.rootItems : GetItems(directoryMenu);
+		int index = 0;
+		while (index < items.size()) {
+			JMenuItem item = items.get(index);
+			if (GetItemFile(item) == null || String.CASE_INSENSITIVE_ORDER.compare(item.getText(), newItem.getText()) > 0) {
+				break;
+			}
+			index++;
+		}
+		
+		if (directoryMenu == null) {
+			JMenuItem lastItem = (this.truncatedItem != null) ? this.truncatedItem : this.addLinkItem;
+			this.menu.insertBefore(newItem, (index < items.size()) ? items.get(index) : lastItem);
+			this.rootItems.add(index, newItem);
+		} else {
+			directoryMenu.insert(newItem, index);
+		}
+	}
+	/**
+	 * This adds or removes the "empty" item after the items were changed.
+	 * */
+	private void updatePlaceholders(JMenu directoryMenu) {
+		boolean hasLinks = false;
+		boolean hasPlaceholder = false;
+		JMenuItem emptyItem = null;
+		for (JMenuItem item : GetItems(directoryMenu)) {
+			Object keyId = item.getClientProperty(PLACEHOLDER_PROPERTY);
+			if (keyId == null) {
+				hasLinks = true;
+			} else if (((Integer)keyId) == LanguageKeyIds.MENU_ITEM_EMPTY) {
+				emptyItem = item;
+			} else {
+				hasPlaceholder = true;
+			}
+		}
+		
+		if (hasLinks && emptyItem != null) {
+			directoryMenu.remove(emptyItem);
+		} else if (!hasLinks && !hasPlaceholder && emptyItem == null) {
+			directoryMenu.add(createPlaceholderItem(LanguageKeyIds.MENU_ITEM_EMPTY));
+		}
+	}
+	/**
+	 * This drops the menus of the directory and its subdirectories, they are
+	 * no longer patched.
+	 * */
+	private void forgetDirectoryMenus(File directory) {
+		String path = directory.getPath();
+		this.directoryMenus.remove(path);
+		this.directoryMenus.subMap(path + File.separator, path + File.separator + Character.MAX_VALUE).clear();
+	}
+	private static List<JMenuItem> GetItems(JMenu menu) {
+		List<JMenuItem> items = new ArrayList<>(menu.getItemCount());
+		for (Component component : menu.getMenuComponents()) {
+			if (component instanceof JMenuItem) {
+				items.add((JMenuItem)component);
+			}
+		}
+		return items;
+	}
+	private static File GetItemFile(JMenuItem item) {
+		return (File)item.getClientProperty(ITEM_FILE_PROPERTY);
+	}
+	
+	// ##########################################
+	// # Menu creation (event dispatch thread)
+	// ##########################################
+	private void installSkeleton(Scan scan, List<LinkNode> skeleton, boolean truncated) {
+		if (scan.cancelled) {
+			return;
+		}
+		
+		List<JMenuItem> items = new ArrayList<>(skeleton.size());
+		for (LinkNode node : skeleton) {
+			JMenuItem item = createMenuItem(node);
+			scan.pendingItems.put(node.file, item);
+			items.add(item);
+		}
+		
+		this.rootItems.addAll(items);
+		if (truncated) {
+			this.truncatedItem = createPlaceholderItem(LanguageKeyIds.MENU_ITEM_NOT_LOADED);
+			items.add(this.truncatedItem);
+		}
+		scan.menu.replace(scan.placeholder, items);
+	}
+	/**
+	 * This sets the icons of the items that were created by
+	 * {@linkplain #installSkeleton(Scan, List, boolean)}.
+	 * */
+	private void installIcons(Scan scan, List<LinkNode> nodes) {
+		if (scan.cancelled) {
+			return;
+		}
+		
+		for (LinkNode node : nodes) {
+			JMenuItem item = scan.pendingItems.remove(node.file);
+			if (item != null) {
+				item.setIcon(node.icon);
+			}
+		}
+	}
+	private JMenuItem createMenuItem(LinkNode node) {
+		// If the node is a directory a sub menu is created, it lists 
+		// the valid files from that directory when it's opened
+		if (node.isDirectory()) {
+			return createDirectoryMenu(node);
+		}
+		
 		// Create Item and an ActionListener
-		JMenuItem item = new JMenuItem(menuLabel);
-		item.setIcon(LoadFileIcon(itemFile));
-		item.addActionListener(l -> StartLink(itemFile));
+		JMenuItem item = new JMenuItem(node.label);
+		item.setIcon(node.icon);
+		item.putClientProperty(ITEM_FILE_PROPERTY, node.file);
+		item.addActionListener(l -> startLink(node.file));
 		
 		return item;
 	}
-	
+	private JMenu createDirectoryMenu(LinkNode node) {
+		JMenu menu = new JMenu(node.label);
+		menu.setIcon(node.icon);
+		menu.putClientProperty(ITEM_FILE_PROPERTY, node.file);
+		menu.add(createPlaceholderItem(LanguageKeyIds.MENU_ITEM_LOADING));
+		
+		menu.addMenuListener(new MenuListener() {
+			@Override
+			public void menuSelected(MenuEvent e) {
+				loadDirectoryMenu(menu, node);
+			}
+			@Override
+			public void menuDeselected(MenuEvent e) {}
+			@Override
+			public void menuCanceled(MenuEvent e) {}
+		});
+		
+		return menu;
+	}
+	/**
+	 * This lists the directory on the {@linkplain #scanPool} and fills the
+	 * menu with the result. A filled menu is kept and patched by the watcher,
+	 * it's only listed again if the listing wasn't complete.
+	 * */
+	private void loadDirectoryMenu(JMenu menu, LinkNode directoryNode) {
+		File directory = directoryNode.file;
+		DirectoryMenu filledMenu = this.directoryMenus.get(directory.getPath());
+		if (this.terminated || 
+				(filledMenu != null && filledMenu.menu == menu) ||
+				menu.getClientProperty(LOADING_PROPERTY) != null) {
+			return;
+		}
+		
+		menu.putClientProperty(LOADING_PROPERTY, Boolean.TRUE);
+		try {
+			this.scanPool.execute(ForkJoinTask.adapt(() -> {
+				LinkNode node;
+				try {
+					node = listDirectory(directoryNode);
+				} catch (RuntimeException e) {
+					this.logger.logAlert("LinkManager.loadDirectoryMenu: Unable to list the directory: " + directory.getAbsolutePath(), e);
+					node = LinkNode.Directory(directory, directoryNode.label, null, directoryNode.visited, 
+							Collections.emptyList(), false, false);
+				}
+				
+				LinkNode listedNode = node;
+				SwingUtilities.invokeLater(() -> installDirectory(menu, listedNode));
+			}));
+		} catch (RejectedExecutionException e) {
+			// The pool was shut down by terminate()
+			menu.putClientProperty(LOADING_PROPERTY, null);
+		}
+	}
+	private void installDirectory(JMenu menu, LinkNode node) {
+		menu.putClientProperty(LOADING_PROPERTY, null);
+		if (this.terminated) {
+			return;
+		}
+		
+		// The menu is registered first, later changes are patched into it
+		fillMenu(menu, node);
+		
+		String path = node.file.getPath();
+		Boolean changed;
+		synchronized (this.listingDirectories) {
+			changed = this.listingDirectories.remove(path);
+		}
+		if (Boolean.TRUE.equals(changed) && this.directoryMenus.containsKey(path)) {
+			// The listing might miss the changes
+			this.logger.logDebugMessage("LinkManager.installDirectory: The directory was changed while it was listed: {}", path);
+			try {
+				this.scanPool.execute(ForkJoinTask.adapt(() -> linksChanged(Collections.singletonMap(node.file, null))));
+			} catch (RejectedExecutionException e) {
+				// The pool was shut down by terminate()
+			}
+		}
+		
+		// The menu is most likely open, its popup has to grow
+		JPopupMenu popupMenu = menu.getPopupMenu();
+		if (popupMenu.isVisible()) {
+			popupMenu.pack();
+		}
+		popupMenu.revalidate();
+		popupMenu.repaint();
+	}
+	private void fillMenu(JMenu menu, LinkNode node) {
+		menu.removeAll();
+		
+		// Add items for all valid files
+		for (LinkNode child : node.children) {
+			menu.add(createMenuItem(child));
+		}
+		
+		String path = node.file.getPath();
+		if (!node.complete) {
+			// It's listed again when it's opened the next time
+			menu.add(createPlaceholderItem(LanguageKeyIds.MENU_ITEM_NOT_LOADED));
+			DirectoryMenu filledMenu = this.directoryMenus.get(path);
+			if (filledMenu != null && filledMenu.menu == menu) {
+				this.directoryMenus.remove(path, filledMenu);
+			}
+		} else {
+			// A truncated listing stays truncated, it's kept like a complete one
+			if (node.truncated) {
+				menu.add(createPlaceholderItem(LanguageKeyIds.MENU_ITEM_NOT_LOADED));
+			} else if (node.children.isEmpty()) {
+				menu.add(createPlaceholderItem(LanguageKeyIds.MENU_ITEM_EMPTY));
+			}
+			this.directoryMenus.put(path, new DirectoryMenu(menu, node.visited));
+		}
+	}
+	private JMenuItem createPlaceholderItem(int keyId) {
+		JMenuItem item = new JMenuItem(this.language.getString(keyId));
+		item.setEnabled(false);
+		item.putClientProperty(PLACEHOLDER_PROPERTY, keyId);
+		return item;
+	}
+	private JMenuItem createAddLinkMenu() {
+		JMenuItem addLinkMenu = new JMenuItem(this.language.getString(LanguageKeyIds.MENU_ITEM_ADD_LINK));
+		
+		// Open in explorer
+		addLinkMenu.addActionListener(l -> {
+			try {
+				Desktop.getDesktop().open(new File(LINK_DIR));
+			} catch (IOException e) {
+				this.logger.logError("LinkManager[AddLink-Item]: Unable to open the link-directory", e);
+			}
+		});
+		
+		return addLinkMenu;
+	}
 	private static String getMenuLabelFromFile(File file) {
-		if (file.getName().toLowerCase().endsWith(LinkManager.LINK_SUFFIX)) 
-			return file.getName().substring(0, file.getName().length() - LINK_SUFFIX.length());
+		String name = file.getName();
+		if (LinkDirectoryScanner.IsLinkName(name)) 
+			return name.substring(0, name.length() - LINK_SUFFIX.length());
 		
-		return file.getName();
+		return name;
+	}
+	private Icon loadFileIcon(LinkDirectoryScanner.Entry entry) {
+		return this.iconCache.getIcon(entry.file, entry.modified, entry.size, this::loadFileImage);
 	}
-	private static Icon LoadFileIcon(File file) {
+	/**
+	 * This loads the icon of the file and scales it to {@linkplain #MENU_ICON_SIZE}.
+	 * It's only called by the {@linkplain IconCache} if the icon isn't cached.
+	 * */
+	private BufferedImage loadFileImage(File file) {
 		try {
 			// Load the icon
 			ShellFolder shellFolder = ShellFolder.getShellFolder(file);
 			Image loadedImage = shellFolder.getIcon(true);
-			int loadedWidth = loadedImage.getWidth(null);
-			int loadedHeight = loadedImage.getHeight(null);
-			
-			// resize the icon if it has the wrong size
-			Image iconImage;
-			if (loadedWidth == MENU_ICON_SIZE && 
-					loadedHeight == MENU_ICON_SIZE) {
-				iconImage = loadedImage;
-			} else {
-				// A BufferedImage where the Icon is scaled on to
-				BufferedImage bufferedImage = new BufferedImage(
-						MENU_ICON_SIZE, 
-						MENU_ICON_SIZE, 
-						BufferedImage.TYPE_INT_ARGB);
-				
-				// drawing the scaled Image on the BufferedImage
-				Graphics2D g = bufferedImage.createGraphics();
-				g.drawImage(loadedImage, 
-						0, 0, MENU_ICON_SIZE, MENU_ICON_SIZE, null);
-				g.dispose();
-				
-				// set the iconImage to the BufferedImage
-				iconImage = bufferedImage;
+			if (loadedImage == null) {
+				return null;
 			}
 			
-			// Create a ImageIcon from the image and return that icon
-			return new ImageIcon(iconImage);
+			// The icon is drawn on a BufferedImage even if it has the right size,
+			// the cache needs the pixels
+			BufferedImage bufferedImage = new BufferedImage(
+					MENU_ICON_SIZE, 
+					MENU_ICON_SIZE, 
+					BufferedImage.TYPE_INT_ARGB);
+			
+			// drawing the scaled Image on the BufferedImage
+			Graphics2D g = bufferedImage.createGraphics();
+			g.drawImage(loadedImage, 
+					0, 0, MENU_ICON_SIZE, MENU_ICON_SIZE, null);
+			g.dispose();
+			
+			return bufferedImage;
 		} catch (FileNotFoundException e) {
-			Main.Logger.logAlert(
+			this.logger.logAlert(
 					"LinkManager.LoadFileIcon: Unable to load the icon for the file: " + file.getAbsolutePath(), 
 					e);
 		}
 		return null;
 	}
-	private static void StartLink(File linkFile) {
+	private void startLink(File linkFile) {
 		if (!linkFile.exists())
 			return;
 
 		try {
 			new ProcessBuilder("cmd", "/c", linkFile.getAbsolutePath()).start();
-			Main.Logger.logInfo("LinkManager.StartLink: Started the file: " + linkFile.getAbsolutePath());
+			this.logger.logInfo("LinkManager.StartLink: Started the file: {}", linkFile.getAbsolutePath());
 		} catch (IOException e) {
-			Main.Logger.logError("LinkManager.StartLink: Unable to start the Process, the following Error occurred", e);
+			this.logger.logError("LinkManager.StartLink: Unable to start the Process, the following Error occurred", e);
 		}
 	}
 }
-
-class LinkManagerFileFilter implements FileFilter {
-
-	@Override
-	public boolean accept(File file) {
-		// I don't load hidden files. It would just confuse unknown users
-		if (file.isHidden())
-			return false;
-		
-		// Directories are valid, they will be listed as Menus with Link as sub items in the tray menu
-		if (file.isDirectory())
-			return true;
-		
-		// Test if the file is a windows link file
-		return file.getName().toLowerCase().endsWith(LinkManager.LINK_SUFFIX);
-		
-		// TOD0 maybe add a general "file.canExecute" or the link type of other OS's
-	}
-	
-}
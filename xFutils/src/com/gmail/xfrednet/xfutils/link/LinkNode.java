@@ -0,0 +1,67 @@
+package com.gmail.xfrednet.xfutils.link;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
+
+import javax.swing.Icon;
+
+/**
+ * This is one entry of the scanned link tree. The nodes are created by the
+ * scan threads and never changed afterwards, the {@linkplain javax.swing.JMenuItem JMenuItems} are
+ * created from them on the event dispatch thread.
+ * */
+final class LinkNode {
+
+	final File file;
+	final String label;
+	final Icon icon;
+	/**
+	 * The children of a directory or <tt>null</tt> for a link file. A directory
+	 * that wasn't listed has no children and isn't complete.
+	 * */
+	final List<LinkNode> children;
+	/**
+	 * This is <tt>false</tt> if the scan was stopped before all children of
+	 * this directory were scanned. The subdirectories have their own flag.
+	 * */
+	final boolean complete;
+	/**
+	 * This is <tt>true</tt> if children were left out because of a limit of
+	 * the {@linkplain LinkDirectoryScanner}.
+	 * */
+	final boolean truncated;
+	/**
+	 * The chain of a directory, its subdirectories are checked against it.
+	 * */
+	final LinkDirectoryScanner.VisitedDirectory visited;
+
+	private LinkNode(File file, String label, Icon icon, List<LinkNode> children, 
+			boolean complete, boolean truncated, LinkDirectoryScanner.VisitedDirectory visited) {
+		this.file = file;
+		this.label = label;
+		this.icon = icon;
+		this.children = children;
+		this.complete = complete;
+		this.truncated = truncated;
+		this.visited = visited;
+	}
+
+	static LinkNode Link(File file, String label, Icon icon) {
+		return new LinkNode(file, label, icon, null, true, false, null);
+	}
+	/**
+	 * This creates the node of a directory that wasn't listed yet.
+	 * */
+	static LinkNode UnlistedDirectory(File file, String label, Icon icon, LinkDirectoryScanner.VisitedDirectory visited) {
+		return new LinkNode(file, label, icon, Collections.emptyList(), false, false, visited);
+	}
+	static LinkNode Directory(File file, String label, Icon icon, LinkDirectoryScanner.VisitedDirectory visited, 
+			List<LinkNode> children, boolean complete, boolean truncated) {
+		return new LinkNode(file, label, icon, Collections.unmodifiableList(children), complete, truncated, visited);
+	}
+
+	boolean isDirectory() {
+		return this.children != null;
+	}
+}
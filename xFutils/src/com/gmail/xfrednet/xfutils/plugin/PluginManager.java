@@ -2,6 +2,9 @@ package com.gmail.xfrednet.xfutils.plugin;
 
 import com.gmail.xfrednet.xfutils.Main;
 import com.gmail.xfrednet.xfutils.util.Logger;
+import com.gmail.xfrednet.xfutils.util.Settings;
+import com.gmail.xfrednet.xfutils.util.language.Language;
+import com.gmail.xfrednet.xfutils.util.settings.SettingsRegistry;
 import org.w3c.dom.*;
 import org.xml.sax.SAXException;
 
@@ -33,12 +36,26 @@ public class PluginManager {
 	private static final String ENABLED_PLUGINS_FILE   = PLUGIN_DIR + ".config.xml";
 	private static final String XML_ROOT_ELEMENT       = "pluginmamanger";
 	private static final String XML_ENABLED_PLUGIN_TAG = "plugin";
+	/**
+	 * The name of the named logger of the PluginManager. Every plugin gets a child
+	 * logger with the name "plugin.[display name]".
+	 * */
+	public static final String LOGGER_NAME            = "plugin";
+	/**
+	 * The namespace of the plugin settings. Every plugin gets the namespace
+	 * "plugin.[display name]".
+	 * */
+	public static final String SETTINGS_NAMESPACE     = "plugin";
 
 	private Logger logger;
+	private Settings settings;
+	private Language language;
 	private List<IPlugin> plugins;
 
-	public PluginManager(Logger logger) {
+	public PluginManager(Logger logger, Settings settings, Language language) {
 		this.logger = logger;
+		this.settings = settings;
+		this.language = language;
 		
 		if (!Main.ArePluginsEnabled) {
 			logger.logError("PluginManager: Someone has created me, but the rest of the application doesn't want me! (Main.argPluginsEnabled == false");
@@ -47,6 +64,42 @@ public class PluginManager {
 		plugins = new ArrayList<>();
 	}
 
+	/**
+	 * This returns the settings namespace of the given plugin. The settings
+	 * that are registered in it are stored in the settings file of the
+	 * application, the plugin doesn't have to write its own config file.
+	 * Changes are saved automatically.
+	 * */
+	public SettingsRegistry getPluginSettings(IPlugin plugin) {
+		return this.settings.getRegistry()
+				.getNamespace(SETTINGS_NAMESPACE)
+				.getNamespace(plugin.getDisplayName());
+	}
+
+	/**
+	 * This adds the translation bundle of the given plugin. The bundle is
+	 * loaded from the jar of the plugin by a background thread, the start of
+	 * the application doesn't wait for it.
+	 * 
+	 * @param bundlePath The base name of the bundle in the jar, like "translations/clipboard".
+	 * */
+	public void addTranslations(IPlugin plugin, String bundlePath) {
+		this.language.addResourceInBackground(bundlePath, plugin.getClass().getClassLoader());
+	}
+	/**
+	 * This adds a translation bundle of the given plugin that is only loaded
+	 * when one of its keys is needed. This is meant for bundles of submenus.
+	 * 
+	 * @param bundlePath The base name of the bundle in the jar, like "translations/clipboard_history".
+	 * @param keyPrefix The prefix of all keys in the bundle, like "clipboard.history.".
+	 * */
+	public void addLazyTranslations(IPlugin plugin, String bundlePath, String keyPrefix) {
+		this.language.addLazyResource(bundlePath, plugin.getClass().getClassLoader(), keyPrefix);
+	}
+	public Language getLanguage() {
+		return this.language;
+	}
+
 	// ##########################################
 	// # initPlugins #
 	// ##########################################
@@ -61,9 +114,9 @@ public class PluginManager {
 			IPlugin plugin = this.plugins.get(pluginIndex);
 			try {
 				String dataDir = String.format(PLUGIN_DATA_DIR, plugin.getDisplayName());
-				plugin.init(logger, this, dataDir);
-				logger.logInfo("initPlugins: The plugin \"" +
-						plugin.getDisplayName() + "\"  initialized successfull"); 
+				plugin.init(logger.getLogger(LOGGER_NAME + "." + plugin.getDisplayName()), this, dataDir);
+				logger.logInfo("initPlugins: The plugin \"{}\"  initialized successfull",
+						plugin.getDisplayName()); 
 			} catch (Exception e) {
 				logger.logAlert("initPlugins: The plugin \"" +
 						plugin.getDisplayName() + "\" failed to initialize", e); 
@@ -119,7 +172,7 @@ public class PluginManager {
 			return null;
 			
 		} catch (Exception e) {
-			Main.Logger.logAlert(
+			Main.Logger.getLogger(LOGGER_NAME).logAlert(
 					"GetInterfaceClass: Unable to retive information from the jar file: \"" + 
 					 file.getName() + "\". e: \"" + e.getMessage() + "\"");
 			return null;
@@ -139,11 +192,9 @@ public class PluginManager {
 			if (enabledPluginNames.contains(pluginFile.getName())) {
 				// add it to the enabled plugins
 				enabledPlugins.add(pluginFile);
-				logger.logDebugMessage("getEnabledPluginFiles: " +
-						pluginFile.getName() + " is enabled.");
+				logger.logDebugMessage("getEnabledPluginFiles: {} is enabled.", pluginFile.getName());
 			} else {
-				logger.logDebugMessage("getEnabledPluginFiles: " +
-						pluginFile.getName() + " is disabled.");
+				logger.logDebugMessage("getEnabledPluginFiles: {} is disabled.", pluginFile.getName());
 			}
 		}
 		
@@ -154,7 +205,7 @@ public class PluginManager {
 		File pluginDir = new File(PLUGIN_DIR);
 
 		// Debug info
-		logger.logInfo("getAvailablePlugins: The plugin-directory is: " + pluginDir.getAbsolutePath());
+		logger.logInfo("getAvailablePlugins: The plugin-directory is: {}", pluginDir.getAbsolutePath());
 
 		// validation
 		if (!validatePluginDir(pluginDir)) {
@@ -176,7 +227,7 @@ public class PluginManager {
 				jarPath = ".\\" +  jarPath.substring(jarPath.indexOf(PLUGIN_DIR));
 
 				// log the plugin path
-				logger.logDebugMessage("getAvailablePlugins: Found possible plugin: " + jarPath);
+				logger.logDebugMessage("getAvailablePlugins: Found possible plugin: {}", jarPath);
 			}
 		}
 
@@ -211,8 +262,8 @@ public class PluginManager {
 		// check access rights
 		if (!pluginDir.canRead() || !pluginDir.canWrite()) {
 			logger.logError(
-					"validatePluginDir: The PluginManager has not the necessary rights for the plugin-directory." +
-					"[" + pluginDir.canRead() + ", " + pluginDir.canWrite() + "]");
+					"validatePluginDir: The PluginManager has not the necessary rights for the plugin-directory.[{}, {}]",
+					pluginDir.canRead(), pluginDir.canWrite());
 			return false;
 		}
 
@@ -222,7 +273,7 @@ public class PluginManager {
 	private List<String> loadEnabledPluginNames() {
 		// get the file
 		File enabledPluginsFile = new File(ENABLED_PLUGINS_FILE);
-		logger.logDebugMessage("loadEnabledPluginsList: The path of the config is: " + enabledPluginsFile.getAbsolutePath());
+		logger.logDebugMessage(() -> "loadEnabledPluginsList: The path of the config is: " + enabledPluginsFile.getAbsolutePath());
 
 		// validation
 		if (!enabledPluginsFile.exists() ||
@@ -230,9 +281,9 @@ public class PluginManager {
 				!enabledPluginsFile.canRead()) {
 			// log information
 			logger.logAlert("loadEnabledPluginsList: The config is invalid." );
-			logger.logDebugMessage("loadEnabledPluginsList: Check 1: file.exists()      : " + enabledPluginsFile.exists());
-			logger.logDebugMessage("loadEnabledPluginsList: Check 2: !file.isDirectory(): " + !enabledPluginsFile.isDirectory());
-			logger.logDebugMessage("loadEnabledPluginsList: Check 3: file.canRead()     : " + enabledPluginsFile.canRead());
+			logger.logDebugMessage("loadEnabledPluginsList: Check 1: file.exists()      : {}", enabledPluginsFile.exists());
+			logger.logDebugMessage("loadEnabledPluginsList: Check 2: !file.isDirectory(): {}", !enabledPluginsFile.isDirectory());
+			logger.logDebugMessage("loadEnabledPluginsList: Check 3: file.canRead()     : {}", enabledPluginsFile.canRead());
 
 			// return
 			return new ArrayList<>();
@@ -254,7 +305,7 @@ public class PluginManager {
 
 			// go though the nodes
 			NodeList enabledPluginsNodeList = doc.getElementsByTagName(XML_ENABLED_PLUGIN_TAG);
-			logger.logDebugMessage("loadEnabledPluginsList: has found " + enabledPluginsNodeList.getLength() + " nodes.");
+			logger.logDebugMessage("loadEnabledPluginsList: has found {} nodes.", enabledPluginsNodeList.getLength());
 			for (int nodeIndex = 0; nodeIndex < enabledPluginsNodeList.getLength(); nodeIndex++) {
 				// get the node
 				Node enabledPluginNode = enabledPluginsNodeList.item(nodeIndex);
@@ -264,7 +315,7 @@ public class PluginManager {
 				// convert to element
 				Element enabledPluginElement = (Element)enabledPluginNode;
 				String pluginName = enabledPluginElement.getTextContent();
-				logger.logDebugMessage("loadEnabledPluginsList: Note number: " + nodeIndex + " contains the plugin name: " + pluginName);
+				logger.logDebugMessage("loadEnabledPluginsList: Note number: {} contains the plugin name: {}", nodeIndex, pluginName);
 				enabledPluginNames.add(pluginName);
 			}
 
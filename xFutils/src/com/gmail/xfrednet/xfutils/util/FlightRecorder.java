@@ -0,0 +1,232 @@
+package com.gmail.xfrednet.xfutils.util;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+/**
+ * The flight recorder keeps the last log records in memory, debug records
+ * included, even if debug messages are disabled for the log itself. The
+ * records are dumped to a file when an error is logged, when the application
+ * terminates or when {@linkplain #dump(String)} is called. This gives the full
+ * debug context of a rare failure without writing debug messages to the disk
+ * all the time.
+ *
+ * <p>All slots are allocated in the constructor. Recording a line claims the
+ * oldest slot with an atomic counter and copies its characters, the logging
+ * threads never take a lock. The character arrays only grow when a longer
+ * line comes along. Like in the {@linkplain com.gmail.xfrednet.xfutils.util.logger.LogRingBuffer LogRingBuffer}
+ * every slot has a sequence number, a dump uses it to skip the slots that
+ * are written while it copies them.</p>
+ *
+ * <p>A recorder is attached with {@linkplain Logger#setFlightRecorder(FlightRecorder)}.
+ * The logger then formats every debug message, so it's only attached if the
+ * <tt>-flightrecorder</tt> argument is given.</p>
+ * */
+public final class FlightRecorder {
+
+	public static final int DEFAULT_CAPACITY = 2048;
+
+	private static final String DUMP_FILE_PREFIX = "flight_";
+	private static final String DUMP_FILE_SUFFIX = ".log";
+	private static final String DUMP_FILE_NAME   = "../log/" + DUMP_FILE_PREFIX + "%s_%s" + DUMP_FILE_SUFFIX;
+	private static final int    MAX_DUMP_FILES   = 10;
+
+	private static final int  INITIAL_SLOT_CHARS          = 128;
+	private static final long ERROR_DUMP_INTERVAL_MILLIS  = 10_000;
+
+	/**
+	 * A slot is marked with this sequence while a record is copied into it.
+	 * */
+	private static final long WRITING = -1;
+
+	/**
+	 * A preallocated record slot.
+	 * */
+	private static final class Slot {
+		/**
+		 * The position of the record in the slot plus one, 0 for an empty slot
+		 * or {@linkplain #WRITING}.
+		 * */
+		volatile long sequence = 0;
+		char[] chars = new char[INITIAL_SLOT_CHARS];
+		int length = 0;
+		Exception exception = null;
+	}
+	private static final AtomicLongFieldUpdater<Slot> SLOT_SEQUENCE = AtomicLongFieldUpdater.newUpdater(Slot.class, "sequence");
+
+	private final Slot[] slots;
+	private final int mask;
+	/**
+	 * The total amount of records that were recorded. The next record is
+	 * written to the slot at <tt>recordCount & mask</tt>.
+	 * */
+	private final AtomicLong recordCount = new AtomicLong();
+
+	/**
+	 * The dumps that are triggered by errors are written by this thread, the
+	 * thread that logged the error doesn't wait for the disk.
+	 * */
+	private final ExecutorService dumpExecutor;
+	private final Object dumpLock = new Object();
+	private final AtomicLong lastErrorDumpMillis = new AtomicLong();
+	private int dumpIndex = 0;
+
+	/**
+	 * @param capacity The amount of records that are kept. This will be
+	 *                 rounded up to the next power of two.
+	 * */
+	public FlightRecorder(int capacity) {
+		int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+
+		this.slots = new Slot[size];
+		for (int index = 0; index < size; index++) {
+			this.slots[index] = new Slot();
+		}
+		this.mask = size - 1;
+
+		this.dumpExecutor = Executors.newSingleThreadExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "xFutils-FlightRecorder");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+	public FlightRecorder() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * This copies the line into the oldest slot. An error also schedules a
+	 * dump, at most one every {@value #ERROR_DUMP_INTERVAL_MILLIS}ms so an error
+	 * storm doesn't turn into a dump storm.
+	 * */
+	void record(StringBuilder line, Exception e, int logLevel) {
+		long position = this.recordCount.getAndIncrement();
+		Slot slot = this.slots[(int)position & this.mask];
+
+		// The record is dropped if a thread that is a whole lap ahead writes
+		// the slot, waiting for it would make the logging threads wait again
+		long sequence = slot.sequence;
+		if (sequence != WRITING && sequence <= position && SLOT_SEQUENCE.compareAndSet(slot, sequence, WRITING)) {
+			int length = line.length();
+			if (slot.chars.length < length) {
+				slot.chars = Arrays.copyOf(slot.chars, Math.max(length, slot.chars.length * 2));
+			}
+			line.getChars(0, length, slot.chars, 0);
+			slot.length = length;
+			slot.exception = e;
+
+			slot.sequence = position + 1;
+		}
+
+		if (logLevel == Logger.LOG_LEVEL_ERROR) {
+			long now = System.currentTimeMillis();
+			long lastDumpMillis = this.lastErrorDumpMillis.get();
+			if (now - lastDumpMillis >= ERROR_DUMP_INTERVAL_MILLIS && this.lastErrorDumpMillis.compareAndSet(lastDumpMillis, now)) {
+				this.dumpExecutor.execute(() -> dump("error"));
+			}
+		}
+	}
+
+	/**
+	 * This writes all recorded lines, the oldest first, into a new file in the
+	 * log directory. The lines are copied first and the logging threads don't
+	 * wait for the dump. Records that are overwritten while they are copied
+	 * are left out. Old dump files are deleted, only the last
+	 * {@value #MAX_DUMP_FILES} are kept.
+	 *
+	 * @param reason A short reason that is added to the file name, like "error".
+	 *
+	 * @return The dump file or <tt>null</tt> if it couldn't be written.
+	 * */
+	public File dump(String reason) {
+		long totalRecords = this.recordCount.get();
+		long firstRecord = Math.max(0, totalRecords - this.slots.length);
+		int recordCount = (int)(totalRecords - firstRecord);
+		List<String> lines = new ArrayList<>(recordCount);
+		List<Exception> exceptions = new ArrayList<>(recordCount);
+		for (long position = firstRecord; position < totalRecords; position++) {
+			Slot slot = this.slots[(int)position & this.mask];
+			if (slot.sequence != position + 1) {
+				// It was dropped, it's still written or it was overwritten
+				continue;
+			}
+
+			char[] chars = slot.chars;
+			String line = new String(chars, 0, Math.min(slot.length, chars.length));
+			Exception exception = slot.exception;
+			if (slot.sequence != position + 1) {
+				continue;
+			}
+
+			lines.add(line);
+			exceptions.add(exception);
+		}
+
+		synchronized (this.dumpLock) {
+			String timeStamp = new SimpleDateFormat("yyyy.MM.dd.HH.mm.ss").format(new Date());
+			File dumpFile = new File(String.format(DUMP_FILE_NAME, timeStamp, reason));
+			if (dumpFile.exists()) {
+				dumpFile = new File(String.format(DUMP_FILE_NAME, timeStamp + "_" + (++this.dumpIndex), reason));
+			}
+			dumpFile.getParentFile().mkdirs();
+
+			try (PrintWriter writer = new PrintWriter(new BufferedWriter(new OutputStreamWriter(new FileOutputStream(dumpFile), StandardCharsets.UTF_8)))) {
+				writer.println(String.format("FlightRecorder: dump because of \"%s\", %d of %d records",
+						reason, lines.size(), totalRecords));
+
+				for (int index = 0; index < lines.size(); index++) {
+					writer.println(lines.get(index));
+					if (exceptions.get(index) != null) {
+						exceptions.get(index).printStackTrace(writer);
+					}
+				}
+			} catch (IOException e) {
+				// Logging this could trigger another dump, the console has to do
+				e.printStackTrace();
+				return null;
+			}
+
+			DeleteOldDumps(dumpFile.getParentFile());
+			return dumpFile;
+		}
+	}
+	/**
+	 * This deletes the oldest dump files. The names start with the timestamp,
+	 * so sorting them by name sorts them by age.
+	 * */
+	private static void DeleteOldDumps(File logDir) {
+		File[] dumpFiles = logDir.listFiles(file ->
+				file.isFile() &&
+				file.getName().startsWith(DUMP_FILE_PREFIX) &&
+				file.getName().endsWith(DUMP_FILE_SUFFIX));
+		if (dumpFiles == null || dumpFiles.length <= MAX_DUMP_FILES) {
+			return;
+		}
+
+		Arrays.sort(dumpFiles, (a, b) -> a.getName().compareTo(b.getName())); // oldest first
+		for (int index = 0; index < dumpFiles.length - MAX_DUMP_FILES; index++) {
+			dumpFiles[index].delete();
+		}
+	}
+
+	/**
+	 * This stops the dump thread. A dump that is running is finished first.
+	 * */
+	public void close() {
+		this.dumpExecutor.shutdown();
+	}
+}
@@ -2,7 +2,8 @@ package com.gmail.xfrednet.xfutils.util;
 
 import com.gmail.xfrednet.xfutils.Main;
 
-import java.awt.Component;
+import java.util.Collections;
+import java.util.List;
 
 import javax.swing.*;
 import javax.swing.event.PopupMenuEvent;
@@ -40,8 +41,9 @@ public class IndependentPopupMenu {
 	 * {@linkplain #add(JMenuItem, int)}.
 	 *
 	 * <p>These indices are maintained and changed by
-	 * {@linkplain #add(JMenuItem, int)} and
-	 * {@linkplain #remove(JMenuItem)}</p>
+	 * {@linkplain #add(JMenuItem, int)},
+	 * {@linkplain #remove(JMenuItem)} and the other methods that change
+	 * the items</p>
 	 * */
 	private int[] sectionEnds;
 
@@ -229,39 +231,66 @@ public class IndependentPopupMenu {
 	 * @param menuItem The {@linkplain JMenuItem} that should be removed
 	 * */
 	public void remove(JMenuItem menuItem) {
-		// Search the item inside the component list
-		int menuIndex = 0;
-		Component[] components = this.popupMenu.getComponents();
-		for (Component com : components) {
-			if (!(com instanceof JMenuItem))
-				continue;
-			
-			// Test if the Item was found.
-			if (menuItem.equals(com)) {
-				// break if the item was found.
-				break;
-			}
-			
-			menuIndex++;
+		replace(menuItem, Collections.emptyList());
+	}
+	/**
+	 * This replaces the given {@linkplain JMenuItem} with the new items. They
+	 * are inserted at the position of the old item, in the same section. It
+	 * is used to replace placeholders with the real items.
+	 * 
+	 * @param menuItem The {@linkplain JMenuItem} that should be replaced.
+	 * @param newItems The items that take its place, the list can be empty.
+	 * */
+	public void replace(JMenuItem menuItem, List<? extends JMenuItem> newItems) {
+		// Search the item inside the component list, the separators count as well
+		int menuIndex = this.popupMenu.getComponentIndex(menuItem);
+		if (menuIndex < 0) {
+			return;
 		}
 		
-		// Test if the component was found. The item was only found if menuIndex != components.length
-		if (menuIndex == components.length) {
+		// replace the component
+		this.popupMenu.remove(menuIndex);
+		for (int itemIndex = 0; itemIndex < newItems.size(); itemIndex++) {
+			this.popupMenu.insert(newItems.get(itemIndex), menuIndex + itemIndex);
+		}
+		
+		moveSectionEnds(menuIndex, newItems.size() - 1);
+		
+		this.popupMenu.revalidate();
+		this.popupMenu.repaint();
+	}
+	/**
+	 * This inserts the {@linkplain JMenuItem} in front of another item. The new
+	 * item is part of the same section.
+	 * 
+	 * @param menuItem The {@linkplain JMenuItem} that should be added.
+	 * @param nextItem The item that should follow the new item. The new item is
+	 *                 not added if this item isn't in the menu.
+	 * */
+	public void insertBefore(JMenuItem menuItem, JMenuItem nextItem) {
+		int menuIndex = this.popupMenu.getComponentIndex(nextItem);
+		if (menuItem == null || menuIndex < 0) {
 			return;
 		}
 		
-		// remove the component
-		this.popupMenu.remove(menuItem);
+		this.popupMenu.insert(menuItem, menuIndex);
+		moveSectionEnds(menuIndex, 1);
 		
-		// sub one from all section ends that follow the item
+		this.popupMenu.revalidate();
+		this.popupMenu.repaint();
+	}
+	/**
+	 * This moves the ends of all sections that contain or follow the given index.
+	 * */
+	private void moveSectionEnds(int menuIndex, int indexChange) {
 		for (int sectionIndex = this.sectionEnds.length - 1; 
 				sectionIndex >= 0;
-				sectionIndex++){
+				sectionIndex--){
 			
 			// The section end is always one higher than the last item in the section
 			// this means that the >-operator should "catch em all"... sorry...
 			if (this.sectionEnds[sectionIndex] > menuIndex) {
-				this.sectionEnds[sectionIndex]--;
+				this.sectionEnds[sectionIndex] += indexChange;
 			} else {
 				// The loop can break when one index is less than the menuIndex because
 				// all following ends will be lower as well.
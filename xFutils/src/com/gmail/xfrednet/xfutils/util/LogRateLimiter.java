@@ -0,0 +1,135 @@
+package com.gmail.xfrednet.xfutils.util;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * This suppresses messages that are logged over and over again, like the
+ * alert of a plugin that fails on every update. A message is identified by
+ * its level and its template (or the message itself if it has no template).
+ * Only the first messages of a time window are logged, the rest is counted
+ * and reported with one summary line later on.
+ *
+ * <p>The messages are tracked in a fixed table. Every entry packs the start
+ * of its window and the message count into one long that is updated with a
+ * CAS, so logging threads never take a lock and the table never allocates.
+ * Two messages that end up in the same entry share its window and its
+ * count, the summary names the message that used the entry last. This is
+ * rare enough to not matter.</p>
+ * */
+public final class LogRateLimiter {
+
+	public static final int DEFAULT_MAX_MESSAGES  = 10;
+	public static final int DEFAULT_WINDOW_SECONDS = 10;
+
+	private static final int TABLE_SIZE = 256; // has to be a power of two
+
+	/**
+	 * This receives the summaries of {@linkplain LogRateLimiter#drainSuppressed(SummaryConsumer)}.
+	 * */
+	interface SummaryConsumer {
+		void suppressed(String template, int logLevel, int suppressedCount);
+	}
+
+	/**
+	 * The key of every entry, it is derived from the level and the template.
+	 * */
+	private final AtomicIntegerArray keys = new AtomicIntegerArray(TABLE_SIZE);
+	/**
+	 * The state of every entry. The high 32 bits are the second the window
+	 * started, the low 32 bits the amount of messages in that window.
+	 * */
+	private final AtomicLongArray states = new AtomicLongArray(TABLE_SIZE);
+	/**
+	 * The template and level of every entry, they are only used for the
+	 * summaries that are written by {@linkplain #drainSuppressed(SummaryConsumer)}.
+	 * */
+	private final AtomicReferenceArray<String> templates = new AtomicReferenceArray<>(TABLE_SIZE);
+	private final AtomicIntegerArray logLevels = new AtomicIntegerArray(TABLE_SIZE);
+
+	private final long startMillis = System.currentTimeMillis();
+	private volatile int maxMessages  = DEFAULT_MAX_MESSAGES;
+	private volatile int windowSeconds = DEFAULT_WINDOW_SECONDS;
+
+	/**
+	 * This sets the limit. A limit of 0 messages disables the rate limiting.
+	 *
+	 * @param maxMessages The amount of equal messages that are logged per window.
+	 * @param windowSeconds The length of a window in seconds.
+	 * */
+	public void setLimit(int maxMessages, int windowSeconds) {
+		this.maxMessages = maxMessages;
+		this.windowSeconds = windowSeconds;
+	}
+
+	/**
+	 * This counts the message and tests if it should be logged.
+	 *
+	 * @return -1 if the message should be suppressed. Otherwise the amount of
+	 *         messages that were suppressed in the last window of this message,
+	 *         the caller should write a summary if it isn't 0.
+	 * */
+	int acquire(String template, int logLevel) {
+		int maxMessages = this.maxMessages;
+		if (maxMessages <= 0) {
+			return 0;
+		}
+
+		int key = template.hashCode() * 31 + logLevel;
+		int index = Mix(key) & (TABLE_SIZE - 1);
+		long now = (System.currentTimeMillis() - this.startMillis) / 1000;
+
+		if (this.keys.get(index) != key || this.templates.get(index) == null) {
+			// The window and the count are kept, two colliding messages would reset each other otherwise
+			this.keys.set(index, key);
+			this.templates.set(index, template);
+			this.logLevels.set(index, logLevel);
+		}
+
+		while (true) {
+			long state = this.states.get(index);
+			long windowStart = state >>> 32;
+			int count = (int)state;
+
+			if (now - windowStart >= this.windowSeconds) {
+				if (this.states.compareAndSet(index, state, (now << 32) | 1)) {
+					return Math.max(0, count - maxMessages);
+				}
+			} else if (this.states.compareAndSet(index, state, state + 1)) {
+				return (count < maxMessages) ? 0 : -1;
+			}
+		}
+	}
+
+	/**
+	 * This reports and resets the suppressed messages of all entries. It is
+	 * used to write the last summaries before the log ends.
+	 * */
+	void drainSuppressed(SummaryConsumer consumer) {
+		int maxMessages = this.maxMessages;
+		for (int index = 0; index < TABLE_SIZE; index++) {
+			String template = this.templates.get(index);
+			if (template == null) {
+				continue;
+			}
+
+			long state = this.states.get(index);
+			int count = (int)state;
+			if (count > maxMessages && this.states.compareAndSet(index, state, state & 0xFFFFFFFF00000000L)) {
+				consumer.suppressed(template, this.logLevels.get(index), count - maxMessages);
+			}
+		}
+	}
+
+	/**
+	 * This spreads the bits of the hash, the low bits of String hashes are
+	 * often similar.
+	 * */
+	private static int Mix(int hash) {
+		hash ^= hash >>> 16;
+		hash *= 0x85EBCA6B;
+		hash ^= hash >>> 13;
+		return hash;
+	}
+}
@@ -1,79 +1,888 @@
 package com.gmail.xfrednet.xfutils.util;
 
-import java.text.SimpleDateFormat;
-import java.util.Date;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.TimeZone;
+import java.util.function.Supplier;
 
 public abstract class Logger {
 
-	protected static final int LOG_LEVEL_ERROR = 4;
-	protected static final int LOG_LEVEL_ALERT = 3;
-	protected static final int LOG_LEVEL_INFO = 2;
-	protected static final int LOG_LEVEL_DEBUG = 1;
+	public static final int LOG_LEVEL_ERROR = 4;
+	public static final int LOG_LEVEL_ALERT = 3;
+	public static final int LOG_LEVEL_INFO = 2;
+	public static final int LOG_LEVEL_DEBUG = 1;
 
-	private boolean enableDebugLog;
-	
-	private static String GetTimestamp() {
-		return new SimpleDateFormat("HH:mm:ss").format(new Date());
+	/**
+	 * The prefixes of the log levels, the index is the log level.
+	 * */
+	private static final String[] LOG_LEVEL_PREFIXES = {
+		"[LEVEL ??]",
+		"[DEBUG :D]",
+		"[INFO  :)]",
+		"[ALERT :|]",
+		"[ERROR :(]"
+	};
+
+	private static final int LINE_BUFFER_CAPACITY = 256;
+	private static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes(StandardCharsets.UTF_8);
+
+	/**
+	 * Every thread gets its own {@linkplain LineBuffer}, this is how a log call
+	 * can format the line without creating new objects.
+	 * */
+	private static final ThreadLocal<LineBuffer> LINE_BUFFERS = ThreadLocal.withInitial(LineBuffer::new);
+	/**
+	 * This marks a template argument that was passed as a long, the value is
+	 * in the long parameter next to it.
+	 * */
+	private static final Object LONG_ARG = new Object();
+
+	/**
+	 * This is the timestamp of the current second. It is only formatted again
+	 * when the second changes. The object is immutable and replaced as a whole,
+	 * this way no thread can ever see a half written timestamp.
+	 * */
+	private static volatile Timestamp CurrentTimestamp = null;
+
+	/**
+	 * This value is used to let named loggers inherit the level of their parent.
+	 * */
+	public static final int LOG_LEVEL_INHERIT = 0;
+
+	/**
+	 * This is the lowest level that is logged. Every log call compares its
+	 * level with this value and nothing else. Named loggers get their
+	 * effective level written into this field when the configuration changes,
+	 * so the hot path never has to walk the hierarchy or take a lock.
+	 * */
+	private volatile int minLogLevel;
+	/**
+	 * This is the lowest level that is formatted. It is the same as
+	 * {@linkplain #minLogLevel} unless a {@linkplain FlightRecorder} is
+	 * attached, the recorder also wants the debug records.
+	 * */
+	private volatile int minFormatLevel;
+	private volatile FlightRecorder flightRecorder = null;
+	/**
+	 * This suppresses repeated messages. Named loggers share the limiter of
+	 * their root.
+	 * */
+	private final LogRateLimiter rateLimiter;
+
+	/**
+	 * These are the named loggers that were created by {@linkplain #getLogger(String)}.
+	 * The map is also the lock for all level changes. It is only used by the
+	 * root logger.
+	 * */
+	private final Map<String, NamedLogger> namedLoggers = new HashMap<>();
+	/**
+	 * These are the direct children of this logger in the hierarchy.
+	 * */
+	final List<NamedLogger> childLoggers = new ArrayList<>();
+
+	/**
+	 * This appends the current time in the "HH:mm:ss" format.
+	 * */
+	private static void AppendTimestamp(StringBuilder line) {
+		long millis = System.currentTimeMillis();
+		long second = millis / 1000;
+
+		Timestamp timestamp = CurrentTimestamp;
+		if (timestamp == null || timestamp.second != second) {
+			timestamp = new Timestamp(second, millis);
+			CurrentTimestamp = timestamp;
+		}
+
+		line.append(timestamp.chars);
+	}
+	/**
+	 * This appends the level prefix and the timestamp to the line. Example:
+	 * "[INFO  :)]13:37:00: "
+	 * */
+	private static void AppendHeader(StringBuilder line, int logLevel) {
+		line.append(GetLogLevelPrefix(logLevel));
+		AppendTimestamp(line);
+		line.append(": ");
+	}
+	/**
+	 * This encodes the line and a line break as UTF-8 into a byte buffer that
+	 * belongs to the current thread. The buffer is reused by the next call.
+	 *
+	 * @param line The line that should be encoded.
+	 *
+	 * @return A {@linkplain ByteBuffer} that is ready to be read. (position = 0, limit = byte count)
+	 * */
+	protected static ByteBuffer EncodeLine(StringBuilder line) {
+		LineBuffer buffer = LINE_BUFFERS.get();
+		int length = line.length();
+		buffer.ensureCharCapacity(length);
+		line.getChars(0, length, buffer.chars, 0);
+
+		return buffer.encode(length);
+	}
+	/**
+	 * This does the same as {@linkplain #EncodeLine(StringBuilder)} for lines
+	 * that are stored in a char array.
+	 *
+	 * @param chars The array that holds the line.
+	 * @param length The length of the line.
+	 *
+	 * @return A {@linkplain ByteBuffer} that is ready to be read. (position = 0, limit = byte count)
+	 * */
+	protected static ByteBuffer EncodeLine(char[] chars, int length) {
+		LineBuffer buffer = LINE_BUFFERS.get();
+		buffer.ensureCharCapacity(length);
+		System.arraycopy(chars, 0, buffer.chars, 0, length);
+
+		return buffer.encode(length);
 	}
 
 	public Logger(boolean enableDebugLog) {
-		this.enableDebugLog = enableDebugLog;
+		this((enableDebugLog) ? LOG_LEVEL_DEBUG : LOG_LEVEL_INFO);
+	}
+	protected Logger(int minLogLevel) {
+		this(minLogLevel, new LogRateLimiter());
+	}
+	Logger(int minLogLevel, LogRateLimiter rateLimiter) {
+		this.minLogLevel = minLogLevel;
+		this.minFormatLevel = minLogLevel;
+		this.rateLimiter = rateLimiter;
 	}
 	public boolean endLog() {
 		return true;
 	}
+	/**
+	 * This writes everything that is buffered by this logger. The default
+	 * implementation does nothing, loggers with a write buffer override it.
+	 * */
+	public void flush() {}
 
 	abstract protected void logMessage(String message, int logLevel);
 	abstract protected void logMessage(String message, Exception e, int logLevel);
-	
+
+	/**
+	 * This receives the complete formatted line. The default implementation
+	 * converts the line to a {@linkplain String} and passes it on to
+	 * {@linkplain #logMessage(String, int)}. Loggers that can write the characters
+	 * directly into their own buffer should override this to avoid the copy.
+	 *
+	 * <p>The given {@linkplain StringBuilder} is reused after this call and
+	 * should not be stored.</p>
+	 *
+	 * @param line The formatted line, it already contains the level prefix and timestamp.
+	 * @param e The {@linkplain Exception} that was logged with the line or <tt>null</tt>.
+	 * @param logLevel The level of the line.
+	 * */
+	protected void logLine(StringBuilder line, Exception e, int logLevel) {
+		String message = line.toString();
+		if (e == null) {
+			logMessage(message, logLevel);
+		} else {
+			logMessage(message, e, logLevel);
+		}
+	}
+	/**
+	 * This passes a formatted line on to another logger. It is used by loggers
+	 * that wrap other loggers, they can't call the protected
+	 * {@linkplain #logLine(StringBuilder, Exception, int)} of a different instance.
+	 * The level of the target logger is not checked.
+	 * */
+	protected static void ForwardLine(Logger target, StringBuilder line, Exception e, int logLevel) {
+		target.logLine(line, e, logLevel);
+	}
+	/**
+	 * Loggers that store the template and the raw arguments instead of the
+	 * formatted line return <tt>true</tt> here. The messages are then passed to
+	 * {@linkplain #logRecord(String, int, String, Exception, int, Object, Object, Object)}
+	 * and are only formatted if a {@linkplain FlightRecorder} wants them.
+	 * */
+	protected boolean logsRecords() {
+		return false;
+	}
+	/**
+	 * This receives the unformatted message if {@linkplain #logsRecords()}
+	 * returns <tt>true</tt>. The level was already checked.
+	 *
+	 * @param loggerName The name of the logger that logged the message, see {@linkplain #getName()}.
+	 * @param logLevel The level of the message.
+	 * @param template The template or the plain message if there are no arguments.
+	 * @param e The {@linkplain Exception} that was logged with the message or <tt>null</tt>.
+	 * @param argCount The amount of arguments, 0 to 3.
+	 * */
+	protected void logRecord(String loggerName, int logLevel, String template, Exception e, int argCount, Object arg0, Object arg1, Object arg2) {}
+	/**
+	 * This tests if the message is written by {@linkplain #logRecord(String, int, String, Exception, int, Object, Object, Object)}.
+	 * */
+	private boolean isRecordLogged(int logLevel) {
+		return logLevel >= this.minLogLevel && logsRecords();
+	}
+	/**
+	 * This passes the formatted line to the {@linkplain FlightRecorder} and to
+	 * {@linkplain #logLine(StringBuilder, Exception, int)} if the level is enabled.
+	 *
+	 * @param recordLogged <tt>true</tt> if the message was already written as a record.
+	 * */
+	private void emitLine(StringBuilder line, Exception e, int logLevel, boolean recordLogged) {
+		FlightRecorder recorder = this.flightRecorder;
+		if (recorder != null) {
+			recorder.record(line, e, logLevel);
+		}
+
+		if (!recordLogged && logLevel >= this.minLogLevel) {
+			logLine(line, e, logLevel);
+		}
+	}
+	/**
+	 * This formats the message into the line buffer of the current thread and
+	 * passes it to {@linkplain #emitLine(StringBuilder, Exception, int, boolean)}.
+	 * */
+	private void log(int logLevel, String message, Exception e) {
+		if (logLevel < this.minFormatLevel || !passRateLimit(logLevel, message)) {
+			return;
+		}
+
+		boolean recordLogged = isRecordLogged(logLevel);
+		if (recordLogged) {
+			logRecord(getName(), logLevel, message, e, 0, null, null, null);
+			if (this.flightRecorder == null) {
+				return;
+			}
+		}
+
+		LineBuffer buffer = LINE_BUFFERS.get();
+		StringBuilder line = buffer.acquire();
+		try {
+			AppendHeader(line, logLevel);
+			line.append(message);
+
+			emitLine(line, e, logLevel, recordLogged);
+		} finally {
+			buffer.release(line);
+		}
+	}
+	/**
+	 * This formats a template with up to three object arguments. The template
+	 * uses "{}" as placeholders, like "Loaded {} of {} plugins". Placeholders
+	 * without argument are written as they are, arguments without placeholder
+	 * are ignored.
+	 * */
+	private void logTemplate(int logLevel, String template, int argCount, Object arg0, Object arg1, Object arg2) {
+		logTemplate(logLevel, template, argCount, arg0, 0, arg1, 0, arg2, 0);
+	}
+	/**
+	 * This formats a template with arguments that can be objects or longs. An
+	 * argument that is {@linkplain #LONG_ARG} is taken from the long after it,
+	 * the longs are appended without boxing them.
+	 * */
+	private void logTemplate(int logLevel, String template, int argCount, 
+			Object arg0, long longArg0, Object arg1, long longArg1, Object arg2, long longArg2) {
+		if (logLevel < this.minFormatLevel || !passRateLimit(logLevel, template)) {
+			return;
+		}
+
+		boolean recordLogged = isRecordLogged(logLevel);
+		if (recordLogged) {
+			// The records keep the arguments, the longs are boxed for them
+			logRecord(getName(), logLevel, template, null, argCount, 
+					BoxArg(arg0, longArg0), BoxArg(arg1, longArg1), BoxArg(arg2, longArg2));
+			if (this.flightRecorder == null) {
+				return;
+			}
+		}
+
+		LineBuffer buffer = LINE_BUFFERS.get();
+		StringBuilder line = buffer.acquire();
+		try {
+			AppendHeader(line, logLevel);
+
+			int templateIndex = 0;
+			if (argCount > 0 && (templateIndex = AppendUntilPlaceholder(line, template, templateIndex)) >= 0) {
+				AppendArg(line, arg0, longArg0);
+			}
+			if (argCount > 1 && (templateIndex = AppendUntilPlaceholder(line, template, templateIndex)) >= 0) {
+				AppendArg(line, arg1, longArg1);
+			}
+			if (argCount > 2 && (templateIndex = AppendUntilPlaceholder(line, template, templateIndex)) >= 0) {
+				AppendArg(line, arg2, longArg2);
+			}
+			AppendRemainder(line, template, templateIndex);
+
+			emitLine(line, null, logLevel, recordLogged);
+		} finally {
+			buffer.release(line);
+		}
+	}
+	private static void AppendArg(StringBuilder line, Object arg, long longArg) {
+		if (arg == LONG_ARG) {
+			line.append(longArg);
+		} else {
+			line.append(arg);
+		}
+	}
+	private static Object BoxArg(Object arg, long longArg) {
+		return (arg == LONG_ARG) ? (Object)longArg : arg;
+	}
+	/**
+	 * This asks the {@linkplain LogRateLimiter} if the message should be
+	 * logged. A summary of the suppressed messages is logged before the first
+	 * message of a new window. Debug messages are never limited, they are only
+	 * enabled when someone wants to see everything.
+	 *
+	 * @return <tt>false</tt> if the message should be suppressed.
+	 * */
+	private boolean passRateLimit(int logLevel, String template) {
+		if (logLevel < LOG_LEVEL_INFO || template == null) {
+			return true;
+		}
+
+		int suppressedCount = this.rateLimiter.acquire(template, logLevel);
+		if (suppressedCount < 0) {
+			return false;
+		}
+
+		if (suppressedCount > 0) {
+			logSuppressed(template, logLevel, suppressedCount);
+		}
+		return true;
+	}
+	private void logSuppressed(String template, int logLevel, int suppressedCount) {
+		LineBuffer buffer = LINE_BUFFERS.get();
+		StringBuilder line = buffer.acquire();
+		try {
+			AppendHeader(line, logLevel);
+			line.append("Logger: Suppressed ");
+			line.append(suppressedCount);
+			line.append(" similar messages: ");
+			line.append(template);
+
+			emitLine(line, null, logLevel, false);
+		} finally {
+			buffer.release(line);
+		}
+	}
+	/**
+	 * This logs the summaries of all messages that were suppressed and not
+	 * reported yet. It should be called before the log ends.
+	 * */
+	public void flushSuppressedMessages() {
+		this.rateLimiter.drainSuppressed(this::logSuppressed);
+	}
+	public LogRateLimiter getRateLimiter() {
+		return this.rateLimiter;
+	}
+	/**
+	 * This appends the template from the given index up to the next "{}".
+	 *
+	 * @return The index after the placeholder or -1 if the end of the template
+	 *         was reached. The rest of the template was appended in that case.
+	 * */
+	private static int AppendUntilPlaceholder(StringBuilder line, String template, int fromIndex) {
+		int placeholderIndex = template.indexOf("{}", fromIndex);
+		if (placeholderIndex < 0) {
+			line.append(template, fromIndex, template.length());
+			return -1;
+		}
+
+		line.append(template, fromIndex, placeholderIndex);
+		return placeholderIndex + 2;
+	}
+	private static void AppendRemainder(StringBuilder line, String template, int templateIndex) {
+		if (templateIndex >= 0) {
+			line.append(template, templateIndex, template.length());
+		}
+	}
+
+	// ##########################################
+	// # Error
+	// ##########################################
 	public void logError(String message) {
-		logMessage(
-			"[ERROR :(]" + GetTimestamp() + ": " + message,
-			LOG_LEVEL_ERROR);
+		log(LOG_LEVEL_ERROR, message, null);
 	}
 	public void logError(String message, Exception e) {
-		logMessage(
-			"[ERROR :(]" + GetTimestamp() + ": " + message,
-			e,
-			LOG_LEVEL_ERROR);
+		log(LOG_LEVEL_ERROR, message, e);
+	}
+	public void logError(Supplier<String> messageSupplier) {
+		if (LOG_LEVEL_ERROR >= this.minFormatLevel) {
+			log(LOG_LEVEL_ERROR, messageSupplier.get(), null);
+		}
+	}
+	public void logError(String template, Object arg0) {
+		logTemplate(LOG_LEVEL_ERROR, template, 1, arg0, null, null);
+	}
+	public void logError(String template, Object arg0, Object arg1) {
+		logTemplate(LOG_LEVEL_ERROR, template, 2, arg0, arg1, null);
+	}
+	public void logError(String template, Object arg0, Object arg1, Object arg2) {
+		logTemplate(LOG_LEVEL_ERROR, template, 3, arg0, arg1, arg2);
+	}
+	/**
+	 * The primitive versions append the numbers without boxing them.
+	 * */
+	public void logError(String template, long arg0) {
+		logTemplate(LOG_LEVEL_ERROR, template, 1, LONG_ARG, arg0, null, 0, null, 0);
+	}
+	public void logError(String template, Object arg0, long arg1) {
+		logTemplate(LOG_LEVEL_ERROR, template, 2, arg0, 0, LONG_ARG, arg1, null, 0);
+	}
+	public void logError(String template, long arg0, Object arg1) {
+		logTemplate(LOG_LEVEL_ERROR, template, 2, LONG_ARG, arg0, arg1, 0, null, 0);
+	}
+	public void logError(String template, long arg0, long arg1) {
+		logTemplate(LOG_LEVEL_ERROR, template, 2, LONG_ARG, arg0, LONG_ARG, arg1, null, 0);
+	}
+	public void logError(String template, long arg0, long arg1, long arg2) {
+		logTemplate(LOG_LEVEL_ERROR, template, 3, LONG_ARG, arg0, LONG_ARG, arg1, LONG_ARG, arg2);
 	}
 
+	// ##########################################
+	// # Alert
+	// ##########################################
 	public void logAlert(String message) {
-		logMessage(
-			"[ALERT :|]" + GetTimestamp() + ": " + message,
-			LOG_LEVEL_ALERT);
+		log(LOG_LEVEL_ALERT, message, null);
 	}
 	public void logAlert(String message, Exception e) {
-		logMessage(
-				"[ALERT :|]" + GetTimestamp() + ": " + message,
-				e,
-				LOG_LEVEL_ALERT);
+		log(LOG_LEVEL_ALERT, message, e);
+	}
+	public void logAlert(Supplier<String> messageSupplier) {
+		if (LOG_LEVEL_ALERT >= this.minFormatLevel) {
+			log(LOG_LEVEL_ALERT, messageSupplier.get(), null);
+		}
+	}
+	public void logAlert(String template, Object arg0) {
+		logTemplate(LOG_LEVEL_ALERT, template, 1, arg0, null, null);
+	}
+	public void logAlert(String template, Object arg0, Object arg1) {
+		logTemplate(LOG_LEVEL_ALERT, template, 2, arg0, arg1, null);
+	}
+	public void logAlert(String template, Object arg0, Object arg1, Object arg2) {
+		logTemplate(LOG_LEVEL_ALERT, template, 3, arg0, arg1, arg2);
+	}
+	public void logAlert(String template, long arg0) {
+		logTemplate(LOG_LEVEL_ALERT, template, 1, LONG_ARG, arg0, null, 0, null, 0);
+	}
+	public void logAlert(String template, Object arg0, long arg1) {
+		logTemplate(LOG_LEVEL_ALERT, template, 2, arg0, 0, LONG_ARG, arg1, null, 0);
+	}
+	public void logAlert(String template, long arg0, Object arg1) {
+		logTemplate(LOG_LEVEL_ALERT, template, 2, LONG_ARG, arg0, arg1, 0, null, 0);
+	}
+	public void logAlert(String template, long arg0, long arg1) {
+		logTemplate(LOG_LEVEL_ALERT, template, 2, LONG_ARG, arg0, LONG_ARG, arg1, null, 0);
+	}
+	public void logAlert(String template, long arg0, long arg1, long arg2) {
+		logTemplate(LOG_LEVEL_ALERT, template, 3, LONG_ARG, arg0, LONG_ARG, arg1, LONG_ARG, arg2);
 	}
 
+	// ##########################################
+	// # Info
+	// ##########################################
 	public void logInfo(String message) {
-		logMessage(
-			"[INFO  :)]" + GetTimestamp() + ": " + message,
-			LOG_LEVEL_INFO);
+		log(LOG_LEVEL_INFO, message, null);
+	}
+	public void logInfo(Supplier<String> messageSupplier) {
+		if (LOG_LEVEL_INFO >= this.minFormatLevel) {
+			log(LOG_LEVEL_INFO, messageSupplier.get(), null);
+		}
+	}
+	public void logInfo(String template, Object arg0) {
+		logTemplate(LOG_LEVEL_INFO, template, 1, arg0, null, null);
 	}
+	public void logInfo(String template, Object arg0, Object arg1) {
+		logTemplate(LOG_LEVEL_INFO, template, 2, arg0, arg1, null);
+	}
+	public void logInfo(String template, Object arg0, Object arg1, Object arg2) {
+		logTemplate(LOG_LEVEL_INFO, template, 3, arg0, arg1, arg2);
+	}
+	public void logInfo(String template, long arg0) {
+		logTemplate(LOG_LEVEL_INFO, template, 1, LONG_ARG, arg0, null, 0, null, 0);
+	}
+	public void logInfo(String template, Object arg0, long arg1) {
+		logTemplate(LOG_LEVEL_INFO, template, 2, arg0, 0, LONG_ARG, arg1, null, 0);
+	}
+	public void logInfo(String template, long arg0, Object arg1) {
+		logTemplate(LOG_LEVEL_INFO, template, 2, LONG_ARG, arg0, arg1, 0, null, 0);
+	}
+	public void logInfo(String template, long arg0, long arg1) {
+		logTemplate(LOG_LEVEL_INFO, template, 2, LONG_ARG, arg0, LONG_ARG, arg1, null, 0);
+	}
+	public void logInfo(String template, long arg0, long arg1, long arg2) {
+		logTemplate(LOG_LEVEL_INFO, template, 3, LONG_ARG, arg0, LONG_ARG, arg1, LONG_ARG, arg2);
+	}
+
+	// ##########################################
+	// # Debug
+	// ##########################################
+	/**
+	 * Note that the message is created before this method can check if debug
+	 * messages are enabled. Use the {@linkplain Supplier} or template versions
+	 * if the message isn't a constant.
+	 * */
 	public void logDebugMessage(String message) {
-		if (enableDebugLog) {
-			logMessage(
-				"[DEBUG :D]" + GetTimestamp() + ": " + message,
-				LOG_LEVEL_DEBUG);
+		if (LOG_LEVEL_DEBUG >= this.minFormatLevel) {
+			log(LOG_LEVEL_DEBUG, message, null);
+		}
+	}
+	/**
+	 * The {@linkplain Supplier} is only called if debug messages are enabled.
+	 * */
+	public void logDebugMessage(Supplier<String> messageSupplier) {
+		if (LOG_LEVEL_DEBUG >= this.minFormatLevel) {
+			log(LOG_LEVEL_DEBUG, messageSupplier.get(), null);
+		}
+	}
+	public void logDebugMessage(String template, Object arg0) {
+		if (LOG_LEVEL_DEBUG >= this.minFormatLevel) {
+			logTemplate(LOG_LEVEL_DEBUG, template, 1, arg0, null, null);
+		}
+	}
+	public void logDebugMessage(String template, Object arg0, Object arg1) {
+		if (LOG_LEVEL_DEBUG >= this.minFormatLevel) {
+			logTemplate(LOG_LEVEL_DEBUG, template, 2, arg0, arg1, null);
+		}
+	}
+	public void logDebugMessage(String template, Object arg0, Object arg1, Object arg2) {
+		if (LOG_LEVEL_DEBUG >= this.minFormatLevel) {
+			logTemplate(LOG_LEVEL_DEBUG, template, 3, arg0, arg1, arg2);
+		}
+	}
+	public void logDebugMessage(String template, long arg0) {
+		if (LOG_LEVEL_DEBUG >= this.minFormatLevel) {
+			logTemplate(LOG_LEVEL_DEBUG, template, 1, LONG_ARG, arg0, null, 0, null, 0);
+		}
+	}
+	public void logDebugMessage(String template, Object arg0, long arg1) {
+		if (LOG_LEVEL_DEBUG >= this.minFormatLevel) {
+			logTemplate(LOG_LEVEL_DEBUG, template, 2, arg0, 0, LONG_ARG, arg1, null, 0);
+		}
+	}
+	public void logDebugMessage(String template, long arg0, Object arg1) {
+		if (LOG_LEVEL_DEBUG >= this.minFormatLevel) {
+			logTemplate(LOG_LEVEL_DEBUG, template, 2, LONG_ARG, arg0, arg1, 0, null, 0);
 		}
 	}
-	
+	public void logDebugMessage(String template, long arg0, long arg1) {
+		if (LOG_LEVEL_DEBUG >= this.minFormatLevel) {
+			logTemplate(LOG_LEVEL_DEBUG, template, 2, LONG_ARG, arg0, LONG_ARG, arg1, null, 0);
+		}
+	}
+	public void logDebugMessage(String template, long arg0, long arg1, long arg2) {
+		if (LOG_LEVEL_DEBUG >= this.minFormatLevel) {
+			logTemplate(LOG_LEVEL_DEBUG, template, 3, LONG_ARG, arg0, LONG_ARG, arg1, LONG_ARG, arg2);
+		}
+	}
+	public void logDebugMessage(String template, boolean arg0) {
+		if (LOG_LEVEL_DEBUG >= this.minFormatLevel) {
+			logTemplate(LOG_LEVEL_DEBUG, template, 1, BooleanString(arg0), null, null);
+		}
+	}
+	private static String BooleanString(boolean value) {
+		return (value) ? "true" : "false";
+	}
+
+	/**
+	 * This logs every property in its own line. The lines all share one
+	 * template, they bypass the {@linkplain LogRateLimiter} for that reason.
+	 * */
 	public void logProperties(Properties props) {
+		if (LOG_LEVEL_INFO < this.minFormatLevel) {
+			return;
+		}
+
 		Set<String> keys = props.stringPropertyNames();
 		for (String key : keys) {
-			logInfo("    Properties[" + key + "] = \"" + props.getProperty(key) + "\"");
+			LineBuffer buffer = LINE_BUFFERS.get();
+			StringBuilder line = buffer.acquire();
+			try {
+				AppendHeader(line, LOG_LEVEL_INFO);
+				line.append("    Properties[");
+				line.append(key);
+				line.append("] = \"");
+				line.append(props.getProperty(key));
+				line.append('"');
+
+				emitLine(line, null, LOG_LEVEL_INFO, false);
+			} finally {
+				buffer.release(line);
+			}
 		}
-		
 	}
-	
+
 	public boolean isDebugLogEnabled() {
-		return this.enableDebugLog;
+		return LOG_LEVEL_DEBUG >= this.minLogLevel;
+	}
+	/**
+	 * This tests if messages of the given level are logged by this logger.
+	 * It is a single comparison and can be used to guard expensive messages.
+	 * */
+	public boolean isLogLevelEnabled(int logLevel) {
+		return logLevel >= this.minLogLevel;
+	}
+	int getMinLogLevel() {
+		return this.minLogLevel;
+	}
+	/**
+	 * This sets the level of this logger and passes it on to all named loggers
+	 * that inherit it.
+	 * */
+	void setMinLogLevel(int logLevel) {
+		this.minLogLevel = logLevel;
+		updateMinFormatLevel();
+		for (NamedLogger child : this.childLoggers) {
+			child.updateEffectiveLogLevel();
+		}
+	}
+
+	private void updateMinFormatLevel() {
+		this.minFormatLevel = (this.flightRecorder != null) ? LOG_LEVEL_DEBUG : this.minLogLevel;
+	}
+
+	// ##########################################
+	// # Flight recorder
+	// ##########################################
+	/**
+	 * This attaches a {@linkplain FlightRecorder} to this logger and all its
+	 * named loggers. The recorder receives every record, debug records
+	 * included. Debug messages are therefore always formatted while a recorder
+	 * is attached, they are still only written to the log if debug is enabled.
+	 *
+	 * @param recorder The recorder or <tt>null</tt> to remove the current one.
+	 * */
+	public void setFlightRecorder(FlightRecorder recorder) {
+		synchronized (this.namedLoggers) {
+			attachFlightRecorder(recorder);
+			for (Logger logger : this.namedLoggers.values()) {
+				logger.attachFlightRecorder(recorder);
+			}
+		}
+	}
+	public FlightRecorder getFlightRecorder() {
+		return this.flightRecorder;
+	}
+	private void attachFlightRecorder(FlightRecorder recorder) {
+		this.flightRecorder = recorder;
+		updateMinFormatLevel();
+	}
+
+	// ##########################################
+	// # Named loggers
+	// ##########################################
+	/**
+	 * This returns the named logger for the given subsystem, it is created if
+	 * it doesn't exist yet. The names are separated by dots and form a
+	 * hierarchy: "plugin.clipboard" is a child of "plugin". A named logger
+	 * uses its own level if it has one and the level of its parent otherwise.
+	 *
+	 * <p>Named loggers write to this logger. The names are always resolved from
+	 * the root, calling this on a named logger is the same as calling it on
+	 * the root.</p>
+	 *
+	 * @param name The dot separated name of the logger, like "plugin.clipboard".
+	 *
+	 * @return The named logger. It is cached, repeated calls return the same instance.
+	 * */
+	public Logger getLogger(String name) {
+		synchronized (this.namedLoggers) {
+			return getOrCreateLogger(name);
+		}
+	}
+	private NamedLogger getOrCreateLogger(String name) {
+		NamedLogger logger = this.namedLoggers.get(name);
+		if (logger != null) {
+			return logger;
+		}
+
+		int separatorIndex = name.lastIndexOf('.');
+		Logger parent = (separatorIndex < 0) ? this : getOrCreateLogger(name.substring(0, separatorIndex));
+
+		logger = new NamedLogger(name, this, parent);
+		((Logger)logger).attachFlightRecorder(this.flightRecorder);
+		parent.childLoggers.add(logger);
+		this.namedLoggers.put(name, logger);
+
+		return logger;
+	}
+	/**
+	 * This sets the level of a named logger. The change is passed on to all
+	 * children that inherit the level. Logging threads are never blocked by
+	 * this, they just see the new level with their next call.
+	 *
+	 * @param name The name of the logger, see {@linkplain #getLogger(String)}.
+	 * @param logLevel The new level or {@linkplain #LOG_LEVEL_INHERIT} to use
+	 *                 the level of the parent again.
+	 * */
+	public void setLogLevel(String name, int logLevel) {
+		synchronized (this.namedLoggers) {
+			NamedLogger logger = getOrCreateLogger(name);
+			logger.setConfiguredLogLevel(logLevel);
+		}
+	}
+
+	/**
+	 * This returns the name of this logger. It is empty for the root logger,
+	 * see {@linkplain #getLogger(String)}.
+	 * */
+	public String getName() {
+		return "";
+	}
+
+	/**
+	 * This returns the prefix that is written in front of the lines of the
+	 * given level, like "[INFO  :)]".
+	 * */
+	public static String GetLogLevelPrefix(int logLevel) {
+		if (logLevel < 0 || logLevel >= LOG_LEVEL_PREFIXES.length) {
+			logLevel = 0;
+		}
+
+		return LOG_LEVEL_PREFIXES[logLevel];
+	}
+	/**
+	 * This parses the name of a log level like "DEBUG" or "alert".
+	 *
+	 * @return The log level or -1 if the name is unknown.
+	 * */
+	public static int ParseLogLevel(String levelName) {
+		switch (levelName.trim().toUpperCase()) {
+		case "ERROR":
+			return LOG_LEVEL_ERROR;
+		case "ALERT":
+			return LOG_LEVEL_ALERT;
+		case "INFO":
+			return LOG_LEVEL_INFO;
+		case "DEBUG":
+			return LOG_LEVEL_DEBUG;
+		case "INHERIT":
+			return LOG_LEVEL_INHERIT;
+		default:
+			return -1;
+		}
+	}
+	/**
+	 * This returns the name of the log level, it can be parsed again by
+	 * {@linkplain #ParseLogLevel(String)}.
+	 * */
+	public static String GetLogLevelName(int logLevel) {
+		switch (logLevel) {
+		case LOG_LEVEL_ERROR:
+			return "ERROR";
+		case LOG_LEVEL_ALERT:
+			return "ALERT";
+		case LOG_LEVEL_INFO:
+			return "INFO";
+		case LOG_LEVEL_DEBUG:
+			return "DEBUG";
+		default:
+			return "INHERIT";
+		}
+	}
+
+	/**
+	 * The reusable buffers of one thread.
+	 *
+	 * <p>A log call can end up in another log call on the same thread. (For
+	 * instance when a logger reports an unknown log level) The inner call
+	 * gets a new {@linkplain StringBuilder} in that case so it doesn't
+	 * overwrite the line of the outer call.</p>
+	 * */
+	private static final class LineBuffer {
+		final StringBuilder line = new StringBuilder(LINE_BUFFER_CAPACITY);
+		boolean inUse = false;
+
+		char[] chars = new char[LINE_BUFFER_CAPACITY];
+		CharBuffer charView = CharBuffer.wrap(this.chars);
+		ByteBuffer bytes = ByteBuffer.allocate(LINE_BUFFER_CAPACITY * 2);
+		final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+		StringBuilder acquire() {
+			if (this.inUse) {
+				return new StringBuilder(LINE_BUFFER_CAPACITY);
+			}
+
+			this.inUse = true;
+			this.line.setLength(0);
+			return this.line;
+		}
+		void release(StringBuilder line) {
+			if (line == this.line) {
+				this.inUse = false;
+			}
+		}
+
+		void ensureCharCapacity(int length) {
+			if (this.chars.length < length) {
+				this.chars = new char[Math.max(length, this.chars.length * 2)];
+				this.charView = CharBuffer.wrap(this.chars);
+			}
+		}
+		/**
+		 * This encodes the first length chars followed by the line separator.
+		 * The byte buffer only grows if a line doesn't fit.
+		 * */
+		ByteBuffer encode(int length) {
+			this.charView.clear();
+			this.charView.limit(length);
+			this.bytes.clear();
+			this.encoder.reset();
+
+			while (this.encoder.encode(this.charView, this.bytes, true).isOverflow()) {
+				growBytes(length);
+			}
+			while (this.encoder.flush(this.bytes).isOverflow()) {
+				growBytes(length);
+			}
+			if (this.bytes.remaining() < LINE_SEPARATOR.length) {
+				growBytes(length);
+			}
+			this.bytes.put(LINE_SEPARATOR);
+
+			this.bytes.flip();
+			return this.bytes;
+		}
+		private void growBytes(int length) {
+			ByteBuffer grown = ByteBuffer.allocate(Math.max(this.bytes.capacity() * 2, length * 3 + LINE_SEPARATOR.length));
+			this.bytes.flip();
+			grown.put(this.bytes);
+			this.bytes = grown;
+		}
+	}
+
+	/**
+	 * A formatted "HH:mm:ss" timestamp for one second.
+	 * */
+	private static final class Timestamp {
+		final long second;
+		final char[] chars = new char[8];
+
+		Timestamp(long second, long millis) {
+			this.second = second;
+
+			long localMillis = millis + TimeZone.getDefault().getOffset(millis);
+			int secondOfDay = (int)((localMillis / 1000) % (24 * 60 * 60));
+			if (secondOfDay < 0) {
+				secondOfDay += 24 * 60 * 60;
+			}
+
+			PutTwoDigits(this.chars, 0, secondOfDay / 3600);
+			this.chars[2] = ':';
+			PutTwoDigits(this.chars, 3, (secondOfDay / 60) % 60);
+			this.chars[5] = ':';
+			PutTwoDigits(this.chars, 6, secondOfDay % 60);
+		}
+
+		private static void PutTwoDigits(char[] chars, int offset, int value) {
+			chars[offset] = (char)('0' + value / 10);
+			chars[offset + 1] = (char)('0' + value % 10);
+		}
 	}
 }
@@ -0,0 +1,93 @@
+package com.gmail.xfrednet.xfutils.util;
+
+/**
+ * This is a logger for a subsystem like "link" or "plugin.clipboard". It
+ * doesn't write anything itself, every line is passed to the root
+ * {@linkplain Logger} that created it. The only thing it adds is its own
+ * log level.
+ *
+ * <p>Instances are created by {@linkplain Logger#getLogger(String)}.</p>
+ * */
+public final class NamedLogger extends Logger {
+
+	private final String name;
+	private final Logger root;
+	private final Logger parent;
+
+	/**
+	 * This is the level that was set for this logger or
+	 * {@linkplain Logger#LOG_LEVEL_INHERIT}. It is only changed while the
+	 * root holds its logger lock.
+	 * */
+	private int configuredLogLevel = LOG_LEVEL_INHERIT;
+
+	NamedLogger(String name, Logger root, Logger parent) {
+		super(parent.getMinLogLevel(), root.getRateLimiter());
+
+		this.name = name;
+		this.root = root;
+		this.parent = parent;
+	}
+
+	void setConfiguredLogLevel(int logLevel) {
+		this.configuredLogLevel = logLevel;
+		updateEffectiveLogLevel();
+	}
+	/**
+	 * This calculates the effective level from the configured level and the
+	 * parent and passes it on to the children.
+	 * */
+	void updateEffectiveLogLevel() {
+		if (this.configuredLogLevel != LOG_LEVEL_INHERIT) {
+			setMinLogLevel(this.configuredLogLevel);
+		} else {
+			setMinLogLevel(this.parent.getMinLogLevel());
+		}
+	}
+
+	@Override
+	public String getName() {
+		return this.name;
+	}
+
+	@Override
+	public Logger getLogger(String name) {
+		return this.root.getLogger(name);
+	}
+	@Override
+	public void setLogLevel(String name, int logLevel) {
+		this.root.setLogLevel(name, logLevel);
+	}
+
+	/**
+	 * A named logger doesn't own the output, ending the log is the job of the root.
+	 * */
+	@Override
+	public boolean endLog() {
+		return true;
+	}
+
+	@Override
+	protected boolean logsRecords() {
+		return this.root.logsRecords();
+	}
+	@Override
+	protected void logRecord(String loggerName, int logLevel, String template, Exception e, int argCount, Object arg0, Object arg1, Object arg2) {
+		this.root.logRecord(loggerName, logLevel, template, e, argCount, arg0, arg1, arg2);
+	}
+
+	@Override
+	protected void logLine(StringBuilder line, Exception e, int logLevel) {
+		this.root.logLine(line, e, logLevel);
+	}
+
+	@Override
+	protected void logMessage(String message, int logLevel) {
+		this.root.logMessage(message, logLevel);
+	}
+
+	@Override
+	protected void logMessage(String message, Exception e, int logLevel) {
+		this.root.logMessage(message, e, logLevel);
+	}
+}
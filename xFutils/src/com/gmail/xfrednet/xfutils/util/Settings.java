@@ -9,12 +9,31 @@ import java.io.OutputStreamWriter;
 import java.io.Reader;
 import java.io.Writer;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 import javax.swing.*;
 
 import com.gmail.xfrednet.xfutils.Main;
 import com.gmail.xfrednet.xfutils.util.language.Language;
+import com.gmail.xfrednet.xfutils.util.settings.BoolSetting;
+import com.gmail.xfrednet.xfutils.util.settings.IntSetting;
+import com.gmail.xfrednet.xfutils.util.settings.Setting;
+import com.gmail.xfrednet.xfutils.util.settings.SettingsRegistry;
+import com.gmail.xfrednet.xfutils.util.settings.StringSetting;
 
 public class Settings {
 	
@@ -27,74 +46,276 @@ public class Settings {
 	}
 	
 	public static final String SETTINGS_FILE = "../settings.txt";
-	public static final String LOADING_ERROR_STRING = "[LOADING ERROR]";
+	private static final String SETTINGS_TEMP_FILE = SETTINGS_FILE + ".tmp";
+	public static final String SETTINGS_JOURNAL_FILE = "../settings.journal";
+	/**
+	 * {@linkplain #saveLater()} waits this long for more changes before the
+	 * settings are written.
+	 * */
+	private static final long SAVE_DELAY_MILLIS = 500;
+	/**
+	 * The levels of the named loggers are stored with this prefix followed
+	 * by the logger name. Example: "loglevel.plugin=DEBUG"
+	 * */
+	public static final String LOG_LEVEL_KEY_PREFIX = "loglevel.";
 	
-	private boolean showTrayMenuLabels;
-	private String language;
+	/**
+	 * This holds the typed settings of the application and the plugins.
+	 * */
+	private final SettingsRegistry registry = new SettingsRegistry();
+	private final BoolSetting showTrayMenuLabels;
+	private final StringSetting language;
+	private final BoolSetting prefetchLanguages;
+	private final IntSetting linkMaxDepth;
+	private final IntSetting linkMaxEntries;
+	private Map<String, Integer> logLevels;
+	/**
+	 * The keys of the settings and log levels that were changed since the last
+	 * save. {@linkplain #reload()} keeps their values, the file doesn't know them yet.
+	 * */
+	private final Set<String> unsavedKeys = new HashSet<>();
+	/**
+	 * The content of the settings file when it was last read or written by
+	 * this instance. {@linkplain #reload()} only takes the values that differ
+	 * from it, it's <tt>null</tt> if the file wasn't read yet.
+	 * */
+	private Properties fileProperties = null;
+	
+	/**
+	 * The writer thread of {@linkplain #saveLater()}. It is created with the
+	 * first delayed save.
+	 * */
+	private ScheduledExecutorService saveExecutor = null;
+	private ScheduledFuture<?> pendingSave = null;
+	/**
+	 * This reloads the file when it is edited by hand. It is started
+	 * by {@linkplain #startWatching()}.
+	 * */
+	private SettingsFileWatcher fileWatcher = null;
+	/**
+	 * This stores the settings if the journal is used, otherwise it's
+	 * <tt>null</tt> and the settings file is rewritten on every save.
+	 * */
+	private final SettingsJournal journal;
 	
 	// TODO add scale option
 	
 	public Settings() {
+		this(false);
+	}
+	/**
+	 * @param useJournal If <tt>true</tt> the settings are saved by appending the
+	 *                   changes to the {@linkplain #SETTINGS_JOURNAL_FILE}. The
+	 *                   settings file is still imported if it was changed and it
+	 *                   is exported by {@linkplain #flush()}.
+	 * */
+	public Settings(boolean useJournal) {
+		this.journal = (useJournal) ? new SettingsJournal(new File(SETTINGS_JOURNAL_FILE)) : null;
+		
+		this.showTrayMenuLabels = this.registry.addBool("showTrayMenuLabels", true);
+		this.language = this.registry.addString("language", Language.GetDefaultLanguage());
+		this.prefetchLanguages = this.registry.addBool("prefetchLanguages", true);
+		this.linkMaxDepth = this.registry.addInt("linkMaxDepth", 16, 1, 256);
+		this.linkMaxEntries = this.registry.addInt("linkMaxEntries", 1000, 1, 100000);
+		
+		// Changes from the menus or plugins are saved in the background
+		this.registry.setChangeHandler(this::settingChanged);
+		
 		reset();
 	}
 	
-	public void reset() {
-		this.showTrayMenuLabels = true;
-		this.language = Language.GetDefaultLanguage();
+	public synchronized void reset() {
+		this.registry.reset();
+		this.logLevels = new TreeMap<>();
 	}
 	
+	/**
+	 * This writes the settings right away. With the journal only the changes
+	 * are appended, otherwise the settings file is rewritten with
+	 * {@linkplain #exportProperties()}.
+	 * 
+	 * <p>Use {@linkplain #saveLater()} for changes that are made in the GUI.</p>
+	 * */
 	public boolean save() {
-		Properties saveProperties = new Properties();
+		if (this.journal == null) {
+			return exportProperties();
+		}
 		
-		// Store data to properties
-		SaveBool(saveProperties, "showTrayMenuLabels", showTrayMenuLabels);
-		SaveString(saveProperties, "language", language);
+		Set<String> savedKeys = new HashSet<>();
+		if (!this.journal.append(createSaveProperties(savedKeys))) {
+			saveFailed(savedKeys);
+			return false;
+		}
 		
-		// Write the properties to file
-		try {
-			Writer writer = new OutputStreamWriter(new FileOutputStream(SETTINGS_FILE), StandardCharsets.UTF_8);
+		Main.Logger.logDebugMessage("Settings.save: The changes were added to the journal");
+		return true;
+	}
+	/**
+	 * This writes the settings file. The file is written under a temporary
+	 * name and then renamed, a crash while saving therefore never leaves a
+	 * half written settings file behind.
+	 * */
+	public boolean exportProperties() {
+		Set<String> savedKeys = new HashSet<>();
+		Properties saveProperties = createSaveProperties(savedKeys);
+		File settingsFile = new File(SETTINGS_FILE);
+		File tempFile = new File(SETTINGS_TEMP_FILE);
+		
+		// Write the properties to the temporary file
+		try (FileOutputStream output = new FileOutputStream(tempFile)) {
+			Writer writer = new OutputStreamWriter(output, StandardCharsets.UTF_8);
 			
 			saveProperties.store(writer, "The magical awesome settings of xFutils");
 			
-			// Finish writing
-			writer.close();
-			Main.Logger.logInfo("Settings.save: The settings were saved successfully");
-			return true;
+			// Make sure the data is on the disk before the file is renamed
+			writer.flush();
+			output.getFD().sync();
 		} catch (IOException e) {
 			// Log if an error was thrown
-			Main.Logger.logAlert("Settings.save: has failed to load the settings.", e);
+			Main.Logger.logAlert("Settings.exportProperties: has failed to save the settings.", e);
+			tempFile.delete();
+			saveFailed(savedKeys);
 			return false;
 		}
-	}
-	public boolean load() {
-		// Check if the file ist alive
-		File settingsFile = new File(SETTINGS_FILE);
-		if (!settingsFile.exists()) {
-			Main.Logger.logInfo(
-					"Settings.load: The settings file could not be found. File name: " +
-					SETTINGS_FILE);
+		
+		// Replace the old file
+		try {
+			try {
+				Files.move(tempFile.toPath(), settingsFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(tempFile.toPath(), settingsFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+		} catch (IOException e) {
+			Main.Logger.logAlert("Settings.exportProperties: has failed to replace the settings file.", e);
+			tempFile.delete();
+			saveFailed(savedKeys);
 			return false;
 		}
 		
-		// create properties
-		Properties loadProperties = new Properties();
+		// The watcher will see this write, reload() ignores it
+		synchronized (this) {
+			this.fileProperties = saveProperties;
+		}
 		
-		// Try to read the settings file
-		try {
-			Reader reader = new InputStreamReader(new FileInputStream(settingsFile));
-			
-			loadProperties.load(reader);
-			
-			reader.close();
-		} catch (IOException e) {
-			Main.Logger.logAlert(
-					"Settings.load: An exception was thrown during the loading process.", 
-					e);
+		Main.Logger.logInfo("Settings.exportProperties: The settings were saved successfully");
+		return true;
+	}
+	/**
+	 * This saves the settings on a background thread after a short delay.
+	 * Changes that are made within the delay are written together, clicking
+	 * through the settings menu therefore only writes the file once and the
+	 * EDT never waits for the disk.
+	 * 
+	 * <p>{@linkplain #flush()} has to be called before the application ends.</p>
+	 * */
+	public synchronized void saveLater() {
+		if (this.saveExecutor == null) {
+			this.saveExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+				Thread thread = new Thread(runnable, "xFutils-SettingsWriter");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+		
+		if (this.pendingSave != null) {
+			this.pendingSave.cancel(false);
+		}
+		this.pendingSave = this.saveExecutor.schedule(this::savePending, SAVE_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+	}
+	private void settingChanged(Setting setting) {
+		synchronized (this) {
+			this.unsavedKeys.add(setting.getKey());
+		}
+		
+		saveLater();
+	}
+	private void savePending() {
+		synchronized (this) {
+			this.pendingSave = null;
+		}
+		
+		save();
+	}
+	/**
+	 * This writes the changes of {@linkplain #saveLater()} that are still
+	 * waiting and stops the writer thread. A save that is already running is
+	 * finished first. The journal is exported to the settings file, it stays
+	 * readable for people and older versions.
+	 * */
+	public void flush() {
+		ScheduledExecutorService executor;
+		boolean saveNeeded;
+		synchronized (this) {
+			executor = this.saveExecutor;
+			saveNeeded = this.pendingSave != null && this.pendingSave.cancel(false);
+			this.pendingSave = null;
+			this.saveExecutor = null;
+		}
+		
+		if (executor != null) {
+			executor.shutdown();
+			try {
+				executor.awaitTermination(SAVE_DELAY_MILLIS * 10, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		
+		if (saveNeeded) {
+			save();
+		}
+		if (this.journal != null) {
+			this.journal.close();
+			exportProperties();
+		}
+	}
+	/**
+	 * This copies the settings into a {@linkplain Properties} instance. It is
+	 * synchronized with the setters, the background save never sees half of a change.
+	 * */
+	private synchronized Properties createProperties() {
+		Properties saveProperties = new Properties();
+		
+		// Store data to properties
+		this.registry.store(saveProperties);
+		for (Map.Entry<String, Integer> entry : this.logLevels.entrySet()) {
+			saveProperties.setProperty(LOG_LEVEL_KEY_PREFIX + entry.getKey(), Logger.GetLogLevelName(entry.getValue()));
+		}
+		
+		return saveProperties;
+	}
+	/**
+	 * This copies the settings for a save and moves the unsaved keys into
+	 * <tt>savedKeys</tt>. They have to be passed to {@linkplain #saveFailed(Set)}
+	 * if the settings couldn't be written.
+	 * */
+	private synchronized Properties createSaveProperties(Set<String> savedKeys) {
+		savedKeys.addAll(this.unsavedKeys);
+		this.unsavedKeys.clear();
+		return createProperties();
+	}
+	private synchronized void saveFailed(Set<String> savedKeys) {
+		this.unsavedKeys.addAll(savedKeys);
+	}
+	public boolean load() {
+		Properties fileProperties = ReadProperties();
+		Properties loadProperties;
+		if (this.journal != null) {
+			loadProperties = loadJournal(fileProperties);
+		} else {
+			// LoadLogLevels removes the log levels, the file content is kept as it is
+			loadProperties = (fileProperties != null) ? (Properties)fileProperties.clone() : null;
+		}
+		if (loadProperties == null) {
 			return false;
 		}
 		
-		this.showTrayMenuLabels = LoadBool(loadProperties, "showTrayMenuLabels");
-		this.language = LoadString(loadProperties, "language");
+		synchronized (this) {
+			this.fileProperties = fileProperties;
+			// The log levels are removed, everything else belongs to the registry
+			this.logLevels = LoadLogLevels(loadProperties);
+			this.registry.load(loadProperties);
+		}
 		
 		if (Main.Logger.isDebugLogEnabled()) {
 			Main.Logger.logDebugMessage("Settings.load: The following settings were loaded:");
@@ -104,6 +325,136 @@ public class Settings {
 		Main.Logger.logInfo("Settings.load: The settings were loaded successfully :)");
 		return true;
 	}
+	/**
+	 * This replays the journal. The settings file is imported instead if it
+	 * is newer than the journal and holds other values, it was then edited
+	 * or reset while the application wasn't running.
+	 * 
+	 * @param fileProperties The content of the settings file or <tt>null</tt>.
+	 * */
+	private Properties loadJournal(Properties fileProperties) {
+		Properties journalProperties = this.journal.replay();
+		
+		if (journalProperties == null || new File(SETTINGS_FILE).lastModified() > this.journal.lastModified()) {
+			if (fileProperties != null && !fileProperties.equals(journalProperties)) {
+				Main.Logger.logInfo("Settings.loadJournal: The settings file is imported into the journal");
+				this.journal.importProperties(fileProperties);
+				return (Properties)fileProperties.clone();
+			}
+		}
+		
+		return journalProperties;
+	}
+	/**
+	 * This loads the file again and passes the differences on. The changed log
+	 * levels are set in {@linkplain Main#Logger} and the listeners of the
+	 * {@linkplain SettingsRegistry} get the changed settings.
+	 * 
+	 * <p>Only the values that were edited in the file since it was last read or
+	 * written are taken. Nothing happens after a write of {@linkplain #save()},
+	 * the file then holds what was written. A setting that was changed in
+	 * memory and not saved yet keeps its value, the following save writes it
+	 * into the file.</p>
+	 * 
+	 * <p>This is called by the watcher thread of {@linkplain #startWatching()}.</p>
+	 * */
+	public void reload() {
+		Properties fileProperties = ReadProperties();
+		if (fileProperties == null) {
+			return;
+		}
+		
+		Map<String, Integer> oldLogLevels;
+		Map<String, Integer> newLogLevels;
+		List<Setting> changedSettings;
+		synchronized (this) {
+			if (fileProperties.equals(this.fileProperties)) {
+				// This was our own write
+				return;
+			}
+			Properties lastFileProperties = (this.fileProperties != null) ? this.fileProperties : new Properties();
+			this.fileProperties = fileProperties;
+			
+			// The edited values are applied to the current ones
+			Properties loadProperties = createProperties();
+			Set<String> keys = new HashSet<>(fileProperties.stringPropertyNames());
+			keys.addAll(lastFileProperties.stringPropertyNames());
+			for (String key : keys) {
+				String value = fileProperties.getProperty(key);
+				if (Objects.equals(value, lastFileProperties.getProperty(key))) {
+					continue;
+				}
+				if (this.unsavedKeys.contains(key)) {
+					Main.Logger.logInfo("Settings.reload: The key '{}' was changed in memory, the edit of the file is ignored", key);
+					continue;
+				}
+				
+				if (value == null) {
+					loadProperties.remove(key);
+				} else {
+					loadProperties.setProperty(key, value);
+				}
+			}
+			
+			oldLogLevels = this.logLevels;
+			newLogLevels = LoadLogLevels(loadProperties);
+			this.logLevels = newLogLevels;
+			changedSettings = this.registry.load(loadProperties);
+		}
+		
+		// Apply the log levels that were changed or removed
+		int changedLogLevels = 0;
+		for (String loggerName : oldLogLevels.keySet()) {
+			if (!newLogLevels.containsKey(loggerName)) {
+				Main.Logger.setLogLevel(loggerName, Logger.LOG_LEVEL_INHERIT);
+				changedLogLevels++;
+			}
+		}
+		for (Map.Entry<String, Integer> entry : newLogLevels.entrySet()) {
+			if (!entry.getValue().equals(oldLogLevels.get(entry.getKey()))) {
+				Main.Logger.setLogLevel(entry.getKey(), entry.getValue());
+				changedLogLevels++;
+			}
+		}
+		
+		if (changedSettings.isEmpty() && changedLogLevels == 0) {
+			return;
+		}
+		
+		// The listeners are called without the lock, they may use the setters
+		Main.Logger.logInfo("Settings.reload: {} settings and {} log levels were changed",
+				changedSettings.size(), changedLogLevels);
+		if (this.journal != null) {
+			saveLater();
+		}
+		this.registry.notifyListeners(changedSettings);
+	}
+	/**
+	 * This starts a thread that calls {@linkplain #reload()} when the settings
+	 * file is changed. The listeners are therefore not called on the EDT.
+	 * */
+	public synchronized void startWatching() {
+		if (this.fileWatcher != null) {
+			return;
+		}
+		
+		try {
+			this.fileWatcher = new SettingsFileWatcher(this, Paths.get(SETTINGS_FILE));
+		} catch (IOException e) {
+			Main.Logger.logAlert("Settings.startWatching: Unable to watch the settings file", e);
+		}
+	}
+	public void stopWatching() {
+		SettingsFileWatcher fileWatcher;
+		synchronized (this) {
+			fileWatcher = this.fileWatcher;
+			this.fileWatcher = null;
+		}
+		
+		if (fileWatcher != null) {
+			fileWatcher.close();
+		}
+	}
 	
 	public JMenu getSettingsMenu(Language translation) {
 		JMenu setMenu = new JMenu();
@@ -112,11 +463,10 @@ public class Settings {
 		// showTrayMenuLabels
 		JCheckBoxMenuItem showMenuLabelsItem = new JCheckBoxMenuItem();
 		translation.getGUIManager().add(showMenuLabelsItem, Language.Keys.SETTINGS_SHOW_TRAYMENU_LABELS);
-		showMenuLabelsItem.setState(this.showTrayMenuLabels);
+		showMenuLabelsItem.setState(this.showTrayMenuLabels.get());
 		showMenuLabelsItem.addActionListener(l -> {
-			// Assign new value and save the change
-			this.showTrayMenuLabels = showMenuLabelsItem.getState();
-			save();
+			// Assign new value, the change handler saves it
+			this.showTrayMenuLabels.set(showMenuLabelsItem.getState());
 		});
 		setMenu.add(showMenuLabelsItem);
 
@@ -129,7 +479,7 @@ public class Settings {
 		resetItem.addActionListener(l -> {
 			// reset and save
 			reset();
-			save();
+			saveLater();
 		});
 		setMenu.add(resetItem);
 		
@@ -137,46 +487,120 @@ public class Settings {
 		return setMenu;
 	}
 	
+	/**
+	 * This passes the loaded log levels to the named loggers of the given
+	 * {@linkplain Logger}.
+	 * */
+	public synchronized void applyLogLevels(Logger logger) {
+		for (Map.Entry<String, Integer> entry : this.logLevels.entrySet()) {
+			logger.setLogLevel(entry.getKey(), entry.getValue());
+		}
+	}
+	/**
+	 * This changes the level of a named logger and stores it in the settings.
+	 * It doesn't save the settings.
+	 * */
+	public void setLogLevel(Logger logger, String loggerName, int logLevel) {
+		synchronized (this) {
+			this.unsavedKeys.add(LOG_LEVEL_KEY_PREFIX + loggerName);
+			if (logLevel == Logger.LOG_LEVEL_INHERIT) {
+				this.logLevels.remove(loggerName);
+			} else {
+				this.logLevels.put(loggerName, logLevel);
+			}
+		}
+		logger.setLogLevel(loggerName, logLevel);
+	}
+	
 	public void setLanguage(String langName) {
-		this.language = langName;
+		this.language.set(langName);
 	}
 	
 	public boolean AreTrayMenuLabelsShown() {
-		return this.showTrayMenuLabels;
+		return this.showTrayMenuLabels.get();
 	}
 	public String getLanguage() {
-		return this.language;
+		return this.language.get();
 	}
-	
-	private static void SaveString(Properties prop, String key, String value) {
-		prop.setProperty(key, value);
+	/**
+	 * @return <tt>true</tt> if all available languages should be loaded in
+	 *         the background, see {@linkplain Language#prefetchLanguages()}.
+	 * */
+	public boolean isLanguagePrefetchEnabled() {
+		return this.prefetchLanguages.get();
 	}
-	private static String LoadString(Properties prop, String key) {
-		String value = prop.getProperty(key, LOADING_ERROR_STRING);
+	/**
+	 * @return The depth of the deepest link directory that is shown, the
+	 *         entries of the link directory have the depth 1.
+	 * */
+	public int getLinkMaxDepth() {
+		return this.linkMaxDepth.get();
+	}
+	/**
+	 * @return The number of entries that are shown per link directory.
+	 * */
+	public int getLinkMaxEntries() {
+		return this.linkMaxEntries.get();
+	}
+	/**
+	 * This returns the registry of the typed settings. Plugins get their
+	 * namespace from the {@linkplain com.gmail.xfrednet.xfutils.plugin.PluginManager PluginManager}.
+	 * */
+	public SettingsRegistry getRegistry() {
+		return this.registry;
+	}
+	
+	/**
+	 * This reads the settings file.
+	 * 
+	 * @return The properties or <tt>null</tt> if the file is missing or can't be read.
+	 * */
+	private static Properties ReadProperties() {
+		// Check if the file ist alive
+		File settingsFile = new File(SETTINGS_FILE);
+		if (!settingsFile.exists()) {
+			Main.Logger.logInfo(
+					"Settings.ReadProperties: The settings file could not be found. File name: {}",
+					SETTINGS_FILE);
+			return null;
+		}
+		
+		// create properties
+		Properties loadProperties = new Properties();
 		
-		if (value.equals(LOADING_ERROR_STRING)) {
-			Main.Logger.logInfo("Settings.LoadString: Unable to load the value of the key '" + key + "'");
+		// Try to read the settings file, save() writes it as UTF-8
+		try (Reader reader = new InputStreamReader(new FileInputStream(settingsFile), StandardCharsets.UTF_8)) {
+			loadProperties.load(reader);
+		} catch (IOException e) {
+			Main.Logger.logAlert(
+					"Settings.ReadProperties: An exception was thrown during the loading process.", 
+					e);
+			return null;
 		}
 		
-		return value;
-	}
-	
-	private static void SaveBool(Properties prop, String key, boolean value) {
-		SaveString(prop, key, ((value) ? "true" : "false"));
+		return loadProperties;
 	}
-	private static boolean LoadBool(Properties prop, String key) {
-		String value = LoadString(prop, key);
+	/**
+	 * This loads the log levels and removes them from the properties.
+	 * */
+	private static Map<String, Integer> LoadLogLevels(Properties prop) {
+		Map<String, Integer> logLevels = new TreeMap<>();
 		
-		if (value.equals("true")) {
-			return true;
-		} else if (value.equals("false")) {
-			return false;
+		for (String key : prop.stringPropertyNames()) {
+			if (!key.startsWith(LOG_LEVEL_KEY_PREFIX)) {
+				continue;
+			}
+			
+			String value = (String)prop.remove(key);
+			int logLevel = Logger.ParseLogLevel(value);
+			if (logLevel < 0) {
+				Main.Logger.logInfo("Settings.LoadLogLevels: Unknown log level '{}' for the key '{}'", value, key);
+				continue;
+			}
+			
+			logLevels.put(key.substring(LOG_LEVEL_KEY_PREFIX.length()), logLevel);
 		}
 		
-		Main.Logger.logInfo(
-				"Settings.LoadBool: Unable to load the boolean value for the key " + 
-				"'" + key + "', the String value is: '" + value + "'");
-		return false;
+		return logLevels;
 	}
 }
- 
\ No newline at end of file
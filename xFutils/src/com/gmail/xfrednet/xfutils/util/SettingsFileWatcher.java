@@ -0,0 +1,119 @@
+package com.gmail.xfrednet.xfutils.util;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+
+import com.gmail.xfrednet.xfutils.Main;
+
+/**
+ * This watches the settings file and calls {@linkplain Settings#reload()}
+ * when it was changed by someone else. The {@linkplain WatchService} can only
+ * watch directories, the events of the other files in that directory are
+ * ignored.
+ *
+ * <p>Editors often write a file in several steps and every step creates an
+ * event. The events are therefore collected until the file was quiet for
+ * {@linkplain #QUIET_MILLIS} and the file is reloaded once.</p>
+ * */
+class SettingsFileWatcher implements Runnable {
+
+	private static final long QUIET_MILLIS = 200;
+
+	private final Settings settings;
+	private final Path settingsFileName;
+	private final WatchService watchService;
+	private final Thread thread;
+
+	/**
+	 * @throws IOException If the directory of the file can't be watched.
+	 * */
+	SettingsFileWatcher(Settings settings, Path settingsFile) throws IOException {
+		this.settings = settings;
+		this.settingsFileName = settingsFile.getFileName();
+		this.watchService = FileSystems.getDefault().newWatchService();
+
+		try {
+			Path directory = settingsFile.toAbsolutePath().getParent();
+			directory.register(this.watchService, ENTRY_CREATE, ENTRY_MODIFY);
+		} catch (IOException e) {
+			this.watchService.close();
+			throw e;
+		}
+
+		this.thread = new Thread(this, "xFutils-SettingsWatcher");
+		this.thread.setDaemon(true);
+		this.thread.start();
+	}
+
+	/**
+	 * This stops the watcher thread. A reload that is running is finished first.
+	 * */
+	void close() {
+		try {
+			this.watchService.close();
+		} catch (IOException e) {
+			Main.Logger.logAlert("SettingsFileWatcher.close: Unable to close the watch service", e);
+		}
+
+		if (Thread.currentThread() != this.thread) {
+			try {
+				this.thread.join(QUIET_MILLIS * 10);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	@Override
+	public void run() {
+		try {
+			while (true) {
+				// Wait for the first change
+				boolean changed = takeEvents(this.watchService.take());
+
+				// Collect the following events until the file is quiet
+				while (true) {
+					WatchKey key = this.watchService.poll(QUIET_MILLIS, TimeUnit.MILLISECONDS);
+					if (key == null) {
+						break;
+					}
+					changed |= takeEvents(key);
+				}
+
+				if (changed) {
+					this.settings.reload();
+				}
+			}
+		} catch (ClosedWatchServiceException e) {
+			// close() was called
+		} catch (InterruptedException e) {
+			Main.Logger.logInfo("SettingsFileWatcher.run: The watcher was interrupted");
+		}
+	}
+	/**
+	 * This empties the key and tests if one of the events was about the settings file.
+	 * */
+	private boolean takeEvents(WatchKey key) {
+		boolean changed = false;
+		for (WatchEvent<?> event : key.pollEvents()) {
+			// An overflow can hide the settings file, it is simply reloaded
+			if (event.kind() != ENTRY_CREATE && event.kind() != ENTRY_MODIFY) {
+				changed = true;
+			} else if (this.settingsFileName.equals(event.context())) {
+				changed = true;
+			}
+		}
+
+		key.reset();
+		return changed;
+	}
+}
@@ -0,0 +1,413 @@
+package com.gmail.xfrednet.xfutils.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+import com.gmail.xfrednet.xfutils.Main;
+
+/**
+ * This stores the settings as a journal of changes. Every save appends one
+ * record with the keys that were changed or removed since the last save, the
+ * rest of the file is never touched. The journal is replayed on startup to
+ * get the current values.
+ *
+ * <p>Every record carries a CRC32 of its content and is written in one piece.
+ * A record that was cut off by a crash fails the check, the replay stops
+ * there and the broken tail is cut off. A save is therefore either in the
+ * journal or not, never half of it.</p>
+ *
+ * <p>The journal is compacted on a background thread when it gets larger
+ * than {@linkplain #COMPACT_THRESHOLD}. The current values are written as one
+ * record into a temporary file that replaces the journal.</p>
+ *
+ * <p>File layout: the magic number and the format version followed by the
+ * records. A record is the length of its content, the CRC32 of the content
+ * and the content. The content is the amount of changes followed by the
+ * changes, every change is the operation, the key and the value for
+ * {@linkplain #OP_SET}. Strings are written with
+ * {@linkplain DataOutputStream#writeUTF(String)}.</p>
+ * */
+class SettingsJournal {
+
+	private static final int MAGIC   = 0x58465354; // "XFST"
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = 5;
+	private static final int RECORD_HEADER_SIZE = 8;
+
+	private static final int OP_SET    = 1;
+	private static final int OP_REMOVE = 2;
+
+	/**
+	 * The settings only have a few hundred bytes, a journal of this size
+	 * mostly contains old values.
+	 * */
+	static final long COMPACT_THRESHOLD = 64 * 1024;
+
+	private final File journalFile;
+	private final File tempFile;
+
+	/**
+	 * The values that are stored in the journal, new records only contain the
+	 * differences to these values. Everything is guarded by this instance.
+	 * */
+	private final Map<String, String> values = new HashMap<>();
+	private FileChannel channel = null;
+	private long journalSize = 0;
+
+	private ExecutorService compactExecutor = null;
+	private boolean compactPending = false;
+
+	SettingsJournal(File journalFile) {
+		this.journalFile = journalFile;
+		this.tempFile = new File(journalFile.getPath() + ".tmp");
+	}
+
+	long lastModified() {
+		return this.journalFile.lastModified();
+	}
+
+	// ##########################################
+	// # Replay
+	// ##########################################
+	/**
+	 * This reads the journal and returns the values of all valid records. A
+	 * damaged tail is logged and cut off.
+	 *
+	 * @return The values or <tt>null</tt> if there is no readable journal.
+	 * */
+	synchronized Properties replay() {
+		closeChannel();
+		this.values.clear();
+		this.journalSize = 0;
+
+		if (!this.journalFile.exists()) {
+			return null;
+		}
+
+		ByteBuffer buffer;
+		try {
+			buffer = ByteBuffer.wrap(Files.readAllBytes(this.journalFile.toPath()));
+		} catch (IOException e) {
+			Main.Logger.logAlert("SettingsJournal.replay: Unable to read the journal", e);
+			return null;
+		}
+
+		if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC || buffer.get() != VERSION) {
+			Main.Logger.logAlert("SettingsJournal.replay: The journal has an unknown format: {}", this.journalFile);
+			return null;
+		}
+
+		int recordCount = 0;
+		int validEnd = buffer.position();
+		while (buffer.remaining() >= RECORD_HEADER_SIZE) {
+			int length = buffer.getInt();
+			int checksum = buffer.getInt();
+			if (length < 0 || length > buffer.remaining()) {
+				break;
+			}
+
+			CRC32 crc = new CRC32();
+			crc.update(buffer.array(), buffer.position(), length);
+			if ((int)crc.getValue() != checksum) {
+				break;
+			}
+
+			try {
+				DataInputStream record = new DataInputStream(new ByteArrayInputStream(buffer.array(), buffer.position(), length));
+				for (Map.Entry<String, String> change : ReadChanges(record).entrySet()) {
+					if (change.getValue() != null) {
+						this.values.put(change.getKey(), change.getValue());
+					} else {
+						this.values.remove(change.getKey());
+					}
+				}
+			} catch (IOException e) {
+				break;
+			}
+
+			buffer.position(buffer.position() + length);
+			validEnd = buffer.position();
+			recordCount++;
+		}
+
+		if (validEnd != buffer.limit()) {
+			Main.Logger.logAlert("SettingsJournal.replay: The journal is damaged after {} records, {} bytes are dropped",
+					recordCount, buffer.limit() - validEnd);
+			try (FileChannel channel = FileChannel.open(this.journalFile.toPath(), StandardOpenOption.WRITE)) {
+				channel.truncate(validEnd);
+			} catch (IOException e) {
+				Main.Logger.logAlert("SettingsJournal.replay: Unable to cut off the damaged tail", e);
+			}
+		}
+
+		this.journalSize = validEnd;
+		Main.Logger.logDebugMessage("SettingsJournal.replay: Replayed {} records", recordCount);
+
+		Properties properties = new Properties();
+		properties.putAll(this.values);
+		return properties;
+	}
+	/**
+	 * This reads the changes of one record. Removed keys have the value
+	 * <tt>null</tt>. The record is read completely before it is applied.
+	 * */
+	private static Map<String, String> ReadChanges(DataInputStream record) throws IOException {
+		Map<String, String> changes = new LinkedHashMap<>();
+		int changeCount = record.readInt();
+		for (int index = 0; index < changeCount; index++) {
+			int op = record.readByte();
+			String key = record.readUTF();
+			if (op == OP_SET) {
+				changes.put(key, record.readUTF());
+			} else if (op == OP_REMOVE) {
+				changes.put(key, null);
+			} else {
+				throw new IOException("Unknown operation: " + op);
+			}
+		}
+		return changes;
+	}
+
+	// ##########################################
+	// # Writing
+	// ##########################################
+	/**
+	 * This appends the differences between the journal and the given
+	 * properties. Nothing is written if there are none.
+	 *
+	 * @return <tt>true</tt> if the properties are stored in the journal.
+	 * */
+	synchronized boolean append(Properties properties) {
+		Map<String, String> newValues = ToMap(properties);
+
+		ByteArrayOutputStream content = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(content);
+		int changeCount = 0;
+		try {
+			out.writeInt(0); // the count is filled in later
+			for (Map.Entry<String, String> entry : newValues.entrySet()) {
+				if (!entry.getValue().equals(this.values.get(entry.getKey()))) {
+					out.writeByte(OP_SET);
+					out.writeUTF(entry.getKey());
+					out.writeUTF(entry.getValue());
+					changeCount++;
+				}
+			}
+			for (String key : this.values.keySet()) {
+				if (!newValues.containsKey(key)) {
+					out.writeByte(OP_REMOVE);
+					out.writeUTF(key);
+					changeCount++;
+				}
+			}
+		} catch (IOException e) {
+			// A ByteArrayOutputStream doesn't throw, writeUTF does for very long values
+			Main.Logger.logAlert("SettingsJournal.append: Unable to encode the settings", e);
+			return false;
+		}
+
+		if (changeCount == 0) {
+			return true;
+		}
+
+		byte[] record = content.toByteArray();
+		ByteBuffer.wrap(record).putInt(changeCount);
+		try {
+			if (this.channel == null) {
+				openChannel();
+			}
+			WriteFully(this.channel, EncodeRecord(record));
+			this.channel.force(false);
+		} catch (IOException e) {
+			Main.Logger.logAlert("SettingsJournal.append: Unable to write to the journal", e);
+			closeChannel(); // the next append starts behind the last valid record
+			return false;
+		}
+
+		this.journalSize += RECORD_HEADER_SIZE + record.length;
+		this.values.clear();
+		this.values.putAll(newValues);
+
+		if (this.journalSize > COMPACT_THRESHOLD) {
+			compactLater();
+		}
+		return true;
+	}
+	/**
+	 * This replaces the journal with the given properties. It is used to
+	 * import the settings file.
+	 * */
+	synchronized boolean importProperties(Properties properties) {
+		this.values.clear();
+		this.values.putAll(ToMap(properties));
+		return compact();
+	}
+
+	/**
+	 * This writes the current values into a new journal that replaces the old one.
+	 * */
+	synchronized boolean compact() {
+		this.compactPending = false;
+		closeChannel();
+
+		ByteArrayOutputStream content = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(content);
+		try {
+			out.writeInt(this.values.size());
+			for (Map.Entry<String, String> entry : this.values.entrySet()) {
+				out.writeByte(OP_SET);
+				out.writeUTF(entry.getKey());
+				out.writeUTF(entry.getValue());
+			}
+		} catch (IOException e) {
+			Main.Logger.logAlert("SettingsJournal.compact: Unable to encode the settings", e);
+			return false;
+		}
+		byte[] record = content.toByteArray();
+
+		try (FileOutputStream output = new FileOutputStream(this.tempFile)) {
+			FileChannel channel = output.getChannel();
+			WriteFully(channel, EncodeHeader());
+			WriteFully(channel, EncodeRecord(record));
+			channel.force(true);
+		} catch (IOException e) {
+			Main.Logger.logAlert("SettingsJournal.compact: Unable to write the new journal", e);
+			this.tempFile.delete();
+			return false;
+		}
+
+		try {
+			try {
+				Files.move(this.tempFile.toPath(), this.journalFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(this.tempFile.toPath(), this.journalFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+		} catch (IOException e) {
+			Main.Logger.logAlert("SettingsJournal.compact: Unable to replace the journal", e);
+			this.tempFile.delete();
+			return false;
+		}
+
+		Main.Logger.logDebugMessage("SettingsJournal.compact: The journal was compacted from {} to {} bytes",
+				this.journalSize, HEADER_SIZE + RECORD_HEADER_SIZE + record.length);
+		this.journalSize = HEADER_SIZE + RECORD_HEADER_SIZE + record.length;
+		return true;
+	}
+	private void compactLater() {
+		if (this.compactPending) {
+			return;
+		}
+
+		if (this.compactExecutor == null) {
+			this.compactExecutor = Executors.newSingleThreadExecutor(runnable -> {
+				Thread thread = new Thread(runnable, "xFutils-SettingsCompactor");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+
+		this.compactPending = true;
+		this.compactExecutor.execute(this::compact);
+	}
+
+	/**
+	 * This waits for a running compaction and closes the journal. The next
+	 * append opens it again.
+	 * */
+	void close() {
+		ExecutorService executor;
+		synchronized (this) {
+			executor = this.compactExecutor;
+			this.compactExecutor = null;
+		}
+
+		if (executor != null) {
+			executor.shutdown();
+			try {
+				executor.awaitTermination(5, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		synchronized (this) {
+			closeChannel();
+		}
+	}
+
+	// ##########################################
+	// # Util
+	// ##########################################
+	private void openChannel() throws IOException {
+		this.channel = FileChannel.open(this.journalFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+		if (this.journalSize == 0) {
+			// A new journal
+			this.channel.truncate(0);
+			WriteFully(this.channel, EncodeHeader());
+			this.journalSize = HEADER_SIZE;
+		}
+		this.channel.position(this.journalSize);
+	}
+	private void closeChannel() {
+		if (this.channel == null) {
+			return;
+		}
+
+		try {
+			this.channel.close();
+		} catch (IOException e) {
+			Main.Logger.logAlert("SettingsJournal.closeChannel: Unable to close the journal", e);
+		}
+		this.channel = null;
+	}
+
+	private static ByteBuffer EncodeHeader() {
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+		header.putInt(MAGIC);
+		header.put((byte)VERSION);
+		header.flip();
+		return header;
+	}
+	private static ByteBuffer EncodeRecord(byte[] content) {
+		CRC32 crc = new CRC32();
+		crc.update(content, 0, content.length);
+
+		ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + content.length);
+		record.putInt(content.length);
+		record.putInt((int)crc.getValue());
+		record.put(content);
+		record.flip();
+		return record;
+	}
+	private static void WriteFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+	}
+	private static Map<String, String> ToMap(Properties properties) {
+		Map<String, String> map = new HashMap<>();
+		for (String key : properties.stringPropertyNames()) {
+			map.put(key, properties.getProperty(key));
+		}
+		return map;
+	}
+}
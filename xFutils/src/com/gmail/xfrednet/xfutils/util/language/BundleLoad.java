@@ -0,0 +1,81 @@
+package com.gmail.xfrednet.xfutils.util.language;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+
+import com.gmail.xfrednet.xfutils.Main;
+
+/**
+ * This is a translation bundle that is loaded in the background or when it is
+ * needed for the first time. The {@linkplain TranslationTable} only waits for
+ * it when a key isn't found in the bundles that are already loaded. A lazy
+ * bundle is only loaded for the keys that start with its prefix, a lookup of
+ * an unknown key would load every lazy bundle otherwise.
+ *
+ * <p>A thread that needs a bundle that wasn't started yet loads it itself
+ * instead of waiting for the loader threads.</p>
+ * */
+final class BundleLoad {
+
+	private static final int LOADER_THREAD_COUNT = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+	private static final ExecutorService LOADER = Executors.newFixedThreadPool(LOADER_THREAD_COUNT, runnable -> {
+		Thread thread = new Thread(runnable, "xFutils-LanguageLoader");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private final FutureTask<Map<String, String>> task;
+	/**
+	 * The prefix of all keys of a lazy bundle or <tt>null</tt> for a bundle
+	 * that is loaded in the background.
+	 * */
+	private final String keyPrefix;
+
+	/**
+	 * @param loader This loads the translations of the bundle.
+	 * @param lazyKeyPrefix The prefix of the keys of a lazy bundle. The bundle
+	 *                      is loaded by the loader threads right away if this
+	 *                      is <tt>null</tt>.
+	 * */
+	BundleLoad(Callable<Map<String, String>> loader, String lazyKeyPrefix) {
+		this.task = new FutureTask<>(loader);
+		this.keyPrefix = lazyKeyPrefix;
+		if (lazyKeyPrefix == null) {
+			LOADER.execute(this.task);
+		}
+	}
+
+	/**
+	 * @return <tt>false</tt> if the key can't be in this bundle, it doesn't
+	 *         have to be loaded for it.
+	 * */
+	boolean mayContain(String key) {
+		return this.keyPrefix == null || key.startsWith(this.keyPrefix);
+	}
+
+	/**
+	 * This returns the translations of the bundle and waits if they are still
+	 * loading. A bundle that failed to load has no translations.
+	 * */
+	Map<String, String> await() {
+		// This does nothing if the task was already started
+		this.task.run();
+
+		try {
+			return this.task.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			Main.Logger.getLogger(Language.LOGGER_NAME).logAlert("BundleLoad.await: A bundle failed to load", e);
+		}
+		return Collections.emptyMap();
+	}
+	boolean isLoaded() {
+		return this.task.isDone();
+	}
+}
@@ -5,13 +5,17 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Properties;
 import java.util.ResourceBundle;
 import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import com.gmail.xfrednet.xfutils.Main;
+import com.gmail.xfrednet.xfutils.util.Logger;
 import com.gmail.xfrednet.xfutils.util.Settings;
 
 import javax.swing.*;
@@ -21,6 +25,9 @@ public class Language {
 
 	private static final String RESOURCE_BUNDLE_BASE_NAME = "translations/lang";
 	private static final String AVAILABLE_LANGUAGES = "translations/available_languages.txt";
+	static final String LOGGER_NAME = "language";
+	private static final String MISSING_TRANSLATION = "[Missing Translation]";
+	private static final String PREFETCH_THREAD_NAME = "xFutils-LanguagePrefetch";
 
 	private static Properties AvailableLanguages = null;
 
@@ -46,7 +53,7 @@ public class Language {
 				// try to load the file
 				InputStream fileStream = resURL.openStream();
 				if (fileStream == null) {
-					Main.Logger.logAlert("Language.GetAvailableLanguages: The file couldn't be found.");
+					Main.Logger.getLogger(LOGGER_NAME).logAlert("Language.GetAvailableLanguages: The file couldn't be found.");
 					return AvailableLanguages;
 				}
 
@@ -59,7 +66,7 @@ public class Language {
 
 		} catch (IOException e) {
 			// Log the exception
-			Main.Logger.logAlert("Language.GetAvailableLanguages: Unable to open the available language file.");
+			Main.Logger.getLogger(LOGGER_NAME).logAlert("Language.GetAvailableLanguages: Unable to open the available language file.");
 		}
 		
 		// These properties will be empty if something fails. I return it anyways
@@ -122,15 +129,37 @@ public class Language {
 	// ####################################################
 	
 	/**
-	 * This is the {@linkplain Locale} object that holds localized information
-	 * here it is only used to store the language name
+	 * A registered bundle and how it is loaded.
 	 * */
-	private Locale localeInfo;
+	private static final class Bundle {
+		final String path;
+		final ClassLoader classLoader;
+		/**
+		 * <tt>true</tt> if the bundle is loaded with the table, otherwise it's
+		 * loaded in the background or lazily.
+		 * */
+		final boolean loadNow;
+		/**
+		 * The prefix of the keys of a lazy bundle or <tt>null</tt> if the
+		 * bundle isn't lazy.
+		 * */
+		final String lazyKeyPrefix;
+		
+		Bundle(String path, ClassLoader classLoader, boolean loadNow, String lazyKeyPrefix) {
+			this.path = path;
+			this.classLoader = classLoader;
+			this.loadNow = loadNow;
+			this.lazyKeyPrefix = lazyKeyPrefix;
+		}
+	}
 	
 	/**
-	 * These {@linkplain Properties} are used as a map that contain all translations.
+	 * This holds the {@linkplain Locale} and all translations. The table is
+	 * never changed, {@linkplain #changeLanguage(String)} and
+	 * {@linkplain #addResource(String)} build a new one and replace it. The
+	 * lookups therefore don't need a lock and always see one language.
 	 * */
-	private Properties translation;
+	private volatile TranslationTable translation;
 
 	/**
 	* This {@linkplain List} contains all {@linkplain ILanguageListener}s that will
@@ -139,27 +168,48 @@ public class Language {
 	private List<ILanguageListener> changeListeners;
 	
 	/**
-	 * This {@linkplain List} contains all bundles that are loaded. These paths
-	 * will be used when {@linkplain #changeLanguage(String)} get's called.
+	 * This {@linkplain List} contains all bundles that are loaded. These bundles
+	 * will be used when {@linkplain #changeLanguage(String)} get's called. It's
+	 * guarded by this instance, that also makes sure that only one thread
+	 * builds a new translation table at a time.
+	 * */
+	private List<Bundle> bundles;
+	
+	/**
+	 * This holds the tables of the languages that were loaded, the key is the
+	 * language abbreviation. Switching to a cached language only swaps the
+	 * table. The cache is guarded by this instance and it's cleared by
+	 * {@linkplain #addResource(String)}, the other tables miss the new bundle.
+	 * */
+	private Map<String, TranslationTable> tableCache;
+	/**
+	 * This is increased when a bundle is added. A table that was built while
+	 * it changed is missing the bundle and isn't cached.
 	 * */
-	private List<String> resourceBundlePaths;
+	private int bundleGeneration = 0;
 	
 	/**
 	 * This is the default {@linkplain LanguageGUIManager} for this language instance.
 	 * */
 	private LanguageGUIManager langGUIManager;
 	
+	/**
+	 * This is the named "language" {@linkplain Logger}.
+	 * */
+	private Logger logger;
+	
 	/**
 	 * This initializes the class and loads the default translations.
 	 * */
 	public Language(String language) {
-		this.localeInfo = new Locale(language);
-		this.translation = new Properties();
+		this.logger = Main.Logger.getLogger(LOGGER_NAME);
+		this.translation = new TranslationTable(new Locale(language), null, new HashMap<>(), new ArrayList<>());
 
-		this.changeListeners = new ArrayList<>();
+		this.changeListeners = new CopyOnWriteArrayList<>();
 
 		// Initialize the resources
-		this.resourceBundlePaths = new ArrayList<>();
+		this.bundles = new ArrayList<>();
+		this.tableCache = new HashMap<>();
 		addResource(RESOURCE_BUNDLE_BASE_NAME);
 		
 		// Initialize the langGUIManager
@@ -170,8 +220,11 @@ public class Language {
 	/**
 	 * This method changes the language. It is also used to initialize the language.
 	 * 
-	 * This will reload the entire translations, to add a resource bundle
-	 * please call {@linkplain #addResource(String)}.
+	 * This will load the entire translations, to add a resource bundle
+	 * please call {@linkplain #addResource(String)}. The new translations are
+	 * loaded next to the old ones and replace them at once. Languages that were
+	 * loaded before or prefetched by {@linkplain #prefetchLanguages()} are
+	 * taken from the cache.
 	 * 
 	 * @param language The abbreviation of the new language.
 	 * */
@@ -180,11 +233,16 @@ public class Language {
 			return;
 		}
 		
-		this.localeInfo = new Locale(language);
-
-		// reload all resources for the new language
-		for (String path : this.resourceBundlePaths) {
-			loadResource(path, this.localeInfo, false);
+		while (true) {
+			TranslationTable table = getTable(language);
+			
+			synchronized (this) {
+				// A bundle could have been added in the meantime
+				if (this.tableCache.get(language) == table) {
+					this.translation = table;
+					break;
+				}
+			}
 		}
 
 		// notify all stalkers, I mean listeners
@@ -192,10 +250,106 @@ public class Language {
 			stalker.onLanguageChange(this);
 		}
 	}
+	/**
+	 * This starts a background thread that loads all languages of the
+	 * available_languages.txt into the cache. It should be called when the
+	 * application has started, a language switch is then only a swap.
+	 * */
+	public void prefetchLanguages() {
+		Thread thread = new Thread(() -> {
+			for (String language : GetAvailableLanguages().stringPropertyNames()) {
+				getTable(GetAvailableLanguages().getProperty(language));
+			}
+			this.logger.logDebugMessage("Language.prefetchLanguages: The available languages are cached");
+		}, PREFETCH_THREAD_NAME);
+		thread.setDaemon(true);
+		thread.setPriority(Thread.MIN_PRIORITY);
+		thread.start();
+	}
+	/**
+	 * This returns the cached table of the language or builds it. The table
+	 * is built without holding the lock, the lookups and other languages
+	 * aren't blocked by it.
+	 * */
+	private TranslationTable getTable(String language) {
+		while (true) {
+			List<Bundle> bundles;
+			int generation;
+			synchronized (this) {
+				TranslationTable table = this.tableCache.get(language);
+				if (table != null) {
+					return table;
+				}
+				
+				bundles = new ArrayList<>(this.bundles);
+				generation = this.bundleGeneration;
+			}
+			
+			TranslationTable table = buildTable(new Locale(language), bundles);
+			
+			synchronized (this) {
+				if (generation == this.bundleGeneration) {
+					TranslationTable cached = this.tableCache.putIfAbsent(language, table);
+					return (cached != null) ? cached : table;
+				}
+			}
+		}
+	}
+	/**
+	 * This loads all bundles for the given locale into a new table. The
+	 * background and lazy bundles are only started.
+	 * */
+	private TranslationTable buildTable(Locale locale, List<Bundle> bundles) {
+		Map<String, String> translations = new HashMap<>();
+		List<BundleLoad> bundleLoads = new ArrayList<>();
+		LanguagePack pack = null;
+		for (Bundle bundle : bundles) {
+			if (!bundle.loadNow) {
+				bundleLoads.add(startBundleLoad(bundle, locale));
+				continue;
+			}
+			
+			if (bundle.path.equals(RESOURCE_BUNDLE_BASE_NAME)) {
+				pack = loadMainBundle(bundle, locale, translations);
+				continue;
+			}
+			
+			loadResource(bundle.path, locale, true, translations, bundle.classLoader);
+		}
+		
+		return new TranslationTable(locale, pack, translations, bundleLoads);
+	}
+	/**
+	 * This loads the main bundle. The pack of the locale is used if one was
+	 * compiled, otherwise the properties files of the locale are loaded. The
+	 * English pack is only used if both are missing.
+	 * 
+	 * @return The pack or <tt>null</tt> if the translations were added to the map.
+	 * */
+	private LanguagePack loadMainBundle(Bundle bundle, Locale locale, Map<String, String> translations) {
+		LanguagePack pack = LanguagePack.Load(bundle.path, locale);
+		if (pack != null || loadResource(bundle.path, locale, false, translations, bundle.classLoader)) {
+			return pack;
+		}
+		
+		pack = LanguagePack.LoadFallback(bundle.path);
+		if (pack == null) {
+			// The last try, this logs the failure
+			loadResource(bundle.path, locale, true, translations, bundle.classLoader);
+		}
+		return pack;
+	}
+	private BundleLoad startBundleLoad(Bundle bundle, Locale locale) {
+		return new BundleLoad(() -> {
+			Map<String, String> translations = new HashMap<>();
+			loadResource(bundle.path, locale, true, translations, bundle.classLoader);
+			return translations;
+		}, bundle.lazyKeyPrefix);
+	}
 	/**
 	 * This adds the given bundle path to the lost of resources to reload
 	 * the pack if the language changes. It than calls
-	 * {@linkplain #loadResource(String, Locale, boolean)} to add the
+	 * {@linkplain #loadResource(String, Locale, boolean, Map, ClassLoader)} to add the
 	 * translations.
 	 *
 	 * <p>This method will try to handle loading issues by loading the
@@ -203,12 +357,72 @@ public class Language {
 	 * to the console. In case of this failing as well, it will log an Error
 	 * to the logger and give up.</p>
 	 * 
+	 * <p>The main bundle is loaded from its {@linkplain LanguagePack} if one
+	 * was compiled. Other bundles, like the ones of plugins, are always loaded
+	 * from their properties files.</p>
+	 * 
 	 * @param bundlePath The path of the bundle that should be loaded.
 	 * */
 	public boolean addResource(String bundlePath) {
-		this.resourceBundlePaths.add(bundlePath);
+		return addBundle(new Bundle(bundlePath, Language.class.getClassLoader(), true, null));
+	}
+	/**
+	 * This adds a bundle that is loaded by a background thread. The caller
+	 * doesn't wait for it, lookups of its keys wait until it is loaded. Plugins
+	 * should use this for the bundles of their main menu.
+	 * 
+	 * @param bundlePath The path of the bundle that should be loaded.
+	 * @param classLoader The class loader of the bundle, like the one of the plugin.
+	 * */
+	public void addResourceInBackground(String bundlePath, ClassLoader classLoader) {
+		addBundle(new Bundle(bundlePath, classLoader, false, null));
+	}
+	/**
+	 * This adds a bundle that is only loaded when one of its keys is needed,
+	 * for example when the submenu that uses it is opened. All keys of the
+	 * bundle have to start with the given prefix, the lookups of other keys
+	 * don't load it.
+	 * 
+	 * @param bundlePath The path of the bundle that should be loaded.
+	 * @param classLoader The class loader of the bundle, like the one of the plugin.
+	 * @param keyPrefix The prefix of all keys in the bundle, like "clipboard.history.".
+	 * */
+	public void addLazyResource(String bundlePath, ClassLoader classLoader, String keyPrefix) {
+		// An empty prefix matches every key, null would make it a background bundle
+		addBundle(new Bundle(bundlePath, classLoader, false, (keyPrefix != null) ? keyPrefix : ""));
+	}
+	private synchronized boolean addBundle(Bundle bundle) {
+		this.bundles.add(bundle);
+		this.bundleGeneration++;
 
-		return loadResource(bundlePath, this.localeInfo, true);
+		TranslationTable current = this.translation;
+		Locale locale = current.getLocale();
+		Map<String, String> translations = current.copyTranslations();
+		List<BundleLoad> bundleLoads = current.copyBundleLoads();
+		LanguagePack pack = current.getPack();
+		boolean loaded = true;
+		if (!bundle.loadNow) {
+			bundleLoads.add(startBundleLoad(bundle, locale));
+		} else {
+			if (bundle.path.equals(RESOURCE_BUNDLE_BASE_NAME)) {
+				int translationCount = translations.size();
+				LanguagePack bundlePack = loadMainBundle(bundle, locale, translations);
+				if (bundlePack != null) {
+					pack = bundlePack;
+					this.logger.logInfo("Language.addResource: The language \"{}\" was loaded from its pack :)", pack.getString(LanguageKeyIds.LANG_NAME));
+				}
+				loaded = bundlePack != null || translations.size() > translationCount;
+			} else {
+				loaded = loadResource(bundle.path, locale, true, translations, bundle.classLoader);
+			}
+		}
+		this.translation = new TranslationTable(locale, pack, translations, bundleLoads);
+		
+		// The other cached languages don't have the new bundle
+		this.tableCache.clear();
+		this.tableCache.put(current.getLocale().getLanguage(), this.translation);
+		
+		return loaded;
 	}
 	/**
 	 * This method tries to load the {@linkplain ResourceBundle} for the current
@@ -221,19 +435,20 @@ public class Language {
 	 *
 	 * @param bundlePath The path of the bundle that should be loaded.
 	 * @param locale The {@linkplain Locale} that should be used to load the {@linkplain ResourceBundle}.
-	 * @param firstLoad This states if it's the first time(during this runtime) that
-	 *        the {@linkplain ResourceBundle} get's loaded. If this is false it will not try to
-	 *        load the English {@linkplain ResourceBundle} on failure and just keep the old keys loaded.
+	 * @param firstLoad If this is true the English {@linkplain ResourceBundle} is
+	 *        loaded on failure. If this is false the old keys are kept.
+	 * @param translations The translations are added to this map.
+	 * @param classLoader The class loader that is used to find the bundle.
 	 *
 	 * @return This returns true if the loading was successful.
 	 * */
-	private boolean loadResource(String bundlePath, Locale locale, boolean firstLoad) {
+	private boolean loadResource(String bundlePath, Locale locale, boolean firstLoad, Map<String, String> translations, ClassLoader classLoader) {
 		try {
-			ResourceBundle resource = ResourceBundle.getBundle(bundlePath, locale);
+			ResourceBundle resource = ResourceBundle.getBundle(bundlePath, locale, classLoader);
 			
-			resource.keySet().forEach(key -> this.translation.put(key, resource.getString(key)));
+			resource.keySet().forEach(key -> translations.put(key, resource.getString(key)));
 			
-			Main.Logger.logInfo("Language.init: The language \"" + getString(Keys.LANG_NAME) + "\" Successfully :)");
+			this.logger.logInfo("Language.init: The language \"{}\" Successfully :)", translations.get(Keys.LANG_NAME));
 			return true;
 		} catch (Exception e) {
 			// Only try to load the English pack if this is the first loading
@@ -244,11 +459,11 @@ public class Language {
 			Locale engLocale = new Locale("en");
 			if (!locale.getLanguage().equals(engLocale.getLanguage())) {
 				// try to load the English local if the given local doesn't have a resource
-				return loadResource(bundlePath, locale, true);
+				return loadResource(bundlePath, engLocale, true, translations, classLoader);
 			} else {
 				// Well we've failed and with "we" I mean YOU!!!
-				Main.Logger.logAlert(
-					"Language.init: Loading the ResourceBundle(" + getLanguage() + ") has failed!",
+				this.logger.logAlert(
+					"Language.init: Loading the ResourceBundle(" + locale.getLanguage() + ") has failed!",
 					e);
 			}
 			
@@ -286,7 +501,47 @@ public class Language {
 	 * if the translation couldn't be found.
 	 * */
 	public String getString(String key) {
-		return this.translation.getProperty(key, "[Missing Translation]");
+		return this.translation.get(key, MISSING_TRANSLATION);
+	}
+	/**
+	 * This looks up the translation by the id of the key. The ids are in
+	 * {@linkplain LanguageKeyIds}, they only exist for the keys of the main
+	 * bundle. The lookup is an array access if the language was loaded from a
+	 * {@linkplain LanguagePack}.
+	 *
+	 * @param keyId The id of the key from {@linkplain LanguageKeyIds}.
+	 *
+	 * @return The translation or "[Missing Translation]".
+	 * */
+	public String getString(int keyId) {
+		return this.translation.get(keyId, MISSING_TRANSLATION);
+	}
+	/**
+	 * This returns the translation as a {@linkplain MessageTemplate}. The
+	 * template is compiled once per language and cached, the cache of the old
+	 * language is dropped by {@linkplain #changeLanguage(String)}. The template
+	 * shouldn't be kept by the caller, it doesn't change with the language.
+	 *
+	 * @param key The key of the translation, it can contain placeholders like "{0}".
+	 * */
+	public MessageTemplate getTemplate(String key) {
+		return this.translation.getTemplate(key, MISSING_TRANSLATION);
+	}
+	public MessageTemplate getTemplate(int keyId) {
+		return this.translation.getTemplate(keyId, MISSING_TRANSLATION);
+	}
+	/**
+	 * This appends the translation with the placeholders replaced by the
+	 * arguments. Use {@linkplain #getTemplate(String)} directly to format
+	 * without the array of the arguments.
+	 *
+	 * @return The given {@linkplain StringBuilder}.
+	 * */
+	public StringBuilder format(StringBuilder out, String key, Object... args) {
+		return getTemplate(key).format(out, args);
+	}
+	public StringBuilder format(StringBuilder out, int keyId, Object... args) {
+		return getTemplate(keyId).format(out, args);
 	}
 
 	/**
@@ -295,7 +550,7 @@ public class Language {
 	 * @return The language identifying string used by {@link Locale}
 	 * */
 	public String getLanguage() {
-		return this.localeInfo.getLanguage();
+		return this.translation.getLocale().getLanguage();
 	}
 
 	/**
@@ -322,8 +577,7 @@ public class Language {
 			
 			// This action listener is only activated when the MenuItem gets selected
 			langItem.addActionListener(l -> {
-				settings.setLanguage(langAbbreviation);
-				settings.save();
+				settings.setLanguage(langAbbreviation); // this also saves the change
 				changeLanguage(langAbbreviation);
 			});
 			
@@ -347,6 +601,8 @@ public class Language {
 		public static final String MENU_ITEM_EMPTY = "menu_item_empty";
 		public static final String MENU_ITEM_ADD_LINK = "menu_item_add_link";
 		public static final String MENU_ITEM_EXIT = "menu_item_exit";
+		public static final String MENU_ITEM_LOADING = "menu_item_loading";
+		public static final String MENU_ITEM_NOT_LOADED = "menu_item_not_loaded";
 
 		public static final String MENU_ITEM_SETTINGS = "menu_item_settings";
 		public static final String SETTINGS_LANGUAGE_MENU = "settings_language_menu";
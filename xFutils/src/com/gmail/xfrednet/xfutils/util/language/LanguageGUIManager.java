@@ -1,9 +1,15 @@
 package com.gmail.xfrednet.xfutils.util.language;
 
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import javax.swing.JMenuItem;
+import javax.swing.SwingUtilities;
 
 /**
  * This class manages the translation and text updates for GUI Items
@@ -13,9 +19,26 @@ import javax.swing.JMenuItem;
  * <p>While this class can stand alone I would advice to use
  * {@link Language#getGUIManager() <tt>getGUIManager()</tt} from
  * your current {@linkplain Language} class instance</p>
+ *
+ * <p>The items are only weakly referenced, menus that are rebuilt by the
+ * links or plugins can be collected and are removed from this manager once
+ * they are gone.</p>
  * */
 public class LanguageGUIManager implements ILanguageListener{
 
+	/**
+	 * This is a weak reference to a managed item that remembers the language
+	 * key, the item is gone when the reference is cleared.
+	 * */
+	private static final class ItemReference extends WeakReference<JMenuItem> {
+		final String languageKey;
+
+		ItemReference(JMenuItem item, String languageKey, ReferenceQueue<JMenuItem> queue) {
+			super(item, queue);
+			this.languageKey = languageKey;
+		}
+	}
+
 	/**
 	 * This is a link to the {@linkplain Language} class that this
 	 * instance is listening to. The instance is used to set the
@@ -24,10 +47,16 @@ public class LanguageGUIManager implements ILanguageListener{
 	Language language;
 
 	/**
-	 * This is a {@linkplain List} of all {@linkplain JMenuItem}s that
-	 * are managed by this class.
+	 * These are the references to all {@linkplain JMenuItem}s that
+	 * are managed by this class. The references don't override equals,
+	 * the set therefore works by identity. It's guarded by itself.
+	 * */
+	private final Set<ItemReference> menuItems;
+	/**
+	 * The references of collected items are added to this queue, they are
+	 * removed from {@linkplain #menuItems} by {@linkplain #expungeCollectedItems()}.
 	 * */
-	List<JMenuItem> menuItems;
+	private final ReferenceQueue<JMenuItem> collectedItems;
 
 	/**
 	 * This saves the given {@linkplain Language} class and initializes
@@ -40,7 +69,8 @@ public class LanguageGUIManager implements ILanguageListener{
 	LanguageGUIManager(Language language) {
 		this.language = language;
 		
-		this.menuItems = new ArrayList<>();
+		this.menuItems = new HashSet<>();
+		this.collectedItems = new ReferenceQueue<>();
 	}
 
 	/**
@@ -68,16 +98,34 @@ public class LanguageGUIManager implements ILanguageListener{
 	}
 
 	/**
-	 * This method updates all {@linkplain JMenuItem}s that are managed by this manager.
+	 * This method updates all {@linkplain JMenuItem}s that are managed by this
+	 * manager. Only the items with a new text are changed, all changes are
+	 * made in one task on the EDT.
 	 *
 	 * @param language The {@linkplain Language} that should be used to updates
 	 *         the Items. Note that this does not replace the instance that is
 	 *         used to give the initial translation when a item is added
 	 * */
 	public void updateMenuItems(Language language) {
-		for (JMenuItem item : this.menuItems) {
-			String key = item.getName();
-			item.setText(language.getString(key));
+		if (!SwingUtilities.isEventDispatchThread()) {
+			SwingUtilities.invokeLater(() -> updateMenuItems(language));
+			return;
+		}
+
+		List<ItemReference> references;
+		synchronized (this.menuItems) {
+			expungeCollectedItems();
+			references = new ArrayList<>(this.menuItems);
+		}
+
+		for (ItemReference reference : references) {
+			JMenuItem item = reference.get();
+			if (item == null) {
+				continue;
+			}
+
+			// This returns right away if the text is the same, otherwise the item is revalidated and repainted
+			item.setText(language.getString(reference.languageKey));
 		}
 	}
 
@@ -93,8 +141,31 @@ public class LanguageGUIManager implements ILanguageListener{
 	 * */
 	public void add(JMenuItem item, String languageKey) {
 		item.setName(languageKey);
-		this.menuItems.add(item);
+		synchronized (this.menuItems) {
+			expungeCollectedItems();
+			this.menuItems.add(new ItemReference(item, languageKey, this.collectedItems));
+		}
 		item.setText(this.language.getString(languageKey));
 	}
 
+	/**
+	 * This removes the references of the items that were collected. The
+	 * caller has to hold the lock of {@linkplain #menuItems}.
+	 * */
+	private void expungeCollectedItems() {
+		Reference<? extends JMenuItem> reference;
+		while ((reference = this.collectedItems.poll()) != null) {
+			this.menuItems.remove(reference);
+		}
+	}
+	/**
+	 * @return The amount of items that weren't collected yet.
+	 * */
+	public int getItemCount() {
+		synchronized (this.menuItems) {
+			expungeCollectedItems();
+			return this.menuItems.size();
+		}
+	}
+
 }
@@ -0,0 +1,47 @@
+package com.gmail.xfrednet.xfutils.util.language;
+
+/**
+ * The ids of the translation keys, they are the indices of the strings in
+ * the {@linkplain LanguagePack}s. Use them with {@linkplain Language#getString(int)}.
+ *
+ * <p>This file is generated by the {@linkplain LanguagePackCompiler}, don't
+ * edit it. Compile the packs again when keys are added or removed.</p>
+ * */
+public final class LanguageKeyIds {
+
+	public static final int LANG_NAME = 0;
+	public static final int MENU_ITEM_ADD_LINK = 1;
+	public static final int MENU_ITEM_EMPTY = 2;
+	public static final int MENU_ITEM_EXIT = 3;
+	public static final int MENU_ITEM_LOADING = 4;
+	public static final int MENU_ITEM_NOT_LOADED = 5;
+	public static final int MENU_ITEM_SETTINGS = 6;
+	public static final int MENU_LABEL_LINKS = 7;
+	public static final int MENU_LABEL_META = 8;
+	public static final int MENU_LABEL_PLUGINS = 9;
+	public static final int SETTINGS_LANGUAGE_MENU = 10;
+	public static final int SETTINGS_RESET_SETTINGS = 11;
+	public static final int SETTINGS_SHOW_TRAYMENU_LABELS = 12;
+
+	/**
+	 * The hash of the key list. Packs with another hash were compiled for other ids.
+	 * */
+	static final int KEY_HASH = 0x43E05E2C;
+	static final String[] NAMES = {
+		"lang_name",
+		"menu_item_add_link",
+		"menu_item_empty",
+		"menu_item_exit",
+		"menu_item_loading",
+		"menu_item_not_loaded",
+		"menu_item_settings",
+		"menu_label_links",
+		"menu_label_meta",
+		"menu_label_plugins",
+		"settings_language_menu",
+		"settings_reset_settings",
+		"settings_show_traymenu_labels",
+	};
+
+	private LanguageKeyIds() {}
+}
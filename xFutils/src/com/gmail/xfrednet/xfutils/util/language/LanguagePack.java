@@ -0,0 +1,196 @@
+package com.gmail.xfrednet.xfutils.util.language;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import com.gmail.xfrednet.xfutils.Main;
+import com.gmail.xfrednet.xfutils.util.Logger;
+
+/**
+ * This is a translation file that was compiled by the
+ * {@linkplain LanguagePackCompiler}. It holds the strings of one language
+ * in the order of the {@linkplain LanguageKeyIds}, a string is found by its
+ * index without parsing or hashing. Packs on the file system are memory
+ * mapped, the strings are only decoded when they are used for the first time.
+ *
+ * <p>File layout: the magic number, the format version, the
+ * {@linkplain LanguageKeyIds#KEY_HASH}, the string count, the offsets of the
+ * strings (one more than strings, the last one is the end of the data) and
+ * the UTF-8 data. The offsets are relative to the start of the data.</p>
+ * */
+final class LanguagePack {
+
+	static final int MAGIC   = 0x58464C50; // "XFLP"
+	static final int VERSION = 1;
+	static final int HEADER_SIZE = 16;
+
+	static final String FILE_EXTENSION = ".xflang";
+	static final String PROPERTIES_EXTENSION = ".properties";
+	static final String FALLBACK_LANGUAGE = "en";
+
+	/**
+	 * This maps the key names to their ids, it is used by the lookups
+	 * that still use the names from {@linkplain Language.Keys}.
+	 * */
+	private static final Map<String, Integer> KEY_IDS = new HashMap<>();
+	static {
+		for (int id = 0; id < LanguageKeyIds.NAMES.length; id++) {
+			KEY_IDS.put(LanguageKeyIds.NAMES[id], id);
+		}
+	}
+
+	private final ByteBuffer buffer;
+	private final int dataStart;
+	/**
+	 * The decoded strings. They are immutable, two threads that decode the
+	 * same string at once just write equal values.
+	 * */
+	private final String[] strings;
+
+	private LanguagePack(ByteBuffer buffer) {
+		this.buffer = buffer;
+		this.strings = new String[LanguageKeyIds.NAMES.length];
+		this.dataStart = HEADER_SIZE + (this.strings.length + 1) * 4;
+	}
+
+	/**
+	 * This loads the pack of the bundle for the given locale. There is no
+	 * fallback to another language, a locale that only has properties files
+	 * has to get them instead of the English pack.
+	 *
+	 * @return The pack or <tt>null</tt> if the locale has no valid pack, the
+	 *         properties files have to be used in that case.
+	 * */
+	static LanguagePack Load(String bundlePath, Locale locale) {
+		return Load(bundlePath + "_" + locale.getLanguage());
+	}
+	/**
+	 * This loads the English pack of the bundle. It's used if the locale has
+	 * neither a pack nor a properties file.
+	 * */
+	static LanguagePack LoadFallback(String bundlePath) {
+		return Load(bundlePath + "_" + FALLBACK_LANGUAGE);
+	}
+	private static LanguagePack Load(String resourceName) {
+		Logger logger = Main.Logger.getLogger(Language.LOGGER_NAME);
+
+		URL packURL = ClassLoader.getSystemClassLoader().getResource(resourceName + FILE_EXTENSION);
+		if (packURL == null) {
+			logger.logDebugMessage("LanguagePack.Load: There is no pack for {}", resourceName);
+			return null;
+		}
+
+		ByteBuffer buffer;
+		try {
+			File packFile = ToFile(packURL);
+			if (packFile != null) {
+				// A pack that is older than its source is from an old build
+				File sourceFile = new File(packFile.getParentFile(), packFile.getName().replace(FILE_EXTENSION, PROPERTIES_EXTENSION));
+				if (sourceFile.lastModified() > packFile.lastModified()) {
+					logger.logInfo("LanguagePack.Load: The pack {} is older than its properties file, it is ignored", packFile);
+					return null;
+				}
+
+				try (FileChannel channel = FileChannel.open(packFile.toPath(), StandardOpenOption.READ)) {
+					buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+				}
+			} else {
+				// The pack is inside of a jar
+				buffer = ByteBuffer.wrap(ReadAll(packURL));
+			}
+		} catch (IOException e) {
+			logger.logAlert("LanguagePack.Load: Unable to read the pack " + resourceName, e);
+			return null;
+		}
+
+		if (!IsValid(buffer)) {
+			logger.logInfo("LanguagePack.Load: The pack {} doesn't match the key ids, it is ignored", resourceName);
+			return null;
+		}
+
+		return new LanguagePack(buffer);
+	}
+	private static boolean IsValid(ByteBuffer buffer) {
+		int count = LanguageKeyIds.NAMES.length;
+		if (buffer.limit() < HEADER_SIZE + (count + 1) * 4) {
+			return false;
+		}
+		if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION
+				|| buffer.getInt(8) != LanguageKeyIds.KEY_HASH || buffer.getInt(12) != count) {
+			return false;
+		}
+
+		// The offsets have to be in order and inside of the data
+		int dataStart = HEADER_SIZE + (count + 1) * 4;
+		int lastOffset = 0;
+		for (int index = 0; index <= count; index++) {
+			int offset = buffer.getInt(HEADER_SIZE + index * 4);
+			if (offset < lastOffset || dataStart + (long)offset > buffer.limit()) {
+				return false;
+			}
+			lastOffset = offset;
+		}
+
+		return true;
+	}
+
+	/**
+	 * @return The id of the key or -1 if the key is not in the packs.
+	 * */
+	static int GetKeyId(String key) {
+		Integer id = KEY_IDS.get(key);
+		return (id != null) ? id : -1;
+	}
+
+	String getString(int keyId) {
+		String string = this.strings[keyId];
+		if (string == null) {
+			int start = this.buffer.getInt(HEADER_SIZE + keyId * 4);
+			int end = this.buffer.getInt(HEADER_SIZE + (keyId + 1) * 4);
+
+			byte[] bytes = new byte[end - start];
+			ByteBuffer data = this.buffer.duplicate();
+			data.position(this.dataStart + start);
+			data.get(bytes);
+
+			string = new String(bytes, StandardCharsets.UTF_8);
+			this.strings[keyId] = string;
+		}
+
+		return string;
+	}
+
+	private static File ToFile(URL url) {
+		if (!"file".equals(url.getProtocol())) {
+			return null;
+		}
+
+		try {
+			return new File(url.toURI());
+		} catch (URISyntaxException | IllegalArgumentException e) {
+			return null;
+		}
+	}
+	private static byte[] ReadAll(URL url) throws IOException {
+		try (InputStream input = url.openStream()) {
+			ByteArrayOutputStream output = new ByteArrayOutputStream();
+			byte[] buffer = new byte[4096];
+			int count;
+			while ((count = input.read(buffer)) > 0) {
+				output.write(buffer, 0, count);
+			}
+			return output.toByteArray();
+		}
+	}
+}
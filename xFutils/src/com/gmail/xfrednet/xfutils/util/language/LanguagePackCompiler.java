@@ -0,0 +1,179 @@
+package com.gmail.xfrednet.xfutils.util.language;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.zip.CRC32;
+
+/**
+ * This compiles the translation files into {@linkplain LanguagePack}s and
+ * generates the {@linkplain LanguageKeyIds}. It should be run before the
+ * application is packed, when the translations were changed:
+ *
+ * <pre>
+ * java com.gmail.xfrednet.xfutils.util.language.LanguagePackCompiler
+ *     xFutils/res/translations [xFutils/src/com/gmail/xfrednet/xfutils/util/language/LanguageKeyIds.java]
+ * </pre>
+ *
+ * <p>The keys of the English file define the ids. Keys that are missing in
+ * another language get the English string, like a {@linkplain java.util.ResourceBundle}
+ * would use its parent. Keys that are only in another language are dropped.</p>
+ *
+ * <p>The files are read as UTF-8 and as ISO-8859-1 if they are no valid
+ * UTF-8, like the {@linkplain java.util.PropertyResourceBundle} of Java 9
+ * does. The packs therefore show the same strings on every Java version.</p>
+ * */
+public class LanguagePackCompiler {
+
+	private static final String BUNDLE_NAME = "lang";
+
+	public static void main(String[] args) {
+		if (args.length < 1 || args.length > 2) {
+			System.out.println("Arguments: <translation directory> [<LanguageKeyIds.java>]");
+			System.out.println();
+			System.out.println("    Compiles every " + BUNDLE_NAME + "_*" + LanguagePack.PROPERTIES_EXTENSION
+					+ " file into a " + LanguagePack.FILE_EXTENSION + " file next to it.");
+			System.out.println("    The key ids are written to the java file if it is given.");
+			return;
+		}
+
+		File directory = new File(args[0]);
+		try {
+			Properties fallback = ReadProperties(new File(directory, BUNDLE_NAME + "_" + LanguagePack.FALLBACK_LANGUAGE + LanguagePack.PROPERTIES_EXTENSION));
+			List<String> keys = new ArrayList<>(fallback.stringPropertyNames());
+			Collections.sort(keys);
+			int keyHash = KeyHash(keys);
+
+			File[] files = directory.listFiles((dir, name) ->
+					name.startsWith(BUNDLE_NAME + "_") && name.endsWith(LanguagePack.PROPERTIES_EXTENSION));
+			if (files == null) {
+				System.err.println("LanguagePackCompiler: The directory can't be read: " + directory);
+				return;
+			}
+
+			for (File file : files) {
+				Properties translation = ReadProperties(file);
+				for (String key : translation.stringPropertyNames()) {
+					if (!fallback.containsKey(key)) {
+						System.err.println("LanguagePackCompiler: " + file.getName() + ": The key '" + key + "' is not in the English file, it is dropped");
+					}
+				}
+
+				File packFile = new File(directory, file.getName().replace(LanguagePack.PROPERTIES_EXTENSION, LanguagePack.FILE_EXTENSION));
+				WritePack(packFile, keys, keyHash, translation, fallback);
+				System.out.println("LanguagePackCompiler: " + file.getName() + " -> " + packFile.getName());
+			}
+
+			if (args.length == 2) {
+				WriteKeyIds(new File(args[1]), keys, keyHash);
+				System.out.println("LanguagePackCompiler: The key ids were written to " + args[1]);
+			}
+		} catch (IOException e) {
+			System.err.println("LanguagePackCompiler: Unable to compile the translations");
+			e.printStackTrace();
+		}
+	}
+
+	private static void WritePack(File packFile, List<String> keys, int keyHash, Properties translation, Properties fallback) throws IOException {
+		ByteArrayOutputStream data = new ByteArrayOutputStream();
+		int[] offsets = new int[keys.size() + 1];
+		for (int id = 0; id < keys.size(); id++) {
+			String key = keys.get(id);
+			String value = translation.getProperty(key, fallback.getProperty(key));
+
+			offsets[id] = data.size();
+			data.write(value.getBytes(StandardCharsets.UTF_8));
+		}
+		offsets[keys.size()] = data.size();
+
+		try (DataOutputStream output = new DataOutputStream(new FileOutputStream(packFile))) {
+			output.writeInt(LanguagePack.MAGIC);
+			output.writeInt(LanguagePack.VERSION);
+			output.writeInt(keyHash);
+			output.writeInt(keys.size());
+			for (int offset : offsets) {
+				output.writeInt(offset);
+			}
+			data.writeTo(output);
+		}
+	}
+	private static void WriteKeyIds(File javaFile, List<String> keys, int keyHash) throws IOException {
+		try (PrintWriter out = new PrintWriter(new OutputStreamWriter(new FileOutputStream(javaFile), StandardCharsets.UTF_8))) {
+			out.print("package com.gmail.xfrednet.xfutils.util.language;\n");
+			out.print("\n");
+			out.print("/**\n");
+			out.print(" * The ids of the translation keys, they are the indices of the strings in\n");
+			out.print(" * the {@linkplain LanguagePack}s. Use them with {@linkplain Language#getString(int)}.\n");
+			out.print(" *\n");
+			out.print(" * <p>This file is generated by the {@linkplain LanguagePackCompiler}, don't\n");
+			out.print(" * edit it. Compile the packs again when keys are added or removed.</p>\n");
+			out.print(" * */\n");
+			out.print("public final class LanguageKeyIds {\n");
+			out.print("\n");
+			for (int id = 0; id < keys.size(); id++) {
+				out.print("\tpublic static final int " + ToConstantName(keys.get(id)) + " = " + id + ";\n");
+			}
+			out.print("\n");
+			out.print("\t/**\n");
+			out.print("\t * The hash of the key list. Packs with another hash were compiled for other ids.\n");
+			out.print("\t * */\n");
+			out.print(String.format("\tstatic final int KEY_HASH = 0x%08X;\n", keyHash));
+			out.print("\tstatic final String[] NAMES = {\n");
+			for (String key : keys) {
+				out.print("\t\t\"" + key + "\",\n");
+			}
+			out.print("\t};\n");
+			out.print("\n");
+			out.print("\tprivate LanguageKeyIds() {}\n");
+			out.print("}\n");
+		}
+	}
+
+	private static Properties ReadProperties(File file) throws IOException {
+		byte[] bytes = Files.readAllBytes(file.toPath());
+
+		String text;
+		try {
+			text = StandardCharsets.UTF_8.newDecoder()
+					.onMalformedInput(CodingErrorAction.REPORT)
+					.onUnmappableCharacter(CodingErrorAction.REPORT)
+					.decode(ByteBuffer.wrap(bytes))
+					.toString();
+		} catch (CharacterCodingException e) {
+			text = new String(bytes, StandardCharsets.ISO_8859_1);
+		}
+
+		Properties properties = new Properties();
+		properties.load(new StringReader(text));
+		return properties;
+	}
+	private static int KeyHash(List<String> keys) {
+		CRC32 crc = new CRC32();
+		for (String key : keys) {
+			byte[] bytes = (key + "\n").getBytes(StandardCharsets.UTF_8);
+			crc.update(bytes, 0, bytes.length);
+		}
+		return (int)crc.getValue();
+	}
+	private static String ToConstantName(String key) {
+		StringBuilder name = new StringBuilder();
+		for (char c : key.toCharArray()) {
+			name.append(Character.isLetterOrDigit(c) ? Character.toUpperCase(c) : '_');
+		}
+		return name.toString();
+	}
+}
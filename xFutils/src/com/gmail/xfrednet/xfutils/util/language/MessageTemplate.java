@@ -0,0 +1,164 @@
+package com.gmail.xfrednet.xfutils.util.language;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This is a translation with placeholders that was parsed once. The
+ * {@linkplain Language} caches the templates of every language, see
+ * {@linkplain Language#getTemplate(String)}.
+ *
+ * <p>The templates use the placeholders of {@linkplain java.text.MessageFormat}:
+ * "{0}" is replaced by the first argument, text in single quotes is not
+ * parsed and "''" is a single quote. Format types like "{0,number}" are
+ * ignored, the arguments are appended as they are.</p>
+ *
+ * <p>The template is immutable. The format methods append to the given
+ * {@linkplain StringBuilder}, the methods with up to three arguments don't
+ * allocate anything for strings, integers and longs.</p>
+ * */
+public final class MessageTemplate {
+
+	/**
+	 * The text between the placeholders, there is one more literal than
+	 * placeholders.
+	 * */
+	private final String[] literals;
+	/**
+	 * The index of the argument for every placeholder.
+	 * */
+	private final int[] argIndices;
+
+	private MessageTemplate(String[] literals, int[] argIndices) {
+		this.literals = literals;
+		this.argIndices = argIndices;
+	}
+
+	/**
+	 * This parses the template. Invalid placeholders are kept as text.
+	 * */
+	public static MessageTemplate Compile(String template) {
+		List<String> literals = new ArrayList<>();
+		List<Integer> argIndices = new ArrayList<>();
+		StringBuilder literal = new StringBuilder();
+
+		boolean quoted = false;
+		int index = 0;
+		while (index < template.length()) {
+			char c = template.charAt(index);
+
+			if (c == '\'') {
+				if (index + 1 < template.length() && template.charAt(index + 1) == '\'') {
+					literal.append('\'');
+					index += 2;
+				} else {
+					quoted = !quoted;
+					index++;
+				}
+				continue;
+			}
+
+			if (c == '{' && !quoted) {
+				int end = template.indexOf('}', index);
+				int argIndex = (end > 0) ? ParseArgIndex(template, index + 1, end) : -1;
+				if (argIndex >= 0) {
+					literals.add(literal.toString());
+					argIndices.add(argIndex);
+					literal.setLength(0);
+					index = end + 1;
+					continue;
+				}
+			}
+
+			literal.append(c);
+			index++;
+		}
+		literals.add(literal.toString());
+
+		int[] indices = new int[argIndices.size()];
+		for (int placeholder = 0; placeholder < indices.length; placeholder++) {
+			indices[placeholder] = argIndices.get(placeholder);
+		}
+		return new MessageTemplate(literals.toArray(new String[0]), indices);
+	}
+	/**
+	 * @return The index of "{index}" or "{index,type}" or -1 if it is invalid.
+	 * */
+	private static int ParseArgIndex(String template, int start, int end) {
+		int argIndex = 0;
+		int index = start;
+		for (; index < end; index++) {
+			char c = template.charAt(index);
+			if (c == ',') {
+				break;
+			}
+			if (c < '0' || c > '9' || argIndex > 1000) {
+				return -1;
+			}
+			argIndex = argIndex * 10 + (c - '0');
+		}
+
+		return (index > start) ? argIndex : -1;
+	}
+
+	// ##########################################
+	// # Format
+	// ##########################################
+	public StringBuilder format(StringBuilder out) {
+		return format(out, 0, null, null, null, null);
+	}
+	public StringBuilder format(StringBuilder out, Object arg0) {
+		return format(out, 1, arg0, null, null, null);
+	}
+	public StringBuilder format(StringBuilder out, Object arg0, Object arg1) {
+		return format(out, 2, arg0, arg1, null, null);
+	}
+	public StringBuilder format(StringBuilder out, Object arg0, Object arg1, Object arg2) {
+		return format(out, 3, arg0, arg1, arg2, null);
+	}
+	public StringBuilder format(StringBuilder out, Object... args) {
+		return format(out, args.length, null, null, null, args);
+	}
+	/**
+	 * Placeholders without argument are written as they are, like
+	 * {@linkplain java.text.MessageFormat} does.
+	 * */
+	private StringBuilder format(StringBuilder out, int argCount, Object arg0, Object arg1, Object arg2, Object[] args) {
+		for (int placeholder = 0; placeholder < this.argIndices.length; placeholder++) {
+			out.append(this.literals[placeholder]);
+
+			int argIndex = this.argIndices[placeholder];
+			if (argIndex >= argCount) {
+				out.append('{').append(argIndex).append('}');
+			} else if (args != null) {
+				AppendArg(out, args[argIndex]);
+			} else {
+				AppendArg(out, (argIndex == 0) ? arg0 : (argIndex == 1) ? arg1 : arg2);
+			}
+		}
+		out.append(this.literals[this.argIndices.length]);
+
+		return out;
+	}
+	private static void AppendArg(StringBuilder out, Object arg) {
+		if (arg instanceof CharSequence) {
+			out.append((CharSequence)arg);
+		} else if (arg instanceof Integer) {
+			out.append(((Integer)arg).intValue());
+		} else if (arg instanceof Long) {
+			out.append(((Long)arg).longValue());
+		} else {
+			out.append(arg);
+		}
+	}
+	/**
+	 * @return The amount of arguments that the template uses.
+	 * */
+	public int getArgCount() {
+		int argCount = 0;
+		for (int argIndex : this.argIndices) {
+			argCount = Math.max(argCount, argIndex + 1);
+		}
+		return argCount;
+	}
+}
@@ -0,0 +1,125 @@
+package com.gmail.xfrednet.xfutils.util.language;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * This is an immutable snapshot of all translations of one language. The
+ * {@linkplain Language} builds a new table when the language or the loaded
+ * bundles change and swaps it in one step. Readers never lock and never see
+ * a table that holds strings of two languages.
+ *
+ * <p>The strings of the main bundle come from a {@linkplain LanguagePack}
+ * if one was compiled, the strings of the other bundles are stored in a map.
+ * The pack is asked first. Bundles that are loaded in the background or
+ * lazily are asked last, a lookup only waits for them if the key isn't in the
+ * other translations. Lazy bundles are only loaded for the keys with
+ * their prefix.</p>
+ *
+ * <p>The table also caches the compiled {@linkplain MessageTemplate}s of its
+ * strings. A new language or bundle creates a new table, the cache can
+ * therefore never return a template of another language.</p>
+ * */
+final class TranslationTable {
+
+	private final Locale locale;
+	private final LanguagePack pack;
+	private final Map<String, String> translations;
+	private final List<BundleLoad> bundleLoads;
+
+	private final Map<String, MessageTemplate> templates = new ConcurrentHashMap<>();
+	/**
+	 * The templates of the {@linkplain LanguageKeyIds}. They are immutable, two
+	 * threads that compile the same template just write equal values.
+	 * */
+	private final MessageTemplate[] templatesById = new MessageTemplate[LanguageKeyIds.NAMES.length];
+
+	/**
+	 * @param pack The pack of the main bundle or <tt>null</tt>.
+	 * @param translations The translations, the table takes ownership of the map.
+	 * @param bundleLoads The bundles that are loaded in the background or lazily.
+	 * */
+	TranslationTable(Locale locale, LanguagePack pack, Map<String, String> translations, List<BundleLoad> bundleLoads) {
+		this.locale = locale;
+		this.pack = pack;
+		this.translations = Collections.unmodifiableMap(translations);
+		this.bundleLoads = Collections.unmodifiableList(bundleLoads);
+	}
+
+	Locale getLocale() {
+		return this.locale;
+	}
+	LanguagePack getPack() {
+		return this.pack;
+	}
+	String get(String key, String defaultValue) {
+		if (this.pack != null) {
+			int keyId = LanguagePack.GetKeyId(key);
+			if (keyId >= 0) {
+				return this.pack.getString(keyId);
+			}
+		}
+
+		String value = this.translations.get(key);
+		if (value != null) {
+			return value;
+		}
+
+		for (BundleLoad bundleLoad : this.bundleLoads) {
+			if (!bundleLoad.mayContain(key)) {
+				continue;
+			}
+
+			value = bundleLoad.await().get(key);
+			if (value != null) {
+				return value;
+			}
+		}
+		return defaultValue;
+	}
+	String get(int keyId, String defaultValue) {
+		if (keyId < 0 || keyId >= LanguageKeyIds.NAMES.length) {
+			return defaultValue;
+		}
+		if (this.pack != null) {
+			return this.pack.getString(keyId);
+		}
+
+		return get(LanguageKeyIds.NAMES[keyId], defaultValue);
+	}
+	MessageTemplate getTemplate(String key, String defaultValue) {
+		MessageTemplate template = this.templates.get(key);
+		if (template == null) {
+			template = MessageTemplate.Compile(get(key, defaultValue));
+			this.templates.put(key, template);
+		}
+		return template;
+	}
+	MessageTemplate getTemplate(int keyId, String defaultValue) {
+		if (keyId < 0 || keyId >= this.templatesById.length) {
+			return MessageTemplate.Compile(defaultValue);
+		}
+
+		MessageTemplate template = this.templatesById[keyId];
+		if (template == null) {
+			template = MessageTemplate.Compile(get(keyId, defaultValue));
+			this.templatesById[keyId] = template;
+		}
+		return template;
+	}
+	/**
+	 * This returns a modifiable copy of the translations, it's used to
+	 * build the next table.
+	 * */
+	Map<String, String> copyTranslations() {
+		return new HashMap<>(this.translations);
+	}
+	List<BundleLoad> copyBundleLoads() {
+		return new ArrayList<>(this.bundleLoads);
+	}
+}
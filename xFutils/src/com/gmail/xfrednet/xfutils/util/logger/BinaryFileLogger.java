@@ -0,0 +1,382 @@
+package com.gmail.xfrednet.xfutils.util.logger;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.gmail.xfrednet.xfutils.util.Logger;
+
+/**
+ * This logger writes compact binary records instead of text lines. The
+ * messages are never formatted, a record only contains the time, the level,
+ * the id of the template and the raw arguments. Every template and logger
+ * name is written once per file and referenced by its id afterwards.
+ *
+ * <p>The files can be turned back into the normal text format with the
+ * {@linkplain BinaryLogDecoder}.</p>
+ *
+ * <p>File layout: the header is the magic number, the format version and the
+ * start time in milliseconds. It is followed by entries that start with their
+ * type:</p>
+ * <ul>
+ *  <li>{@linkplain #ENTRY_TEMPLATE}: varint id, string</li>
+ *  <li>{@linkplain #ENTRY_LOGGER}: varint id, string</li>
+ *  <li>{@linkplain #ENTRY_MESSAGE}: signed varint milliseconds since the last
+ *      record, level, varint logger id, varint template id (0 means the template
+ *      follows as a string), flags, argument count, the arguments and the stack
+ *      trace as a string if the exception flag is set</li>
+ *  <li>{@linkplain #ENTRY_LINE}: signed varint milliseconds since the last
+ *      record, level, string. This is used for lines that are already formatted</li>
+ * </ul>
+ * <p>Strings are written as a varint byte count followed by the UTF-8 bytes.</p>
+ * */
+public class BinaryFileLogger extends Logger {
+
+	static final int MAGIC   = 0x58464C42; // "XFLB"
+	static final int VERSION = 1;
+
+	static final int ENTRY_TEMPLATE = 1;
+	static final int ENTRY_LOGGER   = 2;
+	static final int ENTRY_MESSAGE  = 3;
+	static final int ENTRY_LINE     = 4;
+
+	static final int ARG_NULL   = 0;
+	static final int ARG_LONG   = 1;
+	static final int ARG_STRING = 2;
+
+	static final int FLAG_EXCEPTION = 1;
+
+	/**
+	 * Messages that are created at runtime would all become templates. The
+	 * amount of templates is therefore limited, the rest is written inline.
+	 * */
+	private static final int MAX_TEMPLATES = 4096;
+	private static final int INITIAL_BUFFER_SIZE = 512;
+
+	private static final String LOG_FILE_NAME = "../log/log_%s.xflog";
+
+	private final Map<String, Integer> templateIds = new HashMap<>();
+	private final Map<String, Integer> loggerIds = new HashMap<>();
+
+	private OutputStream output = null;
+	private File logFile;
+	private long lastMillis;
+
+	/**
+	 * The entry is encoded into this buffer before it is written.
+	 * */
+	private byte[] buffer = new byte[INITIAL_BUFFER_SIZE];
+	private int bufferLength = 0;
+
+	public BinaryFileLogger(boolean enableDebugLog) {
+		super(enableDebugLog);
+
+		String timeStamp = new SimpleDateFormat("yyyy.MM.dd.HH.mm.ss").format(new Date());
+		this.logFile = new File(String.format(LOG_FILE_NAME, timeStamp));
+		this.logFile.getParentFile().mkdirs();
+		this.lastMillis = System.currentTimeMillis();
+
+		try {
+			this.output = new BufferedOutputStream(new FileOutputStream(this.logFile));
+
+			putInt(MAGIC);
+			putByte(VERSION);
+			putLong(this.lastMillis);
+			writeBuffer();
+		} catch (IOException e) {
+			// There is no other logger, this is the logger
+			e.printStackTrace();
+			this.output = null;
+		}
+	}
+
+	public File getLogFile() {
+		return this.logFile;
+	}
+
+	@Override
+	public synchronized boolean endLog() {
+		if (this.output == null) {
+			return true;
+		}
+
+		try {
+			this.output.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+			return false;
+		}
+
+		this.output = null;
+		return true;
+	}
+	@Override
+	public synchronized void flush() {
+		if (this.output == null) {
+			return;
+		}
+
+		try {
+			this.output.flush();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	@Override
+	protected boolean logsRecords() {
+		return true;
+	}
+	@Override
+	protected synchronized void logRecord(String loggerName, int logLevel, String template, Exception e, int argCount, Object arg0, Object arg1, Object arg2) {
+		if (this.output == null) {
+			return;
+		}
+		if (template == null) {
+			template = "null"; // the text loggers do the same
+		}
+
+		int loggerId = getLoggerId(loggerName);
+		int templateId = getTemplateId(template);
+
+		putByte(ENTRY_MESSAGE);
+		putTime();
+		putByte(logLevel);
+		putVarInt(loggerId);
+		putVarInt(templateId);
+		if (templateId == 0) {
+			putString(template);
+		}
+		putByte((e != null) ? FLAG_EXCEPTION : 0);
+
+		putByte(argCount);
+		if (argCount > 0) {
+			putArg(arg0);
+		}
+		if (argCount > 1) {
+			putArg(arg1);
+		}
+		if (argCount > 2) {
+			putArg(arg2);
+		}
+
+		if (e != null) {
+			putString(GetStackTrace(e));
+		}
+
+		writeBuffer();
+		if (logLevel == LOG_LEVEL_ERROR) {
+			flush();
+		}
+	}
+	/**
+	 * This writes lines that were formatted before they reached this logger,
+	 * like the lines of a {@linkplain MultiLogger}.
+	 * */
+	@Override
+	protected synchronized void logLine(StringBuilder line, Exception e, int logLevel) {
+		if (this.output == null) {
+			return;
+		}
+
+		putByte(ENTRY_LINE);
+		putTime();
+		putByte(logLevel);
+		putString(line);
+		writeBuffer();
+
+		if (e != null) {
+			putByte(ENTRY_LINE);
+			putTime();
+			putByte(logLevel);
+			putString(GetStackTrace(e));
+			writeBuffer();
+		}
+	}
+
+	@Override
+	protected void logMessage(String message, int logLevel) {
+		logLine(new StringBuilder(message), null, logLevel);
+	}
+
+	@Override
+	protected void logMessage(String message, Exception e, int logLevel) {
+		logLine(new StringBuilder(message), e, logLevel);
+	}
+
+	// ##########################################
+	// # Ids
+	// ##########################################
+	/**
+	 * This returns the id of the template and writes the template entry if it
+	 * is new. The id 0 means that the template has to be written inline.
+	 * */
+	private int getTemplateId(String template) {
+		Integer id = this.templateIds.get(template);
+		if (id != null) {
+			return id;
+		}
+		if (this.templateIds.size() >= MAX_TEMPLATES) {
+			return 0;
+		}
+
+		id = this.templateIds.size() + 1;
+		this.templateIds.put(template, id);
+
+		putByte(ENTRY_TEMPLATE);
+		putVarInt(id);
+		putString(template);
+		return id;
+	}
+	/**
+	 * This returns the id of the logger name and writes the logger entry if it
+	 * is new. The root logger has the id 0.
+	 * */
+	private int getLoggerId(String loggerName) {
+		if (loggerName == null || loggerName.isEmpty()) {
+			return 0;
+		}
+
+		Integer id = this.loggerIds.get(loggerName);
+		if (id != null) {
+			return id;
+		}
+
+		id = this.loggerIds.size() + 1;
+		this.loggerIds.put(loggerName, id);
+
+		putByte(ENTRY_LOGGER);
+		putVarInt(id);
+		putString(loggerName);
+		return id;
+	}
+
+	// ##########################################
+	// # Encoding
+	// ##########################################
+	private void putArg(Object arg) {
+		if (arg == null) {
+			putByte(ARG_NULL);
+		} else if (arg instanceof Long || arg instanceof Integer || arg instanceof Short || arg instanceof Byte) {
+			putByte(ARG_LONG);
+			putSignedVarLong(((Number)arg).longValue());
+		} else if (arg instanceof CharSequence) {
+			putByte(ARG_STRING);
+			putString((CharSequence)arg);
+		} else {
+			putByte(ARG_STRING);
+			putString(String.valueOf(arg));
+		}
+	}
+	private void putTime() {
+		long now = System.currentTimeMillis();
+		putSignedVarLong(now - this.lastMillis); // the clock can go backwards
+		this.lastMillis = now;
+	}
+	private void putByte(int value) {
+		ensureCapacity(1);
+		this.buffer[this.bufferLength++] = (byte)value;
+	}
+	private void putInt(int value) {
+		putByte(value >>> 24);
+		putByte(value >>> 16);
+		putByte(value >>> 8);
+		putByte(value);
+	}
+	private void putLong(long value) {
+		putInt((int)(value >>> 32));
+		putInt((int)value);
+	}
+	private void putVarInt(int value) {
+		putVarLong(value & 0xFFFFFFFFL);
+	}
+	private void putVarLong(long value) {
+		ensureCapacity(10);
+		while ((value & ~0x7FL) != 0) {
+			this.buffer[this.bufferLength++] = (byte)((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		this.buffer[this.bufferLength++] = (byte)value;
+	}
+	/**
+	 * This writes a signed value with the zig zag encoding, small negative
+	 * values stay small.
+	 * */
+	private void putSignedVarLong(long value) {
+		putVarLong((value << 1) ^ (value >> 63));
+	}
+	/**
+	 * This writes the characters as UTF-8 without creating a byte array.
+	 * */
+	private void putString(CharSequence string) {
+		int length = string.length();
+		int byteCount = 0;
+		for (int index = 0; index < length; index++) {
+			char c = string.charAt(index);
+			if (c < 0x80) {
+				byteCount += 1;
+			} else if (c < 0x800) {
+				byteCount += 2;
+			} else if (Character.isHighSurrogate(c) && index + 1 < length && Character.isLowSurrogate(string.charAt(index + 1))) {
+				byteCount += 4;
+				index++;
+			} else {
+				byteCount += 3;
+			}
+		}
+
+		putVarInt(byteCount);
+		ensureCapacity(byteCount);
+		byte[] buffer = this.buffer;
+		int position = this.bufferLength;
+		for (int index = 0; index < length; index++) {
+			char c = string.charAt(index);
+			if (c < 0x80) {
+				buffer[position++] = (byte)c;
+			} else if (c < 0x800) {
+				buffer[position++] = (byte)(0xC0 | (c >> 6));
+				buffer[position++] = (byte)(0x80 | (c & 0x3F));
+			} else if (Character.isHighSurrogate(c) && index + 1 < length && Character.isLowSurrogate(string.charAt(index + 1))) {
+				int codePoint = Character.toCodePoint(c, string.charAt(++index));
+				buffer[position++] = (byte)(0xF0 | (codePoint >> 18));
+				buffer[position++] = (byte)(0x80 | ((codePoint >> 12) & 0x3F));
+				buffer[position++] = (byte)(0x80 | ((codePoint >> 6) & 0x3F));
+				buffer[position++] = (byte)(0x80 | (codePoint & 0x3F));
+			} else {
+				buffer[position++] = (byte)(0xE0 | (c >> 12));
+				buffer[position++] = (byte)(0x80 | ((c >> 6) & 0x3F));
+				buffer[position++] = (byte)(0x80 | (c & 0x3F));
+			}
+		}
+		this.bufferLength = position;
+	}
+	private void ensureCapacity(int byteCount) {
+		if (this.bufferLength + byteCount > this.buffer.length) {
+			this.buffer = Arrays.copyOf(this.buffer, Math.max(this.buffer.length * 2, this.bufferLength + byteCount));
+		}
+	}
+	private void writeBuffer() {
+		try {
+			this.output.write(this.buffer, 0, this.bufferLength);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+
+		this.bufferLength = 0;
+	}
+
+	private static String GetStackTrace(Exception e) {
+		StringWriter stackTrace = new StringWriter();
+		e.printStackTrace(new PrintWriter(stackTrace));
+		return stackTrace.toString();
+	}
+}
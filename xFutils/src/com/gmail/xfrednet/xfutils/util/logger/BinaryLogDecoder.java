@@ -0,0 +1,248 @@
+package com.gmail.xfrednet.xfutils.util.logger;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import com.gmail.xfrednet.xfutils.util.Logger;
+
+/**
+ * This turns the files of the {@linkplain BinaryFileLogger} back into the text
+ * format of the other loggers. It is a standalone tool:
+ *
+ * <pre>
+ * java com.gmail.xfrednet.xfutils.util.logger.BinaryLogDecoder file.xflog
+ *     [-level LEVEL] [-from yyyy.MM.dd.HH.mm.ss] [-to yyyy.MM.dd.HH.mm.ss] [-logger NAME]
+ * </pre>
+ *
+ * <p>The <tt>-logger</tt> filter also matches the children of the logger,
+ * "plugin" matches "plugin.clipboard". Lines that reached the binary logger
+ * already formatted have no logger name, they are only shown without that
+ * filter.</p>
+ * */
+public class BinaryLogDecoder {
+
+	private static final String TIME_ARG_FORMAT = "yyyy.MM.dd.HH.mm.ss";
+
+	private int minLogLevel = Logger.LOG_LEVEL_DEBUG;
+	private long fromMillis = Long.MIN_VALUE;
+	private long toMillis = Long.MAX_VALUE;
+	private String loggerFilter = null;
+
+	private final List<String> templates = new ArrayList<>();
+	private final List<String> loggerNames = new ArrayList<>();
+	private final SimpleDateFormat timeFormat = new SimpleDateFormat("HH:mm:ss");
+	private final StringBuilder line = new StringBuilder();
+
+	public static void main(String[] args) {
+		// The file and a value for every option
+		if (args.length % 2 == 0) {
+			PrintUsage();
+			return;
+		}
+
+		BinaryLogDecoder decoder = new BinaryLogDecoder();
+		try {
+			for (int index = 1; index < args.length; index += 2) {
+				String value = args[index + 1];
+
+				switch (args[index]) {
+				case "-level":
+					decoder.minLogLevel = Logger.ParseLogLevel(value);
+					if (decoder.minLogLevel <= 0) {
+						System.err.println("BinaryLogDecoder: Unknown log level: " + value);
+						return;
+					}
+					break;
+				case "-from":
+					decoder.fromMillis = new SimpleDateFormat(TIME_ARG_FORMAT).parse(value).getTime();
+					break;
+				case "-to":
+					decoder.toMillis = new SimpleDateFormat(TIME_ARG_FORMAT).parse(value).getTime();
+					break;
+				case "-logger":
+					decoder.loggerFilter = value;
+					break;
+				default:
+					PrintUsage();
+					return;
+				}
+			}
+		} catch (ParseException e) {
+			System.err.println("BinaryLogDecoder: The time has to be in the format " + TIME_ARG_FORMAT);
+			return;
+		}
+
+		try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(args[0])))) {
+			decoder.decode(input, System.out);
+		} catch (IOException e) {
+			System.err.println("BinaryLogDecoder: Unable to decode the file: " + args[0]);
+			e.printStackTrace();
+		}
+	}
+	private static void PrintUsage() {
+		System.out.println("Arguments: <file> [-level LEVEL] [-from " + TIME_ARG_FORMAT + "] [-to " + TIME_ARG_FORMAT + "] [-logger NAME]");
+		System.out.println();
+		System.out.println("    -level:  The lowest level that is printed. (ERROR, ALERT, INFO or DEBUG)");
+		System.out.println("    -from:   Only records at or after this time are printed.");
+		System.out.println("    -to:     Only records before this time are printed.");
+		System.out.println("    -logger: Only records of this logger and its children are printed.");
+	}
+
+	/**
+	 * This decodes the whole file and prints the records that pass the filters.
+	 * */
+	public void decode(DataInputStream input, PrintStream out) throws IOException {
+		if (input.readInt() != BinaryFileLogger.MAGIC) {
+			throw new IOException("This isn't a binary log file.");
+		}
+		int version = input.readUnsignedByte();
+		if (version != BinaryFileLogger.VERSION) {
+			throw new IOException("Unknown binary log version: " + version);
+		}
+		long millis = input.readLong();
+
+		this.templates.add(null);      // the ids start at 1
+		this.loggerNames.add("");      // 0 is the root logger
+
+		while (true) {
+			int entry;
+			try {
+				entry = input.readUnsignedByte();
+			} catch (EOFException e) {
+				return;
+			}
+
+			switch (entry) {
+			case BinaryFileLogger.ENTRY_TEMPLATE:
+				ReadVarLong(input); // the ids are written in order
+				this.templates.add(ReadString(input));
+				break;
+			case BinaryFileLogger.ENTRY_LOGGER:
+				ReadVarLong(input);
+				this.loggerNames.add(ReadString(input));
+				break;
+			case BinaryFileLogger.ENTRY_MESSAGE:
+				millis += ReadSignedVarLong(input);
+				decodeMessage(input, millis, out);
+				break;
+			case BinaryFileLogger.ENTRY_LINE: {
+				millis += ReadSignedVarLong(input);
+				int logLevel = input.readUnsignedByte();
+				String text = ReadString(input);
+				if (this.loggerFilter == null && isShown(logLevel, millis)) {
+					out.println(text);
+				}
+				break;
+			}
+			default:
+				throw new IOException("Unknown entry type: " + entry);
+			}
+		}
+	}
+	private void decodeMessage(DataInputStream input, long millis, PrintStream out) throws IOException {
+		int logLevel = input.readUnsignedByte();
+		String loggerName = this.loggerNames.get((int)ReadVarLong(input));
+		int templateId = (int)ReadVarLong(input);
+		String template = (templateId == 0) ? ReadString(input) : this.templates.get(templateId);
+		int flags = input.readUnsignedByte();
+
+		int argCount = input.readUnsignedByte();
+		Object[] args = new Object[argCount];
+		for (int index = 0; index < argCount; index++) {
+			args[index] = ReadArg(input);
+		}
+		String stackTrace = ((flags & BinaryFileLogger.FLAG_EXCEPTION) != 0) ? ReadString(input) : null;
+
+		if (!isShown(logLevel, millis) || !isLoggerShown(loggerName)) {
+			return;
+		}
+
+		this.line.setLength(0);
+		this.line.append(Logger.GetLogLevelPrefix(logLevel));
+		this.line.append(this.timeFormat.format(new Date(millis)));
+		this.line.append(": ");
+		AppendTemplate(this.line, template, args);
+		out.println(this.line);
+
+		if (stackTrace != null) {
+			out.print(stackTrace);
+		}
+	}
+
+	private boolean isShown(int logLevel, long millis) {
+		return logLevel >= this.minLogLevel && millis >= this.fromMillis && millis < this.toMillis;
+	}
+	private boolean isLoggerShown(String loggerName) {
+		if (this.loggerFilter == null) {
+			return true;
+		}
+
+		return loggerName.equals(this.loggerFilter) || loggerName.startsWith(this.loggerFilter + ".");
+	}
+
+	/**
+	 * This fills the template like the {@linkplain Logger} does. Placeholders
+	 * without argument are written as they are, arguments without placeholder
+	 * are ignored.
+	 * */
+	private static void AppendTemplate(StringBuilder line, String template, Object[] args) {
+		int templateIndex = 0;
+		for (Object arg : args) {
+			int placeholderIndex = template.indexOf("{}", templateIndex);
+			if (placeholderIndex < 0) {
+				break;
+			}
+
+			line.append(template, templateIndex, placeholderIndex);
+			line.append(arg);
+			templateIndex = placeholderIndex + 2;
+		}
+
+		line.append(template, templateIndex, template.length());
+	}
+
+	private static Object ReadArg(DataInputStream input) throws IOException {
+		int type = input.readUnsignedByte();
+		switch (type) {
+		case BinaryFileLogger.ARG_NULL:
+			return null;
+		case BinaryFileLogger.ARG_LONG:
+			return ReadSignedVarLong(input);
+		case BinaryFileLogger.ARG_STRING:
+			return ReadString(input);
+		default:
+			throw new IOException("Unknown argument type: " + type);
+		}
+	}
+	private static long ReadVarLong(DataInputStream input) throws IOException {
+		long value = 0;
+		int shift = 0;
+		while (true) {
+			int b = input.readUnsignedByte();
+			value |= (long)(b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+			shift += 7;
+		}
+	}
+	private static long ReadSignedVarLong(DataInputStream input) throws IOException {
+		long value = ReadVarLong(input);
+		return (value >>> 1) ^ -(value & 1);
+	}
+	private static String ReadString(DataInputStream input) throws IOException {
+		byte[] bytes = new byte[(int)ReadVarLong(input)];
+		input.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
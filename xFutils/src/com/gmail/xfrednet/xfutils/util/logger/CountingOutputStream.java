@@ -0,0 +1,35 @@
+package com.gmail.xfrednet.xfutils.util.logger;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * This {@linkplain FilterOutputStream} counts the bytes that are written
+ * through it. It is used by the {@linkplain FileLogger} to know when the
+ * {@linkplain RollingPolicy} size limit is reached.
+ * */
+class CountingOutputStream extends FilterOutputStream {
+
+	private long byteCount = 0;
+
+	CountingOutputStream(OutputStream out) {
+		super(out);
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		this.out.write(b);
+		this.byteCount++;
+	}
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		// FilterOutputStream would write every byte on its own
+		this.out.write(b, off, len);
+		this.byteCount += len;
+	}
+
+	long getByteCount() {
+		return this.byteCount;
+	}
+}
@@ -1,21 +1,47 @@
 package com.gmail.xfrednet.xfutils.util.logger;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.concurrent.ExecutorService;
 
 import com.gmail.xfrednet.xfutils.util.Logger;
 
-public class FileLogger extends Logger {
+public class FileLogger extends Logger implements LogRingBuffer.Drain {
 	
 	PrintWriter writer = null;
-	File logFile = null;
+	volatile File logFile = null;
+
+	/**
+	 * This is the stream below the {@linkplain #writer}. The encoded lines are
+	 * written directly into it, the writer is only used for stack traces.
+	 * It also counts the bytes for the {@linkplain RollingPolicy}.
+	 * */
+	CountingOutputStream output = null;
+	long fileStartMillis = 0;
+
+	/**
+	 * This is the {@linkplain RollingPolicy} of this logger. It is <tt>null</tt>
+	 * if everything is written into one file.
+	 * */
+	RollingPolicy rollingPolicy = null;
+	ExecutorService rollExecutor = null;
+	String lastLogFileName = null;
+	int logFileIndex = 0;
+
+	/**
+	 * This is the buffer of the asynchronous mode. It is <tt>null</tt> if the
+	 * logger writes the messages directly on the logging thread.
+	 * */
+	LogRingBuffer ringBuffer = null;
 	
 	public static String GetNewLogFileName() {
 		String baseFileName = "../log/log_%s.log";
@@ -25,9 +51,69 @@ public class FileLogger extends Logger {
 	}
 	
 	public FileLogger(boolean enableDebugLog) {
+		this(enableDebugLog, null, null, 0);
+	}
+	/**
+	 * This creates a FileLogger in the asynchronous mode. The messages are
+	 * copied into a {@linkplain LogRingBuffer} and written to the file by a
+	 * background thread. The logging thread therefore never waits on the disk,
+	 * unless the buffer is full and the policy says so.
+	 *
+	 * @param enableDebugLog This defines if debug messages should be logged.
+	 * @param overflowPolicy The {@linkplain LogRingBuffer.OverflowPolicy} that is
+	 *                       used when the buffer is full.
+	 * @param bufferCapacity The amount of messages that can be buffered.
+	 * */
+	public FileLogger(boolean enableDebugLog, LogRingBuffer.OverflowPolicy overflowPolicy, int bufferCapacity) {
+		this(enableDebugLog, null, overflowPolicy, bufferCapacity);
+	}
+	/**
+	 * This creates a FileLogger with all options.
+	 *
+	 * @param enableDebugLog This defines if debug messages should be logged.
+	 * @param rollingPolicy The {@linkplain RollingPolicy} that defines when a new file is
+	 *                      started. Use <tt>null</tt> to write everything into one file.
+	 * @param overflowPolicy The {@linkplain LogRingBuffer.OverflowPolicy} of the asynchronous
+	 *                       mode. Use <tt>null</tt> to write on the logging thread.
+	 * @param bufferCapacity The amount of messages that can be buffered in the asynchronous mode.
+	 * */
+	public FileLogger(boolean enableDebugLog, RollingPolicy rollingPolicy, LogRingBuffer.OverflowPolicy overflowPolicy, int bufferCapacity) {
 		super(enableDebugLog);
 		
-		this.logFile = new File(GetNewLogFileName());
+		this.rollingPolicy = rollingPolicy;
+		if (rollingPolicy != null) {
+			this.rollExecutor = RollingPolicy.CreateExecutor();
+		}
+		
+		openLogFile();
+		
+		if (overflowPolicy != null) {
+			this.ringBuffer = new LogRingBuffer("xFutils-FileLogger", bufferCapacity, overflowPolicy, this);
+		}
+	}
+	/**
+	 * This creates a new log file and the streams to write to it.
+	 * */
+	private void openLogFile() {
+		String fileName = GetNewLogFileName();
+		
+		// A rolled file can have the same timestamp as the new one, it gets an
+		// index in that case. The index only grows, the names of deleted files are
+		// not reused. It is padded to keep the sorting by name intact.
+		if (fileName.equals(this.lastLogFileName)) {
+			this.logFileIndex++;
+		} else {
+			this.lastLogFileName = fileName;
+			this.logFileIndex = 0;
+		}
+		if (this.logFileIndex != 0) {
+			fileName = String.format("%s_%04d%s",
+					fileName.substring(0, fileName.length() - RollingPolicy.LOG_FILE_SUFFIX.length()), 
+					this.logFileIndex, 
+					RollingPolicy.LOG_FILE_SUFFIX);
+		}
+		this.logFile = new File(fileName);
+		
 		try {
 			this.logFile.getParentFile().mkdirs();
 			this.logFile.createNewFile();
@@ -36,31 +122,137 @@ public class FileLogger extends Logger {
 		}
 		
 		try {
+			output = new CountingOutputStream(new BufferedOutputStream(new FileOutputStream(this.logFile)));
 			writer = new PrintWriter(
 					new OutputStreamWriter(
-							new FileOutputStream(this.logFile), StandardCharsets.UTF_8));
+							output, StandardCharsets.UTF_8));
 		} catch (FileNotFoundException e) {
 			e.printStackTrace();
 		}
+		
+		this.fileStartMillis = System.currentTimeMillis();
+	}
+	/**
+	 * This switches to a new file if the {@linkplain RollingPolicy} says so.
+	 * The old file is handed to the roll executor that compresses it and
+	 * deletes old files. It is called before every write, by the logging
+	 * thread that holds the lock or by the writer thread of the asynchronous mode.
+	 * */
+	private void rollIfNeeded() {
+		if (this.rollingPolicy == null || 
+				!this.rollingPolicy.shouldRoll(this.output.getByteCount(), this.fileStartMillis, System.currentTimeMillis())) {
+			return;
+		}
+		
+		File rolledFile = this.logFile;
+		this.writer.close();
+		
+		openLogFile();
+		
+		RollingPolicy policy = this.rollingPolicy;
+		this.rollExecutor.execute(() -> policy.onRolled(rolledFile, this.logFile));
 	}
 	
 	@Override
-	public boolean endLog() {
+	public synchronized boolean endLog() {
+		// Drain everything that is still buffered before the file is closed
+		if (this.ringBuffer != null) {
+			this.ringBuffer.close();
+		}
+		
 		this.writer.flush();
 		this.writer.close();
 		
+		// Let the last compression finish
+		if (this.rollExecutor != null) {
+			RollingPolicy.ShutdownExecutor(this.rollExecutor);
+		}
+		
 		return true;
 	}
+	/**
+	 * This flushes the direct mode. The asynchronous mode is flushed by the
+	 * writer thread after every batch.
+	 * */
+	@Override
+	public void flush() {
+		if (this.ringBuffer != null) {
+			return;
+		}
+		
+		synchronized (this) {
+			this.writer.flush();
+		}
+	}
+	
+	/**
+	 * This writes the formatted line without creating a {@linkplain String}.
+	 * The asynchronous mode copies the characters straight into a slot of the
+	 * {@linkplain LogRingBuffer}, the direct mode encodes them with the buffers
+	 * of the logging thread.
+	 * */
+	@Override
+	protected void logLine(StringBuilder line, Exception e, int logLevel) {
+		if (this.ringBuffer != null) {
+			this.ringBuffer.publish(line, e, logLevel);
+			return;
+		}
+		
+		ByteBuffer bytes = EncodeLine(line);
+		synchronized (this) {
+			writeBytes(bytes, e);
+		}
+	}
+	/**
+	 * This writes the encoded line and the stack trace of the exception
+	 * (if there is one) to the file.
+	 * */
+	private void writeBytes(ByteBuffer bytes, Exception e) {
+		rollIfNeeded();
+		
+		try {
+			this.output.write(bytes.array(), 0, bytes.limit());
+		} catch (IOException ioException) {
+			ioException.printStackTrace();
+		}
+		
+		if (e != null) {
+			e.printStackTrace(this.writer);
+			this.writer.flush();
+		}
+	}
 	
 	@Override
 	protected void logMessage(String message, int logLevel) {
-		this.writer.println(message);
+		logLine(new StringBuilder(message), null, logLevel);
 	}
 
 	@Override
 	protected void logMessage(String message, Exception e, int logLevel) {
-		this.writer.println(message);
-		e.printStackTrace(this.writer);
+		logLine(new StringBuilder(message), e, logLevel);
+	}
+
+	// ##########################################
+	// # LogRingBuffer.Drain
+	// ##########################################
+	/**
+	 * This writes a record from the {@linkplain LogRingBuffer} into the
+	 * output buffer. It is only called by the writer thread.
+	 * */
+	@Override
+	public void drainRecord(char[] line, int length, Exception e, int logLevel) {
+		writeBytes(EncodeLine(line, length), e);
 	}
+	/**
+	 * This writes the drained batch to the file. A note is added if records
+	 * had to be dropped because the buffer was full.
+	 * */
+	@Override
+	public void endBatch(long droppedRecords) {
+		if (droppedRecords != 0) {
+			this.writer.println("[ALERT :|]FileLogger: " + droppedRecords + " messages were dropped because the log buffer was full.");
+		}
 
+		this.writer.flush();
+	}
 }
@@ -0,0 +1,338 @@
+package com.gmail.xfrednet.xfutils.util.logger;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import com.gmail.xfrednet.xfutils.util.Logger;
+
+/**
+ * This is a bounded ring buffer for log records that is drained by one
+ * background writer thread. It is used by the {@linkplain FileLogger} to
+ * move the disk I/O away from the logging thread (this is often the EDT).
+ *
+ * <p>The buffer and all slots are allocated once in the constructor. Threads
+ * that log claim a slot with a CAS on the enqueue position and never take a
+ * lock. Every slot carries its own sequence number that tells producers and
+ * the writer if the slot is free, published or consumed. (This is the bounded
+ * queue design by Dmitry Vyukov, if someone wants to read up on it)</p>
+ *
+ * <p>The writer thread drains all published records in one go and passes
+ * them to a {@linkplain Drain}. The drain is told when a batch ends so it
+ * can write everything to disk with one flush.</p>
+ * */
+public class LogRingBuffer {
+
+	/**
+	 * This policy defines what happens when a record is published while the
+	 * buffer is full.
+	 * */
+	public enum OverflowPolicy {
+		/**
+		 * The logging thread waits until the writer has made space.
+		 * */
+		BLOCK,
+		/**
+		 * Debug records are dropped. Other records first discard the oldest
+		 * record if that one is a debug record, they wait otherwise.
+		 * */
+		DROP_DEBUG_FIRST,
+		/**
+		 * The oldest record in the buffer is discarded to make space for
+		 * the new one. The logging thread never waits.
+		 * */
+		DROP_OLDEST
+	}
+
+	/**
+	 * This interface receives the records that are drained by the writer thread.
+	 * All methods are only called from the writer thread.
+	 * */
+	public interface Drain {
+		/**
+		 * This is called for every record in the order they were published.
+		 *
+		 * @param line The characters of the record. The array is reused after
+		 *             this call returns and should not be stored.
+		 * @param length The amount of valid characters in line.
+		 * @param e The {@linkplain Exception} that was logged with the record or <tt>null</tt>.
+		 * @param logLevel The level of the record.
+		 * */
+		void drainRecord(char[] line, int length, Exception e, int logLevel);
+
+		/**
+		 * This is called after a batch of records was drained. This is the place
+		 * to flush buffered writes.
+		 *
+		 * @param droppedRecords The amount of records that were dropped since
+		 *                       the last call of this method.
+		 * */
+		void endBatch(long droppedRecords);
+	}
+
+	public static final int DEFAULT_CAPACITY = 1024;
+
+	private static final int  INITIAL_SLOT_CHARS = 256;
+	private static final long IDLE_PARK_NANOS    = 10_000_000L; // 10ms
+	private static final long FULL_PARK_NANOS    = 50_000L;     // 50us
+
+	/**
+	 * A preallocated record slot. The chars array only grows when a longer
+	 * line comes along, so the steady state doesn't allocate anything.
+	 * */
+	private static final class Slot {
+		volatile long sequence;
+		int logLevel;
+		char[] chars = new char[INITIAL_SLOT_CHARS];
+		int length;
+		Exception exception;
+	}
+
+	private final Slot[] slots;
+	private final int mask;
+	private final OverflowPolicy overflowPolicy;
+	private final Drain drain;
+
+	private final AtomicLong enqueuePosition = new AtomicLong();
+	private final AtomicLong dequeuePosition = new AtomicLong();
+	private final AtomicLong droppedRecords = new AtomicLong();
+
+	private final Thread writerThread;
+	private volatile boolean writerParked = false;
+	private volatile boolean running = true;
+
+	/**
+	 * This creates the buffer, all slots and starts the writer thread.
+	 *
+	 * @param name The name of the writer thread.
+	 * @param capacity The amount of records that can be buffered. This will be
+	 *                 rounded up to the next power of two.
+	 * @param overflowPolicy The {@linkplain OverflowPolicy} that is used if the buffer is full.
+	 * @param drain The {@linkplain Drain} that receives the records.
+	 * */
+	public LogRingBuffer(String name, int capacity, OverflowPolicy overflowPolicy, Drain drain) {
+		int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+
+		this.slots = new Slot[size];
+		for (int slotIndex = 0; slotIndex < size; slotIndex++) {
+			this.slots[slotIndex] = new Slot();
+			this.slots[slotIndex].sequence = slotIndex;
+		}
+		this.mask = size - 1;
+		this.overflowPolicy = overflowPolicy;
+		this.drain = drain;
+
+		this.writerThread = new Thread(this::runWriter, name);
+		this.writerThread.setDaemon(true);
+		this.writerThread.start();
+	}
+
+	/**
+	 * This copies the given line into a free slot and publishes it to the
+	 * writer thread. The behavior on a full buffer is defined by the
+	 * {@linkplain OverflowPolicy}.
+	 *
+	 * @param line The formatted log line without a line break.
+	 * @param e The {@linkplain Exception} that should be logged with the line, can be <tt>null</tt>.
+	 * @param logLevel The level of the record.
+	 *
+	 * @return This returns true if the record was published and false if it was dropped.
+	 * */
+	public boolean publish(CharSequence line, Exception e, int logLevel) {
+		if (!this.running) {
+			return false;
+		}
+
+		for (;;) {
+			long position = this.enqueuePosition.get();
+			Slot slot = this.slots[(int)position & this.mask];
+			long difference = slot.sequence - position;
+
+			if (difference == 0) {
+				if (this.enqueuePosition.compareAndSet(position, position + 1)) {
+					CopyLine(line, slot);
+					slot.exception = e;
+					slot.logLevel = logLevel;
+
+					slot.sequence = position + 1;
+					wakeWriter();
+					return true;
+				}
+			} else if (difference < 0) {
+				// The buffer is full. Nobody drains it after close(), waiting would never end
+				if (!this.running || !handleOverflow(logLevel)) {
+					this.droppedRecords.incrementAndGet();
+					return false;
+				}
+			}
+			// else: another thread was faster, just try again
+		}
+	}
+	/**
+	 * This copies the characters of the line into the slot. {@linkplain String}s
+	 * and {@linkplain StringBuilder}s are copied in bulk.
+	 * */
+	private static void CopyLine(CharSequence line, Slot slot) {
+		int length = line.length();
+		if (slot.chars.length < length) {
+			slot.chars = new char[Math.max(length, slot.chars.length * 2)];
+		}
+
+		if (line instanceof StringBuilder) {
+			((StringBuilder)line).getChars(0, length, slot.chars, 0);
+		} else if (line instanceof String) {
+			((String)line).getChars(0, length, slot.chars, 0);
+		} else {
+			for (int charIndex = 0; charIndex < length; charIndex++) {
+				slot.chars[charIndex] = line.charAt(charIndex);
+			}
+		}
+		slot.length = length;
+	}
+	/**
+	 * This method applies the {@linkplain OverflowPolicy} when the buffer is full.
+	 *
+	 * @return It returns true if the caller should try again and false if the
+	 *         new record should be dropped.
+	 * */
+	private boolean handleOverflow(int logLevel) {
+		switch (this.overflowPolicy) {
+		case DROP_OLDEST:
+			if (discardOldest(false)) {
+				this.droppedRecords.incrementAndGet();
+			} else {
+				Thread.yield();
+			}
+			return true;
+		case DROP_DEBUG_FIRST:
+			if (logLevel == Logger.LOG_LEVEL_DEBUG) {
+				return false;
+			}
+			if (discardOldest(true)) {
+				this.droppedRecords.incrementAndGet();
+				return true;
+			}
+			waitForSpace();
+			return true;
+		case BLOCK:
+		default:
+			waitForSpace();
+			return true;
+		}
+	}
+	private void waitForSpace() {
+		wakeWriter();
+		LockSupport.parkNanos(FULL_PARK_NANOS);
+	}
+	/**
+	 * This discards the oldest published record. It uses the same CAS as the
+	 * writer thread, so a record is either written or discarded but never both.
+	 *
+	 * @param debugOnly Only discard the record if it is a debug record.
+	 *
+	 * @return This returns true if a record was discarded.
+	 * */
+	private boolean discardOldest(boolean debugOnly) {
+		long position = this.dequeuePosition.get();
+		Slot slot = this.slots[(int)position & this.mask];
+		if (slot.sequence != position + 1) {
+			return false; // not published yet or already taken
+		}
+		if (debugOnly && slot.logLevel != Logger.LOG_LEVEL_DEBUG) {
+			return false;
+		}
+		if (!this.dequeuePosition.compareAndSet(position, position + 1)) {
+			return false;
+		}
+
+		slot.exception = null;
+		slot.sequence = position + this.mask + 1;
+		return true;
+	}
+
+	private void wakeWriter() {
+		if (this.writerParked) {
+			LockSupport.unpark(this.writerThread);
+		}
+	}
+
+	// ##########################################
+	// # Writer thread
+	// ##########################################
+	private void runWriter() {
+		for (;;) {
+			int drained = drainBatch();
+			if (drained != 0) {
+				this.drain.endBatch(this.droppedRecords.getAndSet(0));
+				continue;
+			}
+
+			if (!this.running) {
+				// The last drain after close() has found nothing, we are done
+				this.drain.endBatch(this.droppedRecords.getAndSet(0));
+				return;
+			}
+
+			this.writerParked = true;
+			if (isEmpty() && this.running) {
+				LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+			}
+			this.writerParked = false;
+		}
+	}
+	/**
+	 * This drains all published records up to one buffer size.
+	 *
+	 * @return The amount of records that were passed to the {@linkplain Drain}.
+	 * */
+	private int drainBatch() {
+		int drained = 0;
+		while (drained <= this.mask) {
+			long position = this.dequeuePosition.get();
+			Slot slot = this.slots[(int)position & this.mask];
+			long difference = slot.sequence - (position + 1);
+
+			if (difference < 0) {
+				break; // empty, or the next slot is still being filled
+			}
+			if (difference > 0 || !this.dequeuePosition.compareAndSet(position, position + 1)) {
+				continue; // a producer has discarded this record
+			}
+
+			try {
+				this.drain.drainRecord(slot.chars, slot.length, slot.exception, slot.logLevel);
+			} catch (RuntimeException e) {
+				// The writer thread should never die, there is nobody else to log this
+				e.printStackTrace();
+			}
+
+			slot.exception = null;
+			slot.sequence = position + this.mask + 1;
+			drained++;
+		}
+
+		return drained;
+	}
+	private boolean isEmpty() {
+		long position = this.dequeuePosition.get();
+		return this.slots[(int)position & this.mask].sequence != position + 1;
+	}
+
+	/**
+	 * This stops accepting new records, lets the writer thread drain everything
+	 * that is left and waits until it is done. It is called by
+	 * {@linkplain FileLogger#endLog()}.
+	 * */
+	public void close() {
+		if (!this.running) {
+			return;
+		}
+		this.running = false;
+		LockSupport.unpark(this.writerThread);
+
+		try {
+			this.writerThread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
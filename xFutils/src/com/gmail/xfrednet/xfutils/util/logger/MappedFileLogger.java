@@ -0,0 +1,320 @@
+package com.gmail.xfrednet.xfutils.util.logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.RandomAccessFile;
+import java.io.StringWriter;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import com.gmail.xfrednet.xfutils.util.Logger;
+
+/**
+ * This logger appends the log lines to a memory mapped segment file. A line
+ * is just copied into the mapped memory, the operating system writes it to
+ * the disk in the background. This saves the system call that the
+ * {@linkplain FileLogger} makes for every flushed buffer and makes this
+ * logger a good fit for long debug runs with a lot of output.
+ *
+ * <p>A new segment file is mapped when the current one is full. The
+ * {@linkplain ForcePolicy} defines when the mapped memory is forced onto the
+ * disk. Lines that aren't forced yet are still written by the operating
+ * system if the application crashes, they are only lost if the whole
+ * system goes down.</p>
+ *
+ * <p>A segment that can't be mapped is written with plain writes, this is
+ * as slow as the {@linkplain FileLogger}. The next segment is mapped again.</p>
+ * */
+public class MappedFileLogger extends Logger {
+
+	/**
+	 * This defines when the mapped segment is forced onto the disk.
+	 * */
+	public enum ForcePolicy {
+		/**
+		 * The operating system decides when the data is written.
+		 * */
+		NEVER,
+		/**
+		 * The segment is forced in a fixed interval by a background thread.
+		 * */
+		PERIODIC,
+		/**
+		 * The segment is forced after every error.
+		 * */
+		ON_ERROR
+	}
+
+	public static final int DEFAULT_SEGMENT_BYTES = 8 * 1024 * 1024;
+	public static final long DEFAULT_FORCE_INTERVAL_MILLIS = 1000;
+
+	private static final String SEGMENT_FILE_NAME = "../log/mapped_%s_%04d.log";
+
+	private final int segmentBytes;
+	private final ForcePolicy forcePolicy;
+	private final String segmentTimestamp;
+	private int segmentIndex = 0;
+
+	private File segmentFile = null;
+	private FileChannel segmentChannel = null;
+	/**
+	 * The mapped segment, it's changed while holding the lock of this logger.
+	 * It's volatile for {@linkplain #forceSegment()} that doesn't take that lock.
+	 * */
+	private volatile MappedByteBuffer segment = null;
+	/**
+	 * This is held while a segment is forced or released. A segment must not
+	 * be released while the force thread writes it.
+	 * */
+	private final Object forceLock = new Object();
+
+	private ScheduledExecutorService forceExecutor = null;
+
+	/**
+	 * This creates the logger and maps the first segment.
+	 *
+	 * @param enableDebugLog This defines if debug messages should be logged.
+	 * @param segmentBytes The size of one segment file in bytes.
+	 * @param forcePolicy The {@linkplain ForcePolicy} of this logger.
+	 * @param forceIntervalMillis The interval of the {@linkplain ForcePolicy#PERIODIC} policy.
+	 * */
+	public MappedFileLogger(boolean enableDebugLog, int segmentBytes, ForcePolicy forcePolicy, long forceIntervalMillis) {
+		super(enableDebugLog);
+
+		this.segmentBytes = segmentBytes;
+		this.forcePolicy = forcePolicy;
+		this.segmentTimestamp = new SimpleDateFormat("yyyy.MM.dd.HH.mm.ss").format(new Date());
+
+		mapNextSegment(0);
+
+		if (forcePolicy == ForcePolicy.PERIODIC) {
+			this.forceExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+				Thread thread = new Thread(runnable, "xFutils-MappedFileLogger");
+				thread.setDaemon(true);
+				return thread;
+			});
+			this.forceExecutor.scheduleAtFixedRate(
+					this::forceSegment,
+					forceIntervalMillis,
+					forceIntervalMillis,
+					TimeUnit.MILLISECONDS);
+		}
+	}
+	public MappedFileLogger(boolean enableDebugLog) {
+		this(enableDebugLog, DEFAULT_SEGMENT_BYTES, ForcePolicy.PERIODIC, DEFAULT_FORCE_INTERVAL_MILLIS);
+	}
+
+	/**
+	 * This closes the current segment and maps a new one. The segment will be
+	 * bigger than the default size if a single record doesn't fit. The file
+	 * is written directly if it can't be mapped.
+	 *
+	 * @param minimumBytes The amount of bytes that have to fit into the new segment.
+	 * */
+	private void mapNextSegment(int minimumBytes) {
+		closeSegment();
+
+		this.segmentFile = new File(String.format(SEGMENT_FILE_NAME, this.segmentTimestamp, this.segmentIndex));
+		this.segmentIndex++;
+		this.segmentFile.getParentFile().mkdirs();
+
+		try {
+			RandomAccessFile file = new RandomAccessFile(this.segmentFile, "rw");
+			this.segmentChannel = file.getChannel();
+		} catch (IOException e) {
+			// There is no other logger, this is the logger
+			e.printStackTrace();
+			System.err.println("MappedFileLogger.mapNextSegment: Unable to open the segment file, the log is lost: " + this.segmentFile);
+			return;
+		}
+
+		try {
+			this.segment = this.segmentChannel.map(
+					FileChannel.MapMode.READ_WRITE,
+					0,
+					Math.max(this.segmentBytes, minimumBytes));
+		} catch (IOException e) {
+			// The address space or the disk can be full, the lines are still written
+			e.printStackTrace();
+			System.err.println("MappedFileLogger.mapNextSegment: Unable to map the segment, it's written directly: " + this.segmentFile);
+			this.segment = null;
+		}
+	}
+	/**
+	 * This forces the written part of the segment onto the disk and cuts the
+	 * file to that size. Windows doesn't allow to cut a file while it's
+	 * mapped, the mapping is therefore released first. The rest of the file
+	 * is just filled with zeros if that fails.
+	 * */
+	private void closeSegment() {
+		if (this.segmentChannel == null) {
+			return;
+		}
+
+		MappedByteBuffer segment = this.segment;
+		if (segment != null) {
+			// The buffer can't be used after it was released
+			this.segment = null;
+			int length = segment.position();
+
+			boolean unmapped;
+			synchronized (this.forceLock) {
+				segment.force();
+				unmapped = Unmap(segment);
+			}
+			try {
+				this.segmentChannel.truncate(length);
+			} catch (IOException e) {
+				if (unmapped) {
+					e.printStackTrace();
+				}
+			}
+		}
+
+		try {
+			this.segmentChannel.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+
+		this.segmentChannel = null;
+	}
+	/**
+	 * This releases the mapping right away instead of waiting for the garbage
+	 * collector. The JDK has no public API for this, the cleaner of the buffer
+	 * is called by reflection.
+	 *
+	 * @return <tt>true</tt> if the mapping was released.
+	 * */
+	private static boolean Unmap(MappedByteBuffer buffer) {
+		try {
+			// Java 9 and newer
+			Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+			Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+			Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+			theUnsafe.setAccessible(true);
+			invokeCleaner.invoke(theUnsafe.get(null), buffer);
+			return true;
+		} catch (NoSuchMethodException e) {
+			// Java 8
+			try {
+				Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+				cleanerMethod.setAccessible(true);
+				Object cleaner = cleanerMethod.invoke(buffer);
+				cleaner.getClass().getMethod("clean").invoke(cleaner);
+				return true;
+			} catch (ReflectiveOperationException | RuntimeException e8) {
+				return false;
+			}
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			return false;
+		}
+	}
+	/**
+	 * This forces the current segment without the lock of the logger, the
+	 * logging threads don't wait for the disk.
+	 * */
+	private void forceSegment() {
+		MappedByteBuffer segment = this.segment;
+		if (segment == null) {
+			return;
+		}
+
+		synchronized (this.forceLock) {
+			// closeSegment() removes the segment before it is released
+			if (this.segment == segment) {
+				segment.force();
+			}
+		}
+	}
+
+	@Override
+	public synchronized boolean endLog() {
+		if (this.forceExecutor != null) {
+			this.forceExecutor.shutdown();
+		}
+
+		closeSegment();
+		return true;
+	}
+
+	/**
+	 * This encodes the line with the buffers of the logging thread and copies
+	 * the bytes into the mapped segment.
+	 * */
+	@Override
+	protected void logLine(StringBuilder line, Exception e, int logLevel) {
+		ByteBuffer bytes = EncodeLine(line);
+
+		synchronized (this) {
+			appendBytes(bytes);
+
+			if (e != null) {
+				StringWriter stackTrace = new StringWriter();
+				e.printStackTrace(new PrintWriter(stackTrace));
+				appendBytes(ByteBuffer.wrap(stackTrace.toString().getBytes(StandardCharsets.UTF_8)));
+			}
+
+			if (logLevel == LOG_LEVEL_ERROR && this.forcePolicy == ForcePolicy.ON_ERROR && this.segment != null) {
+				this.segment.force();
+			}
+		}
+	}
+	private void appendBytes(ByteBuffer bytes) {
+		if (this.segment == null) {
+			writeDirect(bytes);
+			return;
+		}
+
+		if (this.segment.remaining() < bytes.remaining()) {
+			mapNextSegment(bytes.remaining());
+			if (this.segment == null) {
+				writeDirect(bytes);
+				return;
+			}
+		}
+
+		this.segment.put(bytes);
+	}
+	/**
+	 * This writes the bytes to the segment file that couldn't be mapped. The
+	 * next segment is mapped again when the file is full.
+	 * */
+	private void writeDirect(ByteBuffer bytes) {
+		if (this.segmentChannel == null) {
+			return;
+		}
+
+		try {
+			while (bytes.hasRemaining()) {
+				this.segmentChannel.write(bytes);
+			}
+
+			if (this.segmentChannel.position() >= this.segmentBytes) {
+				mapNextSegment(0);
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	@Override
+	protected void logMessage(String message, int logLevel) {
+		logLine(new StringBuilder(message), null, logLevel);
+	}
+
+	@Override
+	protected void logMessage(String message, Exception e, int logLevel) {
+		logLine(new StringBuilder(message), e, logLevel);
+	}
+}
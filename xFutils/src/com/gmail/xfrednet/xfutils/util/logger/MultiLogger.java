@@ -0,0 +1,133 @@
+package com.gmail.xfrednet.xfutils.util.logger;
+
+import java.util.Arrays;
+
+import com.gmail.xfrednet.xfutils.util.Logger;
+
+/**
+ * This logger passes every line on to several other loggers, the sinks.
+ * This makes it possible to write the log to the console and into a file
+ * at the same time.
+ *
+ * <p>Every sink has its own {@linkplain LogRingBuffer} and writer thread.
+ * The logging thread only copies the line into the buffers, it never waits
+ * on a sink. A slow sink (like a file on a busy disk) therefore only fills
+ * up its own buffer and doesn't slow down the other sinks. Every sink also
+ * has its own minimum log level.</p>
+ * */
+public class MultiLogger extends Logger {
+
+	/**
+	 * A sink with its buffer. The buffer calls the drain methods from the
+	 * writer thread of this sink, the line builder is only used by that thread.
+	 * */
+	private static final class Sink implements LogRingBuffer.Drain {
+
+		private final Logger logger;
+		private final int minLogLevel;
+		private final LogRingBuffer ringBuffer;
+		private final StringBuilder line = new StringBuilder();
+
+		Sink(Logger logger, int minLogLevel, LogRingBuffer.OverflowPolicy overflowPolicy, int bufferCapacity) {
+			this.logger = logger;
+			this.minLogLevel = minLogLevel;
+			this.ringBuffer = new LogRingBuffer(
+					"xFutils-MultiLogger-" + logger.getClass().getSimpleName(),
+					bufferCapacity,
+					overflowPolicy,
+					this);
+		}
+
+		@Override
+		public void drainRecord(char[] line, int length, Exception e, int logLevel) {
+			this.line.setLength(0);
+			this.line.append(line, 0, length);
+			ForwardLine(this.logger, this.line, e, logLevel);
+		}
+		@Override
+		public void endBatch(long droppedRecords) {
+			if (droppedRecords != 0) {
+				this.logger.logAlert("MultiLogger: {} messages were dropped because the log buffer was full.", droppedRecords);
+			}
+
+			this.logger.flush();
+		}
+	}
+
+	/**
+	 * The sinks are replaced as a whole when one is added, the logging
+	 * threads can read the array without a lock.
+	 * */
+	private volatile Sink[] sinks = new Sink[0];
+
+	public MultiLogger(boolean enableDebugLog) {
+		super(enableDebugLog);
+	}
+
+	/**
+	 * This adds a sink that receives every line that is logged by this logger.
+	 *
+	 * @param logger The logger that writes the lines of this sink.
+	 * */
+	public void addSink(Logger logger) {
+		addSink(logger, LOG_LEVEL_DEBUG);
+	}
+	/**
+	 * This adds a sink with the {@linkplain LogRingBuffer.OverflowPolicy#DROP_OLDEST}
+	 * policy and the default buffer capacity. The logging thread never waits
+	 * on a sink with that policy, a sink that can't keep up loses its oldest lines.
+	 *
+	 * @param logger The logger that writes the lines of this sink.
+	 * @param minLogLevel The lowest level that is passed to this sink.
+	 * */
+	public void addSink(Logger logger, int minLogLevel) {
+		addSink(logger, minLogLevel, LogRingBuffer.OverflowPolicy.DROP_OLDEST, LogRingBuffer.DEFAULT_CAPACITY);
+	}
+	/**
+	 * This adds a sink with its own buffer and writer thread.
+	 *
+	 * @param logger The logger that writes the lines of this sink. The level of
+	 *               this logger is ignored, only minLogLevel is checked.
+	 * @param minLogLevel The lowest level that is passed to this sink.
+	 * @param overflowPolicy The {@linkplain LogRingBuffer.OverflowPolicy} of the sink buffer.
+	 * @param bufferCapacity The amount of lines that can be buffered for this sink.
+	 * */
+	public synchronized void addSink(Logger logger, int minLogLevel, LogRingBuffer.OverflowPolicy overflowPolicy, int bufferCapacity) {
+		Sink[] sinks = Arrays.copyOf(this.sinks, this.sinks.length + 1);
+		sinks[sinks.length - 1] = new Sink(logger, minLogLevel, overflowPolicy, bufferCapacity);
+		this.sinks = sinks;
+	}
+
+	/**
+	 * This drains the buffers and ends the log of every sink.
+	 * */
+	@Override
+	public synchronized boolean endLog() {
+		boolean result = true;
+		for (Sink sink : this.sinks) {
+			sink.ringBuffer.close();
+			result &= sink.logger.endLog();
+		}
+
+		return result;
+	}
+
+	@Override
+	protected void logLine(StringBuilder line, Exception e, int logLevel) {
+		for (Sink sink : this.sinks) {
+			if (logLevel >= sink.minLogLevel) {
+				sink.ringBuffer.publish(line, e, logLevel);
+			}
+		}
+	}
+
+	@Override
+	protected void logMessage(String message, int logLevel) {
+		logLine(new StringBuilder(message), null, logLevel);
+	}
+
+	@Override
+	protected void logMessage(String message, Exception e, int logLevel) {
+		logLine(new StringBuilder(message), e, logLevel);
+	}
+}
@@ -0,0 +1,190 @@
+package com.gmail.xfrednet.xfutils.util.logger;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * This defines when the {@linkplain FileLogger} switches to a new log file
+ * and what happens with the old ones. A file is rolled when it reaches the
+ * size limit or when the time interval has passed, whatever comes first.
+ *
+ * <p>Rolled files are compressed to <tt>.gz</tt> files on a background thread.
+ * The retention limits are applied after every roll, the oldest files are
+ * deleted first. A limit of 0 disables that check.</p>
+ * */
+public class RollingPolicy {
+
+	/**
+	 * This is the policy that is used by the <tt>-rolllog</tt> argument.
+	 * 10MB or one day per file, at most 30 files and 200MB in total.
+	 * */
+	public static final RollingPolicy DEFAULT = new RollingPolicy(
+			10L * 1024 * 1024,
+			TimeUnit.DAYS.toMillis(1),
+			30,
+			200L * 1024 * 1024,
+			true);
+
+	static final String LOG_FILE_PREFIX     = "log_";
+	static final String LOG_FILE_SUFFIX     = ".log";
+	static final String COMPRESSED_SUFFIX   = ".gz";
+	private static final String TEMP_SUFFIX = ".tmp";
+
+	private static final int COPY_BUFFER_SIZE = 8 * 1024;
+	private static final long TERMINATION_TIMEOUT_SECONDS = 10;
+
+	private final long maxFileBytes;
+	private final long rollIntervalMillis;
+	private final int maxFileCount;
+	private final long maxTotalBytes;
+	private final boolean compress;
+
+	/**
+	 * This creates a new policy.
+	 *
+	 * @param maxFileBytes The size in bytes after which a file is rolled, 0 disables this.
+	 * @param rollIntervalMillis The time after which a file is rolled, 0 disables this.
+	 * @param maxFileCount The maximum amount of old log files that are kept, 0 disables this.
+	 * @param maxTotalBytes The maximum size of all old log files together, 0 disables this.
+	 * @param compress Should rolled files be compressed with gzip?
+	 * */
+	public RollingPolicy(long maxFileBytes, long rollIntervalMillis, int maxFileCount, long maxTotalBytes, boolean compress) {
+		this.maxFileBytes = maxFileBytes;
+		this.rollIntervalMillis = rollIntervalMillis;
+		this.maxFileCount = maxFileCount;
+		this.maxTotalBytes = maxTotalBytes;
+		this.compress = compress;
+	}
+
+	/**
+	 * This tests if the current file should be rolled.
+	 *
+	 * @param fileBytes The amount of bytes that were written to the current file.
+	 * @param fileStartMillis The time when the current file was opened.
+	 * @param nowMillis The current time.
+	 * */
+	boolean shouldRoll(long fileBytes, long fileStartMillis, long nowMillis) {
+		if (this.maxFileBytes > 0 && fileBytes >= this.maxFileBytes) {
+			return true;
+		}
+
+		return this.rollIntervalMillis > 0 && nowMillis - fileStartMillis >= this.rollIntervalMillis;
+	}
+
+	/**
+	 * This creates the executor that compresses and deletes the rolled
+	 * files. It only has one daemon thread so the files are handled in order.
+	 * */
+	static ExecutorService CreateExecutor() {
+		return Executors.newSingleThreadExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "xFutils-LogRoller");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+	/**
+	 * This waits for the last compressions to finish. The wait is bounded, a
+	 * file that isn't compressed in time just stays a normal log file.
+	 * */
+	static void ShutdownExecutor(ExecutorService executor) {
+		executor.shutdown();
+		try {
+			executor.awaitTermination(TERMINATION_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * This is called on the background thread after a file was rolled. It
+	 * compresses the rolled file and applies the retention limits.
+	 *
+	 * @param rolledFile The file that was closed.
+	 * @param currentFile The file that is used right now, it is never deleted.
+	 * */
+	void onRolled(File rolledFile, File currentFile) {
+		if (this.compress) {
+			CompressFile(rolledFile);
+		}
+
+		applyRetention(rolledFile.getParentFile(), currentFile);
+	}
+
+	/**
+	 * This compresses the file into a <tt>.gz</tt> file next to it and deletes
+	 * the original. The data is streamed through a small buffer, the file is
+	 * never loaded as a whole. The compressed file is written under a temporary
+	 * name first, so there is never a half written <tt>.gz</tt> file.
+	 * */
+	private static void CompressFile(File file) {
+		File tempFile = new File(file.getPath() + COMPRESSED_SUFFIX + TEMP_SUFFIX);
+		File compressedFile = new File(file.getPath() + COMPRESSED_SUFFIX);
+
+		byte[] buffer = new byte[COPY_BUFFER_SIZE];
+		try (InputStream input = new FileInputStream(file);
+				OutputStream output = new GZIPOutputStream(new FileOutputStream(tempFile), COPY_BUFFER_SIZE)) {
+			int read;
+			while ((read = input.read(buffer)) != -1) {
+				output.write(buffer, 0, read);
+			}
+		} catch (IOException e) {
+			// There is no logger that could be used here, the FileLogger is the logger
+			e.printStackTrace();
+			tempFile.delete();
+			return;
+		}
+
+		if (tempFile.renameTo(compressedFile)) {
+			file.delete();
+		} else {
+			tempFile.delete();
+		}
+	}
+
+	/**
+	 * This deletes the oldest log files in the directory until the count and
+	 * size limits are met. The file names start with the timestamp so sorting
+	 * them by name sorts them by age.
+	 * */
+	private void applyRetention(File logDir, File currentFile) {
+		if (this.maxFileCount <= 0 && this.maxTotalBytes <= 0) {
+			return;
+		}
+
+		File[] logFiles = logDir.listFiles(file -> IsLogFile(file) && !file.equals(currentFile));
+		if (logFiles == null) {
+			return;
+		}
+		Arrays.sort(logFiles, (a, b) -> b.getName().compareTo(a.getName())); // newest first
+
+		int keptFiles = 0;
+		long keptBytes = 0;
+		for (File logFile : logFiles) {
+			long fileBytes = logFile.length();
+			boolean keep = (this.maxFileCount <= 0 || keptFiles < this.maxFileCount) &&
+					(this.maxTotalBytes <= 0 || keptBytes + fileBytes <= this.maxTotalBytes);
+
+			if (keep) {
+				keptFiles++;
+				keptBytes += fileBytes;
+			} else {
+				logFile.delete();
+			}
+		}
+	}
+	private static boolean IsLogFile(File file) {
+		String name = file.getName();
+		return file.isFile() &&
+				name.startsWith(LOG_FILE_PREFIX) &&
+				(name.endsWith(LOG_FILE_SUFFIX) || name.endsWith(LOG_FILE_SUFFIX + COMPRESSED_SUFFIX));
+	}
+}
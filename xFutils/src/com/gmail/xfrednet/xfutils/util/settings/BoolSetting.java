@@ -0,0 +1,48 @@
+package com.gmail.xfrednet.xfutils.util.settings;
+
+public final class BoolSetting extends Setting {
+
+	private final boolean defaultValue;
+	private volatile boolean value;
+
+	BoolSetting(String key, boolean defaultValue) {
+		super(key);
+		this.defaultValue = defaultValue;
+		this.value = defaultValue;
+	}
+
+	public boolean get() {
+		return this.value;
+	}
+	public void set(boolean value) {
+		if (this.value != value) {
+			this.value = value;
+			changed();
+		}
+	}
+	public boolean getDefault() {
+		return this.defaultValue;
+	}
+
+	@Override
+	boolean load(String value) {
+		switch (value.trim()) {
+		case "true":
+			this.value = true;
+			return true;
+		case "false":
+			this.value = false;
+			return true;
+		default:
+			return false;
+		}
+	}
+	@Override
+	String save() {
+		return (this.value) ? "true" : "false";
+	}
+	@Override
+	void reset() {
+		this.value = this.defaultValue;
+	}
+}
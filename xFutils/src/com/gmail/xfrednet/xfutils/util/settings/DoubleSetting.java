@@ -0,0 +1,75 @@
+package com.gmail.xfrednet.xfutils.util.settings;
+
+public final class DoubleSetting extends Setting {
+
+	private final double defaultValue;
+	private final double minValue;
+	private final double maxValue;
+	private volatile double value;
+
+	DoubleSetting(String key, double defaultValue, double minValue, double maxValue) {
+		super(key);
+		this.defaultValue = defaultValue;
+		this.minValue = minValue;
+		this.maxValue = maxValue;
+		this.value = defaultValue;
+	}
+
+	public double get() {
+		return this.value;
+	}
+	/**
+	 * This sets the value if it is within the range of this setting.
+	 *
+	 * @return <tt>false</tt> if the value is out of range or NaN and was not set.
+	 * */
+	public boolean set(double value) {
+		if (!isValid(value)) {
+			return false;
+		}
+
+		if (Double.compare(this.value, value) != 0) {
+			this.value = value;
+			changed();
+		}
+		return true;
+	}
+	public double getDefault() {
+		return this.defaultValue;
+	}
+	public double getMinValue() {
+		return this.minValue;
+	}
+	public double getMaxValue() {
+		return this.maxValue;
+	}
+
+	private boolean isValid(double value) {
+		// This is also false for NaN
+		return value >= this.minValue && value <= this.maxValue;
+	}
+
+	@Override
+	boolean load(String value) {
+		double parsed;
+		try {
+			parsed = Double.parseDouble(value.trim());
+		} catch (NumberFormatException e) {
+			return false;
+		}
+
+		if (!isValid(parsed)) {
+			return false;
+		}
+		this.value = parsed;
+		return true;
+	}
+	@Override
+	String save() {
+		return Double.toString(this.value);
+	}
+	@Override
+	void reset() {
+		this.value = this.defaultValue;
+	}
+}
@@ -0,0 +1,53 @@
+package com.gmail.xfrednet.xfutils.util.settings;
+
+public final class EnumSetting<E extends Enum<E>> extends Setting {
+
+	private final Class<E> enumClass;
+	private final E defaultValue;
+	private volatile E value;
+
+	EnumSetting(String key, Class<E> enumClass, E defaultValue) {
+		super(key);
+		this.enumClass = enumClass;
+		this.defaultValue = defaultValue;
+		this.value = defaultValue;
+	}
+
+	public E get() {
+		return this.value;
+	}
+	public void set(E value) {
+		if (value == null) {
+			throw new IllegalArgumentException("EnumSetting.set: The value of " + getKey() + " can't be null");
+		}
+
+		if (this.value != value) {
+			this.value = value;
+			changed();
+		}
+	}
+	public E getDefault() {
+		return this.defaultValue;
+	}
+	public Class<E> getEnumClass() {
+		return this.enumClass;
+	}
+
+	@Override
+	boolean load(String value) {
+		try {
+			this.value = Enum.valueOf(this.enumClass, value.trim());
+			return true;
+		} catch (IllegalArgumentException e) {
+			return false;
+		}
+	}
+	@Override
+	String save() {
+		return this.value.name();
+	}
+	@Override
+	void reset() {
+		this.value = this.defaultValue;
+	}
+}
@@ -0,0 +1,70 @@
+package com.gmail.xfrednet.xfutils.util.settings;
+
+public final class IntSetting extends Setting {
+
+	private final int defaultValue;
+	private final int minValue;
+	private final int maxValue;
+	private volatile int value;
+
+	IntSetting(String key, int defaultValue, int minValue, int maxValue) {
+		super(key);
+		this.defaultValue = defaultValue;
+		this.minValue = minValue;
+		this.maxValue = maxValue;
+		this.value = defaultValue;
+	}
+
+	public int get() {
+		return this.value;
+	}
+	/**
+	 * This sets the value if it is within the range of this setting.
+	 *
+	 * @return <tt>false</tt> if the value is out of range and was not set.
+	 * */
+	public boolean set(int value) {
+		if (value < this.minValue || value > this.maxValue) {
+			return false;
+		}
+
+		if (this.value != value) {
+			this.value = value;
+			changed();
+		}
+		return true;
+	}
+	public int getDefault() {
+		return this.defaultValue;
+	}
+	public int getMinValue() {
+		return this.minValue;
+	}
+	public int getMaxValue() {
+		return this.maxValue;
+	}
+
+	@Override
+	boolean load(String value) {
+		int parsed;
+		try {
+			parsed = Integer.parseInt(value.trim());
+		} catch (NumberFormatException e) {
+			return false;
+		}
+
+		if (parsed < this.minValue || parsed > this.maxValue) {
+			return false;
+		}
+		this.value = parsed;
+		return true;
+	}
+	@Override
+	String save() {
+		return Integer.toString(this.value);
+	}
+	@Override
+	void reset() {
+		this.value = this.defaultValue;
+	}
+}
@@ -0,0 +1,70 @@
+package com.gmail.xfrednet.xfutils.util.settings;
+
+public final class LongSetting extends Setting {
+
+	private final long defaultValue;
+	private final long minValue;
+	private final long maxValue;
+	private volatile long value;
+
+	LongSetting(String key, long defaultValue, long minValue, long maxValue) {
+		super(key);
+		this.defaultValue = defaultValue;
+		this.minValue = minValue;
+		this.maxValue = maxValue;
+		this.value = defaultValue;
+	}
+
+	public long get() {
+		return this.value;
+	}
+	/**
+	 * This sets the value if it is within the range of this setting.
+	 *
+	 * @return <tt>false</tt> if the value is out of range and was not set.
+	 * */
+	public boolean set(long value) {
+		if (value < this.minValue || value > this.maxValue) {
+			return false;
+		}
+
+		if (this.value != value) {
+			this.value = value;
+			changed();
+		}
+		return true;
+	}
+	public long getDefault() {
+		return this.defaultValue;
+	}
+	public long getMinValue() {
+		return this.minValue;
+	}
+	public long getMaxValue() {
+		return this.maxValue;
+	}
+
+	@Override
+	boolean load(String value) {
+		long parsed;
+		try {
+			parsed = Long.parseLong(value.trim());
+		} catch (NumberFormatException e) {
+			return false;
+		}
+
+		if (parsed < this.minValue || parsed > this.maxValue) {
+			return false;
+		}
+		this.value = parsed;
+		return true;
+	}
+	@Override
+	String save() {
+		return Long.toString(this.value);
+	}
+	@Override
+	void reset() {
+		this.value = this.defaultValue;
+	}
+}
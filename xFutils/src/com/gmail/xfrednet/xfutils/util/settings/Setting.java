@@ -0,0 +1,57 @@
+package com.gmail.xfrednet.xfutils.util.settings;
+
+/**
+ * This is the base of all typed settings. Every setting stores its value in
+ * a volatile field of its own type, reading a value is therefore a single
+ * field read without a lock or any parsing. The value is only parsed when
+ * the settings file is loaded.
+ *
+ * <p>Settings are created and registered by a {@linkplain SettingsRegistry}.</p>
+ * */
+public abstract class Setting {
+
+	private final String key;
+	/**
+	 * The root registry that is told about changes. It is set when the
+	 * setting is registered.
+	 * */
+	SettingsRegistry registry = null;
+
+	Setting(String key) {
+		this.key = key;
+	}
+
+	/**
+	 * This returns the full key of the setting, including the namespace.
+	 * Example: "plugin.clipboard.historySize"
+	 * */
+	public String getKey() {
+		return this.key;
+	}
+
+	/**
+	 * This parses and validates the stored value.
+	 *
+	 * @return <tt>false</tt> if the value is invalid. The setting keeps its
+	 *         current value in that case.
+	 * */
+	abstract boolean load(String value);
+	/**
+	 * This returns the value in the format that is understood by {@linkplain #load(String)}.
+	 * */
+	abstract String save();
+	/**
+	 * This sets the value back to the default without telling the registry.
+	 * */
+	abstract void reset();
+
+	/**
+	 * This is called by the setters after the value was changed.
+	 * */
+	void changed() {
+		SettingsRegistry registry = this.registry;
+		if (registry != null) {
+			registry.settingChanged(this);
+		}
+	}
+}
@@ -0,0 +1,21 @@
+package com.gmail.xfrednet.xfutils.util.settings;
+
+import java.util.List;
+
+/**
+ * This is notified when settings were changed in the settings file while the
+ * application was running. It is registered with
+ * {@linkplain SettingsRegistry#addListener(SettingsListener, String...)}.
+ * */
+@FunctionalInterface
+public interface SettingsListener {
+	/**
+	 * This is called once per reload with all changed settings this listener
+	 * is interested in. It is called on the watcher thread and never on the
+	 * EDT, GUI changes have to be passed on with
+	 * {@linkplain javax.swing.SwingUtilities#invokeLater(Runnable)}.
+	 *
+	 * @param changedSettings The changed settings, they already hold the new values.
+	 * */
+	void settingsChanged(List<Setting> changedSettings);
+}
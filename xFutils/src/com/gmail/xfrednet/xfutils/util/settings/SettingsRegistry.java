@@ -0,0 +1,287 @@
+package com.gmail.xfrednet.xfutils.util.settings;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+import com.gmail.xfrednet.xfutils.Main;
+
+/**
+ * The registry knows all typed {@linkplain Setting}s and their defaults. It
+ * parses the settings file into the settings and writes them back.
+ *
+ * <p>Every registry has a namespace that is added in front of the keys of
+ * its settings. The {@linkplain com.gmail.xfrednet.xfutils.plugin.PluginManager PluginManager}
+ * gives every plugin its own namespace, like "plugin.clipboard.". All
+ * namespaces share the settings of the root registry and are saved into the
+ * same file.</p>
+ *
+ * <p>Values in the file that belong to no registered setting are kept and
+ * written back. A plugin that registers its settings after the file was
+ * loaded still gets its values, and the settings of a disabled plugin are
+ * not lost.</p>
+ * */
+public class SettingsRegistry {
+
+	/**
+	 * A registered {@linkplain SettingsListener} and the keys it wants.
+	 * */
+	private static final class ListenerEntry {
+		final SettingsListener listener;
+		final String prefix;
+		/**
+		 * The full keys of the settings or <tt>null</tt> for every key that
+		 * starts with the prefix.
+		 * */
+		final Set<String> keys;
+
+		ListenerEntry(SettingsListener listener, String prefix, Set<String> keys) {
+			this.listener = listener;
+			this.prefix = prefix;
+			this.keys = keys;
+		}
+
+		boolean wants(Setting setting) {
+			return (this.keys != null) ? this.keys.contains(setting.getKey()) : setting.getKey().startsWith(this.prefix);
+		}
+	}
+
+	private final String prefix;
+	private final SettingsRegistry root;
+
+	// These are only used by the root, it is also the lock for them
+	private final Map<String, Setting> settings;
+	private final Map<String, String> unclaimedValues;
+	private volatile Consumer<Setting> changeHandler = null;
+	private final List<ListenerEntry> listeners;
+
+	public SettingsRegistry() {
+		this.prefix = "";
+		this.root = this;
+		this.settings = new LinkedHashMap<>();
+		this.unclaimedValues = new HashMap<>();
+		this.listeners = new CopyOnWriteArrayList<>();
+	}
+	private SettingsRegistry(SettingsRegistry root, String prefix) {
+		this.prefix = prefix;
+		this.root = root;
+		this.settings = null;
+		this.unclaimedValues = null;
+		this.listeners = null;
+	}
+
+	/**
+	 * This returns a registry that adds "[name]." in front of all keys. The
+	 * settings are stored in this registry.
+	 * */
+	public SettingsRegistry getNamespace(String name) {
+		return new SettingsRegistry(this.root, this.prefix + name + ".");
+	}
+	/**
+	 * This sets the handler that is called with the setting after it was
+	 * changed by one of its setters. Loading and resetting the settings
+	 * doesn't call it.
+	 * */
+	public void setChangeHandler(Consumer<Setting> changeHandler) {
+		this.root.changeHandler = changeHandler;
+	}
+
+	/**
+	 * This adds a listener that is notified when the given settings are changed
+	 * by a reload of the settings file. All changes of one reload are passed in
+	 * one call.
+	 *
+	 * @param listener The listener.
+	 * @param names The names of the settings in this namespace. The listener
+	 *              gets every setting of this namespace if no name is given.
+	 * */
+	public void addListener(SettingsListener listener, String... names) {
+		Set<String> keys = null;
+		if (names.length != 0) {
+			keys = new HashSet<>();
+			for (String name : names) {
+				keys.add(this.prefix + name);
+			}
+		}
+
+		this.root.listeners.add(new ListenerEntry(listener, this.prefix, keys));
+	}
+	public void removeListener(SettingsListener listener) {
+		this.root.listeners.removeIf(entry -> entry.listener == listener);
+	}
+
+	// ##########################################
+	// # Registration
+	// ##########################################
+	public BoolSetting addBool(String name, boolean defaultValue) {
+		return register(new BoolSetting(this.prefix + name, defaultValue));
+	}
+	public IntSetting addInt(String name, int defaultValue, int minValue, int maxValue) {
+		return register(new IntSetting(this.prefix + name, defaultValue, minValue, maxValue));
+	}
+	public LongSetting addLong(String name, long defaultValue, long minValue, long maxValue) {
+		return register(new LongSetting(this.prefix + name, defaultValue, minValue, maxValue));
+	}
+	public DoubleSetting addDouble(String name, double defaultValue, double minValue, double maxValue) {
+		return register(new DoubleSetting(this.prefix + name, defaultValue, minValue, maxValue));
+	}
+	public <E extends Enum<E>> EnumSetting<E> addEnum(String name, Class<E> enumClass, E defaultValue) {
+		return register(new EnumSetting<>(this.prefix + name, enumClass, defaultValue));
+	}
+	public StringSetting addString(String name, String defaultValue) {
+		return addString(name, defaultValue, null);
+	}
+	/**
+	 * @param validator This tests loaded and new values, <tt>null</tt> accepts every value.
+	 * */
+	public StringSetting addString(String name, String defaultValue, Predicate<String> validator) {
+		return register(new StringSetting(this.prefix + name, defaultValue, validator));
+	}
+
+	/**
+	 * This registers the setting. A value that was loaded before the setting
+	 * was registered is applied to it. Registering the same key twice returns
+	 * the setting of the first call, a plugin can therefore register its
+	 * settings in every <tt>init</tt> call.
+	 *
+	 * @throws IllegalArgumentException If the key is already used by a setting of another type.
+	 * */
+	@SuppressWarnings("unchecked")
+	private <T extends Setting> T register(T setting) {
+		SettingsRegistry root = this.root;
+		synchronized (root.settings) {
+			Setting existing = root.settings.get(setting.getKey());
+			if (existing != null) {
+				if (existing.getClass() != setting.getClass()) {
+					throw new IllegalArgumentException(
+							"SettingsRegistry.register: The key \"" + setting.getKey() + "\" is already used by another type");
+				}
+				return (T)existing;
+			}
+
+			String value = root.unclaimedValues.remove(setting.getKey());
+			if (value != null) {
+				LoadValue(setting, value);
+			}
+
+			setting.registry = root;
+			root.settings.put(setting.getKey(), setting);
+		}
+
+		return setting;
+	}
+
+	// ##########################################
+	// # Load, store and reset
+	// ##########################################
+	/**
+	 * This loads the values of all settings from the properties. Settings
+	 * without a valid value are set to their default. The other values are
+	 * kept for settings that are registered later.
+	 *
+	 * @return The settings whose value was changed by this call.
+	 * */
+	public List<Setting> load(Properties properties) {
+		List<Setting> changedSettings = new ArrayList<>();
+		SettingsRegistry root = this.root;
+		synchronized (root.settings) {
+			root.unclaimedValues.clear();
+			for (String key : properties.stringPropertyNames()) {
+				root.unclaimedValues.put(key, properties.getProperty(key));
+			}
+
+			for (Setting setting : root.settings.values()) {
+				String oldValue = setting.save();
+				String value = root.unclaimedValues.remove(setting.getKey());
+				if (value == null) {
+					Main.Logger.logInfo("SettingsRegistry.load: Unable to load the value of the key '{}'", setting.getKey());
+					setting.reset();
+				} else {
+					LoadValue(setting, value);
+				}
+
+				if (!oldValue.equals(setting.save())) {
+					changedSettings.add(setting);
+				}
+			}
+		}
+
+		return changedSettings;
+	}
+	/**
+	 * This passes the changed settings to the listeners that want them. Every
+	 * listener is called at most once.
+	 * */
+	public void notifyListeners(List<Setting> changedSettings) {
+		if (changedSettings.isEmpty()) {
+			return;
+		}
+
+		for (ListenerEntry entry : this.root.listeners) {
+			List<Setting> wanted = new ArrayList<>();
+			for (Setting setting : changedSettings) {
+				if (entry.wants(setting)) {
+					wanted.add(setting);
+				}
+			}
+			if (wanted.isEmpty()) {
+				continue;
+			}
+
+			try {
+				entry.listener.settingsChanged(wanted);
+			} catch (Exception e) {
+				Main.Logger.logAlert("SettingsRegistry.notifyListeners: A listener has thrown an exception", e);
+			}
+		}
+	}
+	private static void LoadValue(Setting setting, String value) {
+		if (!setting.load(value)) {
+			Main.Logger.logInfo(
+					"SettingsRegistry.load: The value '{}' is invalid for the key '{}', the default is used",
+					value, setting.getKey());
+			setting.reset();
+		}
+	}
+	/**
+	 * This writes all settings and the unclaimed values into the properties.
+	 * */
+	public void store(Properties properties) {
+		SettingsRegistry root = this.root;
+		synchronized (root.settings) {
+			for (Map.Entry<String, String> entry : root.unclaimedValues.entrySet()) {
+				properties.setProperty(entry.getKey(), entry.getValue());
+			}
+			for (Setting setting : root.settings.values()) {
+				properties.setProperty(setting.getKey(), setting.save());
+			}
+		}
+	}
+	/**
+	 * This sets all settings back to their defaults and drops the unclaimed values.
+	 * */
+	public void reset() {
+		SettingsRegistry root = this.root;
+		synchronized (root.settings) {
+			root.unclaimedValues.clear();
+			for (Setting setting : root.settings.values()) {
+				setting.reset();
+			}
+		}
+	}
+
+	void settingChanged(Setting setting) {
+		Consumer<Setting> changeHandler = this.root.changeHandler;
+		if (changeHandler != null) {
+			changeHandler.accept(setting);
+		}
+	}
+}
@@ -0,0 +1,65 @@
+package com.gmail.xfrednet.xfutils.util.settings;
+
+import java.util.function.Predicate;
+
+public final class StringSetting extends Setting {
+
+	private final String defaultValue;
+	/**
+	 * This tests new values, it is <tt>null</tt> if every value is valid.
+	 * */
+	private final Predicate<String> validator;
+	private volatile String value;
+
+	StringSetting(String key, String defaultValue, Predicate<String> validator) {
+		super(key);
+		this.defaultValue = defaultValue;
+		this.validator = validator;
+		this.value = defaultValue;
+	}
+
+	public String get() {
+		return this.value;
+	}
+	/**
+	 * This sets the value if the validator of this setting accepts it.
+	 *
+	 * @return <tt>false</tt> if the value is invalid and was not set.
+	 * */
+	public boolean set(String value) {
+		if (!isValid(value)) {
+			return false;
+		}
+
+		if (!value.equals(this.value)) {
+			this.value = value;
+			changed();
+		}
+		return true;
+	}
+	public String getDefault() {
+		return this.defaultValue;
+	}
+
+	private boolean isValid(String value) {
+		return value != null && (this.validator == null || this.validator.test(value));
+	}
+
+	@Override
+	boolean load(String value) {
+		if (!isValid(value)) {
+			return false;
+		}
+
+		this.value = value;
+		return true;
+	}
+	@Override
+	String save() {
+		return this.value;
+	}
+	@Override
+	void reset() {
+		this.value = this.defaultValue;
+	}
+}
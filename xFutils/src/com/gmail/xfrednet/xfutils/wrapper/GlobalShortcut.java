@@ -14,6 +14,12 @@ public abstract class GlobalShortcut {
 	// # Static #
 	/* ###################################################################################### */
 
+	/**
+	 * This is the name of the named {@linkplain com.gmail.xfrednet.xfutils.util.Logger Logger}
+	 * that is used by the global shortcut implementations.
+	 * */
+	protected static final String LOGGER_NAME = "shortcut";
+
 	/**
 	 * This class is a singleton class and this is the instance of that.
 	 * */
@@ -30,7 +36,7 @@ public abstract class GlobalShortcut {
 			if (JintellitypeShortcut.IsSupported()) {
 				instance = new JintellitypeShortcut();
 			} else {
-				Main.Logger.logError("GetInstance: xFutils has no global shortcuts library that can work in this environment!");
+				Main.Logger.getLogger(LOGGER_NAME).logError("GetInstance: xFutils has no global shortcuts library that can work in this environment!");
 				instance = new NoGlobalShortcut();
 			}
 		}
@@ -1,6 +1,7 @@
 package com.gmail.xfrednet.xfutils.wrapper.globalshortcut;
 
 import com.gmail.xfrednet.xfutils.Main;
+import com.gmail.xfrednet.xfutils.util.Logger;
 import com.gmail.xfrednet.xfutils.wrapper.GlobalShortcut;
 import com.gmail.xfrednet.xfutils.wrapper.IGlobalShortcutListener;
 import com.melloware.jintellitype.HotkeyListener;
@@ -13,8 +14,10 @@ public class JintellitypeShortcut extends GlobalShortcut implements HotkeyListen
 
 	private int identifierCounter = 0;
 	private ArrayList<IGlobalShortcutListener> listeners = new ArrayList<>();
+	private Logger logger;
 
 	public JintellitypeShortcut() {
+		this.logger = Main.Logger.getLogger(LOGGER_NAME);
 		JIntellitype.getInstance().addHotKeyListener(this);
 	}
 
@@ -39,10 +42,9 @@ public class JintellitypeShortcut extends GlobalShortcut implements HotkeyListen
 
 		JIntellitype.getInstance().registerHotKey(identifier, intellMask, key);
 
-		Main.Logger.logDebugMessage(
-			"GlobalShortcut.RegisterGlobalShortcut: Registered a new Shortcut: identifier: " + identifier +
-				", Mask: " + eventMask +
-				", Key " + key);
+		this.logger.logDebugMessage(
+			"GlobalShortcut.RegisterGlobalShortcut: Registered a new Shortcut: identifier: {}, Mask: {}, Key {}",
+				identifier, eventMask, key);
 
 		return identifier;
 	}
@@ -54,9 +56,9 @@ public class JintellitypeShortcut extends GlobalShortcut implements HotkeyListen
 			this.listeners.set(identifier, null);
 		}
 
-		Main.Logger.logDebugMessage(
-			"GlobalShortcut.UnregisterGlobalShortcut: Removed the Shortcut with the Identifier: "
-			+ identifier);
+		this.logger.logDebugMessage(
+			"GlobalShortcut.UnregisterGlobalShortcut: Removed the Shortcut with the Identifier: {}",
+			identifier);
 	}
 
 	@Override
@@ -0,0 +1,90 @@
+package com.gmail.xfrednet.xfutils.tools;
+
+import java.util.function.LongSupplier;
+
+/**
+ * This holds the parts that the measurement tools in this source root share:
+ * the count arguments, the warmed up rounds and the report lines. The tools
+ * are not part of the application, this source root isn't packed.
+ * */
+public final class ToolHarness {
+
+	/**
+	 * One round of a measurement.
+	 * */
+	public interface Round {
+		void run(int round) throws Exception;
+	}
+
+	private ToolHarness() {}
+
+	/**
+	 * This parses the optional count arguments of a tool. The usage is printed
+	 * if an argument isn't a positive number.
+	 *
+	 * @param names The names of the arguments, like "line count".
+	 * @param descriptions One line per argument for the usage.
+	 * @param defaults The values of the arguments that weren't given.
+	 *
+	 * @return The counts or <tt>null</tt> if the usage was printed.
+	 * */
+	public static int[] ParseCounts(String[] args, String[] names, String[] descriptions, int[] defaults) {
+		int[] counts = defaults.clone();
+		try {
+			for (int argIndex = 0; argIndex < args.length && argIndex < counts.length; argIndex++) {
+				counts[argIndex] = Integer.parseInt(args[argIndex]);
+				if (counts[argIndex] <= 0) {
+					throw new NumberFormatException(args[argIndex]);
+				}
+			}
+			return counts;
+		} catch (NumberFormatException e) {
+			StringBuilder usage = new StringBuilder("Arguments:");
+			for (String name : names) {
+				usage.append(" [<").append(name).append(">]");
+			}
+			System.out.println(usage);
+			System.out.println();
+			for (int argIndex = 0; argIndex < names.length; argIndex++) {
+				System.out.println("    " + descriptions[argIndex] + " Default: " + defaults[argIndex]);
+			}
+			return null;
+		}
+	}
+
+	/**
+	 * This runs the warm up rounds and then the measured rounds. The meter is
+	 * read before and after every measured round.
+	 *
+	 * @param meter Something that only grows, like {@linkplain System#nanoTime()}.
+	 *
+	 * @return The sum of the meter differences of the measured rounds.
+	 * */
+	public static long Measure(int warmUpRounds, int rounds, LongSupplier meter, Round round) throws Exception {
+		for (int roundIndex = 0; roundIndex < warmUpRounds; roundIndex++) {
+			round.run(roundIndex);
+		}
+
+		long total = 0;
+		for (int roundIndex = 0; roundIndex < rounds; roundIndex++) {
+			long start = meter.getAsLong();
+			round.run(roundIndex);
+			total += meter.getAsLong() - start;
+		}
+		return total;
+	}
+
+	public static void Report(String toolName, String format, Object... args) {
+		System.out.println(toolName + ": " + String.format(format, args));
+	}
+	/**
+	 * This ends the tool with the exit code 1 if it failed. The JVM is ended
+	 * in both cases, Swing threads would keep it running otherwise.
+	 * */
+	public static void Exit(String toolName, boolean passed, String failure) {
+		if (!passed) {
+			System.err.println(toolName + ": " + failure);
+		}
+		System.exit(passed ? 0 : 1);
+	}
+}
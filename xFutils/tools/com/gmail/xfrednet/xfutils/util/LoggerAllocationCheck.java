@@ -0,0 +1,125 @@
+package com.gmail.xfrednet.xfutils.util;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+
+import com.gmail.xfrednet.xfutils.tools.ToolHarness;
+
+/**
+ * This checks that the formatting path of the {@linkplain Logger} doesn't
+ * allocate once it is warmed up. It measures the allocated bytes of the
+ * current thread around a lot of log calls:
+ *
+ * <pre>
+ * java com.gmail.xfrednet.xfutils.util.LoggerAllocationCheck [call count]
+ * </pre>
+ *
+ * <p>The lines are encoded with {@linkplain Logger#EncodeLine(StringBuilder)}
+ * and dropped, the check therefore only covers the formatting and not the
+ * file of a real logger. The rate limit is turned off, every info line is
+ * formatted as well. The {@linkplain Logger} creates a new timestamp once per
+ * second, a few bytes per second are expected. The tool exits with 1 if a
+ * case allocates more than that.</p>
+ *
+ * <p>This only works on a JVM that supports the allocation counter of
+ * {@linkplain com.sun.management.ThreadMXBean}, like HotSpot.</p>
+ * */
+public class LoggerAllocationCheck {
+
+	private static final String TOOL_NAME = "LoggerAllocationCheck";
+	private static final int DEFAULT_CALL_COUNT = 1000000;
+	private static final int WARM_UP_CALL_COUNT = 200000;
+	/**
+	 * This allows the timestamp and the odd allocation of the JVM itself.
+	 * */
+	private static final double MAX_BYTES_PER_CALL = 0.1;
+
+	/**
+	 * This formats and encodes the lines like a real logger, the bytes are
+	 * just counted. They are summed up so that the JIT can't drop the work.
+	 * */
+	private static class EncodingLogger extends Logger {
+		long byteCount = 0;
+
+		EncodingLogger() {
+			super(LOG_LEVEL_DEBUG);
+			getRateLimiter().setLimit(0, 0);
+		}
+
+		@Override
+		protected void logLine(StringBuilder line, Exception e, int logLevel) {
+			ByteBuffer bytes = EncodeLine(line);
+			this.byteCount += bytes.remaining();
+		}
+		@Override
+		protected void logMessage(String message, int logLevel) {
+			throw new IllegalStateException("LoggerAllocationCheck: The line was passed as a String");
+		}
+		@Override
+		protected void logMessage(String message, Exception e, int logLevel) {
+			throw new IllegalStateException("LoggerAllocationCheck: The line was passed as a String");
+		}
+	}
+
+	private interface Case {
+		void log(Logger logger, int index);
+	}
+
+	public static void main(String[] args) throws Exception {
+		int[] counts = ToolHarness.ParseCounts(args,
+				new String[] {"call count"},
+				new String[] {"Measures the allocated bytes of this many log calls per case."},
+				new int[] {DEFAULT_CALL_COUNT});
+		if (counts == null) {
+			return;
+		}
+
+		if (!(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean)
+				|| !((com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean()).isThreadAllocatedMemorySupported()) {
+			System.err.println("LoggerAllocationCheck: This JVM can't count the allocated bytes");
+			System.exit(2);
+			return;
+		}
+		com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+		threadBean.setThreadAllocatedMemoryEnabled(true);
+
+		// The strings are created up front, only the log calls are measured
+		String name = "xFutils";
+
+		boolean passed = true;
+		passed &= check(threadBean, counts[0], "logDebugMessage(String)",
+				(logger, i) -> logger.logDebugMessage("LoggerAllocationCheck: A constant message"));
+		passed &= check(threadBean, counts[0], "logDebugMessage(String, long)",
+				(logger, i) -> logger.logDebugMessage("LoggerAllocationCheck: Call {}", i));
+		passed &= check(threadBean, counts[0], "logDebugMessage(String, long, long)",
+				(logger, i) -> logger.logDebugMessage("LoggerAllocationCheck: Call {} of {}", i, -i * 31L));
+		passed &= check(threadBean, counts[0], "logDebugMessage(String, Object, long)",
+				(logger, i) -> logger.logDebugMessage("LoggerAllocationCheck: {} call {}", name, i));
+		passed &= check(threadBean, counts[0], "logInfo(String, long, long)",
+				(logger, i) -> logger.logInfo("LoggerAllocationCheck: Call {} of {}", i, Integer.MAX_VALUE));
+		passed &= check(threadBean, counts[0], "logInfo(String, Object)",
+				(logger, i) -> logger.logInfo("LoggerAllocationCheck: Hello {}", name));
+
+		ToolHarness.Exit(TOOL_NAME, passed, "The logger allocated on the formatting path");
+	}
+
+	/**
+	 * This warms the case up with its own logger and measures it afterwards.
+	 *
+	 * @return <tt>true</tt> if the case allocated less than {@linkplain #MAX_BYTES_PER_CALL}.
+	 * */
+	private static boolean check(com.sun.management.ThreadMXBean threadBean, int callCount, String caseName, Case logCase) throws Exception {
+		EncodingLogger logger = new EncodingLogger();
+		long threadId = Thread.currentThread().getId();
+
+		long allocatedBytes = ToolHarness.Measure(WARM_UP_CALL_COUNT, callCount,
+				() -> threadBean.getThreadAllocatedBytes(threadId),
+				index -> logCase.log(logger, index));
+
+		double bytesPerCall = (double)allocatedBytes / callCount;
+		boolean passed = bytesPerCall <= MAX_BYTES_PER_CALL;
+		ToolHarness.Report(TOOL_NAME, "%-40s %10d bytes, %.4f bytes per call, %d bytes encoded %s",
+				caseName, allocatedBytes, bytesPerCall, logger.byteCount, (passed) ? "" : "FAILED");
+		return passed;
+	}
+}
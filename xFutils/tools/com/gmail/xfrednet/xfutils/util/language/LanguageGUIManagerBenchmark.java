@@ -0,0 +1,151 @@
+package com.gmail.xfrednet.xfutils.util.language;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.swing.JMenu;
+import javax.swing.JMenuItem;
+import javax.swing.SwingUtilities;
+
+import com.gmail.xfrednet.xfutils.tools.ToolHarness;
+
+/**
+ * This measures the {@linkplain LanguageGUIManager} with a lot of registered
+ * items. It fills menus with items for the default keys and times the
+ * updates on the event dispatch thread:
+ *
+ * <pre>
+ * java com.gmail.xfrednet.xfutils.util.language.LanguageGUIManagerBenchmark [item count] [round count]
+ * </pre>
+ *
+ * <ul>
+ *     <li>An update without a language change, no item gets a new text.</li>
+ *     <li>A switch between English and German, most items get a new text.</li>
+ * </ul>
+ *
+ * <p>The menus are never shown, the revalidation is therefore cheap. Half
+ * of the menus are dropped at the end, the tool fails if their items are
+ * still managed after a few garbage collections.</p>
+ * */
+public class LanguageGUIManagerBenchmark {
+
+	private static final String TOOL_NAME = "LanguageGUIManagerBenchmark";
+	private static final int DEFAULT_ITEM_COUNT = 10000;
+	private static final int DEFAULT_ROUND_COUNT = 50;
+	private static final int ITEMS_PER_MENU = 50;
+
+	private static final String FIRST_LANGUAGE = "en";
+	private static final String SECOND_LANGUAGE = "de";
+
+	/**
+	 * The menus have to stay reachable until {@linkplain #dropMenus()}.
+	 * */
+	private static Language language;
+	private static List<JMenu> menus;
+
+	public static void main(String[] args) throws Exception {
+		int[] counts = ToolHarness.ParseCounts(args,
+				new String[] {"item count", "round count"},
+				new String[] {
+					"Registers this many menu items.",
+					"Measures this many rounds per case after as many warm up rounds."},
+				new int[] {DEFAULT_ITEM_COUNT, DEFAULT_ROUND_COUNT});
+		if (counts == null) {
+			return;
+		}
+
+		int menuCount = Math.max(2, counts[0] / ITEMS_PER_MENU);
+		SwingUtilities.invokeAndWait(() -> {
+			try {
+				run(menuCount, counts[1]);
+			} catch (Exception e) {
+				throw new IllegalStateException(e);
+			}
+		});
+
+		ToolHarness.Exit(TOOL_NAME, dropMenus(), "The items of the dropped menus are still managed");
+	}
+
+	/**
+	 * This fills the menus and runs the cases, it's called on the EDT. The
+	 * language listener calls the manager on the same thread, the update is
+	 * therefore done when {@linkplain Language#changeLanguage(String)} returns.
+	 * */
+	private static void run(int menuCount, int roundCount) throws Exception {
+		language = new Language(FIRST_LANGUAGE);
+		LanguageGUIManager manager = language.getGUIManager();
+
+		menus = new ArrayList<>(menuCount);
+		int keyIndex = 0;
+		for (int menuIndex = 0; menuIndex < menuCount; menuIndex++) {
+			JMenu menu = new JMenu("Menu " + menuIndex);
+			for (int itemIndex = 0; itemIndex < ITEMS_PER_MENU; itemIndex++) {
+				JMenuItem item = new JMenuItem();
+				manager.add(item, LanguageKeyIds.NAMES[keyIndex++ % LanguageKeyIds.NAMES.length]);
+				menu.add(item);
+			}
+			menus.add(menu);
+		}
+		ToolHarness.Report(TOOL_NAME, "%d items in %d menus", manager.getItemCount(), menuCount);
+
+		// Load both languages once, the switch is measured and not the loading
+		language.changeLanguage(SECOND_LANGUAGE);
+		language.changeLanguage(FIRST_LANGUAGE);
+
+		measure("Update without a change", roundCount, round -> manager.updateGUI(language));
+		measure("Language switch", roundCount,
+				round -> language.changeLanguage((round % 2 == 0) ? SECOND_LANGUAGE : FIRST_LANGUAGE));
+	}
+
+	/**
+	 * This prints the average time of a round and how many items one more
+	 * round changes. That round isn't measured.
+	 * */
+	private static void measure(String name, int roundCount, ToolHarness.Round round) throws Exception {
+		long nanos = ToolHarness.Measure(roundCount, roundCount, System::nanoTime, round);
+
+		List<String> oldTexts = getTexts();
+		round.run(roundCount);
+		List<String> newTexts = getTexts();
+		int changedItems = 0;
+		for (int itemIndex = 0; itemIndex < newTexts.size(); itemIndex++) {
+			if (!newTexts.get(itemIndex).equals(oldTexts.get(itemIndex))) {
+				changedItems++;
+			}
+		}
+
+		ToolHarness.Report(TOOL_NAME, "%-24s %8.3f ms per round, %6d items changed",
+				name, nanos / 1000000.0 / roundCount, changedItems);
+	}
+	private static List<String> getTexts() {
+		List<String> texts = new ArrayList<>();
+		for (JMenu menu : menus) {
+			for (int itemIndex = 0; itemIndex < menu.getItemCount(); itemIndex++) {
+				texts.add(menu.getItem(itemIndex).getText());
+			}
+		}
+		return texts;
+	}
+
+	/**
+	 * This drops half of the menus and waits until the manager lost their items.
+	 *
+	 * @return <tt>true</tt> if only the items of the kept menus are managed.
+	 * */
+	private static boolean dropMenus() throws InterruptedException {
+		LanguageGUIManager manager = language.getGUIManager();
+		int before = manager.getItemCount();
+		int droppedMenus = menus.size() / 2;
+
+		menus.subList(0, droppedMenus).clear();
+		int expected = menus.size() * ITEMS_PER_MENU;
+		for (int attempt = 0; attempt < 10 && manager.getItemCount() > expected; attempt++) {
+			System.gc();
+			Thread.sleep(50);
+		}
+
+		int after = manager.getItemCount();
+		ToolHarness.Report(TOOL_NAME, "Dropped %d menus, %d of %d items are still managed", droppedMenus, after, before);
+		return after == expected;
+	}
+}
@@ -0,0 +1,136 @@
+package com.gmail.xfrednet.xfutils.util.logger;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import com.gmail.xfrednet.xfutils.tools.ToolHarness;
+import com.gmail.xfrednet.xfutils.util.Logger;
+
+/**
+ * This compares the speed of the file loggers for long debug runs. Every
+ * logger writes the same debug lines into the log directory, the files are
+ * deleted afterwards:
+ *
+ * <pre>
+ * java com.gmail.xfrednet.xfutils.util.logger.LoggerBenchmark [line count] [round count]
+ * </pre>
+ *
+ * <p>A round creates the logger, writes the lines and ends the log. The
+ * buffered loggers would look faster than they are without the
+ * {@linkplain Logger#endLog()} call. The "PrintWriter" logger is the old
+ * {@linkplain FileLogger} that printed every message with its
+ * {@linkplain PrintWriter}.</p>
+ * */
+public class LoggerBenchmark {
+
+	private static final String TOOL_NAME = "LoggerBenchmark";
+	private static final int DEFAULT_LINE_COUNT = 500000;
+	private static final int DEFAULT_ROUND_COUNT = 4;
+
+	private static final File LOG_DIRECTORY = new File("../log");
+
+	/**
+	 * This is the old {@linkplain FileLogger}, the line is turned into a
+	 * {@linkplain String} and printed.
+	 * */
+	private static class PrintWriterLogger extends Logger {
+		private final File logFile = new File(FileLogger.GetNewLogFileName());
+		private PrintWriter writer;
+
+		PrintWriterLogger() throws FileNotFoundException {
+			super(true);
+
+			this.logFile.getParentFile().mkdirs();
+			this.writer = new PrintWriter(
+					new OutputStreamWriter(
+							new FileOutputStream(this.logFile), StandardCharsets.UTF_8));
+		}
+
+		@Override
+		public boolean endLog() {
+			this.writer.flush();
+			this.writer.close();
+
+			return true;
+		}
+
+		@Override
+		protected void logMessage(String message, int logLevel) {
+			this.writer.println(message);
+		}
+		@Override
+		protected void logMessage(String message, Exception e, int logLevel) {
+			this.writer.println(message);
+			e.printStackTrace(this.writer);
+		}
+	}
+
+	private interface LoggerFactory {
+		Logger create() throws Exception;
+	}
+
+	public static void main(String[] args) throws Exception {
+		int[] counts = ToolHarness.ParseCounts(args,
+				new String[] {"line count", "round count"},
+				new String[] {
+					"Writes this many debug lines per round with every file logger.",
+					"Measures this many rounds after one warm up round."},
+				new int[] {DEFAULT_LINE_COUNT, DEFAULT_ROUND_COUNT});
+		if (counts == null) {
+			return;
+		}
+
+		run("PrintWriter", PrintWriterLogger::new, counts[0], counts[1]);
+		run("FileLogger", () -> new FileLogger(true), counts[0], counts[1]);
+		run("FileLogger (async)",
+				() -> new FileLogger(true, LogRingBuffer.OverflowPolicy.BLOCK, 8192),
+				counts[0], counts[1]);
+		run("MappedFileLogger (never)",
+				() -> new MappedFileLogger(true, MappedFileLogger.DEFAULT_SEGMENT_BYTES, MappedFileLogger.ForcePolicy.NEVER, 0),
+				counts[0], counts[1]);
+		run("MappedFileLogger (periodic)", () -> new MappedFileLogger(true), counts[0], counts[1]);
+	}
+
+	/**
+	 * This measures one logger and prints the average time of a line.
+	 * */
+	private static void run(String name, LoggerFactory factory, int lineCount, int roundCount) throws Exception {
+		Set<File> oldFiles = listLogFiles();
+
+		long nanos;
+		try {
+			nanos = ToolHarness.Measure(1, roundCount, System::nanoTime, round -> {
+				Logger logger = factory.create();
+				for (int i = 0; i < lineCount; i++) {
+					logger.logDebugMessage("LoggerBenchmark.run: Wrote line {} of {} into the log", i, lineCount);
+				}
+				logger.endLog();
+			});
+		} finally {
+			deleteNewLogFiles(oldFiles);
+		}
+
+		double nanosPerLine = (double)nanos / roundCount / lineCount;
+		ToolHarness.Report(TOOL_NAME, "%-28s %8.1f ns per line, %8.0f lines per second",
+				name, nanosPerLine, 1000000000.0 / nanosPerLine);
+	}
+
+	private static Set<File> listLogFiles() {
+		File[] files = LOG_DIRECTORY.listFiles();
+		return (files != null) ? new HashSet<>(Arrays.asList(files)) : new HashSet<>();
+	}
+	private static void deleteNewLogFiles(Set<File> oldFiles) {
+		for (File file : listLogFiles()) {
+			if (!oldFiles.contains(file) && !file.delete()) {
+				System.err.println("LoggerBenchmark: Unable to delete the log file: " + file.getAbsolutePath());
+			}
+		}
+	}
+}